@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.ringgrank.dto.ApproximateUserRankResponse;
 import com.ringgrank.dto.LeaderboardEntryResponse;
 import com.ringgrank.dto.UserRankResponse;
 import com.ringgrank.service.LeaderboardQueryService;
@@ -36,8 +37,9 @@ public class LeaderboardController {
     private static final int MAX_LEADERBOARD_LIMIT = 1000;
     private static final int MIN_LEADERBOARD_LIMIT = 1;
     private static final long MIN_ID_VALUE = 1L; // Game and User IDs must be positive.
-    private static final String WINDOW_REGEX = "^([1-9][0-9]*[hmMdsS])?$"; // Allows formats like "24h", "7d", "30m", or
-                                                                           // empty for all-time.
+    // Allows formats like "24h", "7d", "30m", a calendar window such as "today"
+    // or "last-week", or empty for all-time.
+    private static final String WINDOW_REGEX = "^([1-9][0-9]*[hmMdsS]|today|yesterday|week|last-week|month|last-month)?$";
 
     /**
      * Constructor for LeaderboardController.
@@ -56,8 +58,9 @@ public class LeaderboardController {
      * @param gameId The numeric ID of the game. Must be a positive number.
      * @param limit  The number of top players to return (K). Must be between
      *               MIN_LEADERBOARD_LIMIT and MAX_LEADERBOARD_LIMIT.
-     * @param window Optional sliding window duration (e.g., "24h"). If not
-     *               provided, returns all-time leaderboard.
+     * @param window Optional sliding window duration (e.g., "24h") or
+     *               calendar window (e.g., "today"). If not provided,
+     *               returns all-time leaderboard.
      * @return ResponseEntity containing a list of top K players or an appropriate
      *         error response.
      */
@@ -69,7 +72,7 @@ public class LeaderboardController {
                     + MIN_LEADERBOARD_LIMIT + ".") @Max(value = MAX_LEADERBOARD_LIMIT, message = "Limit cannot exceed "
                             + MAX_LEADERBOARD_LIMIT + ".") int limit,
 
-            @RequestParam(required = false) @Pattern(regexp = WINDOW_REGEX, message = "Window format is invalid. Examples: '24h', '7d', '30m'. Leave empty for all-time leaderboard.") String window) {
+            @RequestParam(required = false) @Pattern(regexp = WINDOW_REGEX, message = "Window format is invalid. Examples: '24h', '7d', '30m', 'today'. Leave empty for all-time leaderboard.") String window) {
 
         List<LeaderboardEntryResponse> leaders = leaderboardQueryService.getTopKLeaders(gameId, limit, window);
         return ResponseEntity.ok(leaders);
@@ -81,8 +84,9 @@ public class LeaderboardController {
      * 
      * @param gameId The numeric ID of the game. Must be a positive number.
      * @param userId The numeric ID of the user. Must be a positive number.
-     * @param window Optional sliding window duration (e.g., "24h"). If not
-     *               provided, returns all-time leaderboard.
+     * @param window Optional sliding window duration (e.g., "24h") or
+     *               calendar window (e.g., "today"). If not provided,
+     *               returns all-time leaderboard.
      * @return ResponseEntity containing the user's rank and percentile or an
      *         appropriate error response.
      */
@@ -92,9 +96,35 @@ public class LeaderboardController {
 
             @PathVariable @Min(value = MIN_ID_VALUE, message = "User ID must be a positive number.") Long userId,
 
-            @RequestParam(required = false) @Pattern(regexp = WINDOW_REGEX, message = "Window format is invalid. Examples: '24h', '7d', '30m'. Leave empty for all-time leaderboard.") String window) {
+            @RequestParam(required = false) @Pattern(regexp = WINDOW_REGEX, message = "Window format is invalid. Examples: '24h', '7d', '30m', 'today'. Leave empty for all-time leaderboard.") String window) {
 
         UserRankResponse rank = leaderboardQueryService.getUserRank(gameId, userId, window);
         return ResponseEntity.ok(rank);
     }
+
+    /**
+     * Endpoint to get an approximate rank and percentile for a player, selected
+     * with approximate=true. Served from the leaderboard's quantile sketch, so
+     * latency does not grow with the number of players. The response carries
+     * the rank and percentile error bounds.
+     * 
+     * @param gameId The numeric ID of the game. Must be a positive number.
+     * @param userId The numeric ID of the user. Must be a positive number.
+     * @param window Optional sliding window duration (e.g., "24h") or
+     *               calendar window (e.g., "today"). If not provided,
+     *               returns all-time leaderboard.
+     * @return ResponseEntity containing the user's approximate rank and
+     *         percentile or an appropriate error response.
+     */
+    @GetMapping(value = "/users/{userId}/rank", params = "approximate=true")
+    public ResponseEntity<ApproximateUserRankResponse> getApproximateUserRank(
+            @PathVariable @Min(value = MIN_ID_VALUE, message = "Game ID must be a positive number.") Long gameId,
+
+            @PathVariable @Min(value = MIN_ID_VALUE, message = "User ID must be a positive number.") Long userId,
+
+            @RequestParam(required = false) @Pattern(regexp = WINDOW_REGEX, message = "Window format is invalid. Examples: '24h', '7d', '30m', 'today'. Leave empty for all-time leaderboard.") String window) {
+
+        ApproximateUserRankResponse rank = leaderboardQueryService.getApproximateUserRank(gameId, userId, window);
+        return ResponseEntity.ok(rank);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,5 @@
+package com.ringgrank.dto;
+
+public record ApproximateUserRankResponse(long userId, long rank, long rankErrorBound, long score,
+        double percentile, double percentileErrorBound, double scoreRelativeError, long timestamp) {
+}
@@ -0,0 +1,15 @@
+package com.ringgrank.exception;
+
+/**
+ * Exception thrown when a leaderboard with a fixed capacity cannot accept
+ * another player.
+ */
+public class LeaderboardCapacityExceededException extends RuntimeException {
+    public LeaderboardCapacityExceededException(String message) {
+        super(message);
+    }
+
+    public LeaderboardCapacityExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,482 @@
+package com.ringgrank.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ringgrank.util.ConcurrentLongObjectMap;
+
+/**
+ * Shared locking and bookkeeping for Leaderboard implementations.
+ * Subclasses only provide the storage: the sorted index and the userId index.
+ * Every storage hook is called with the lock held (read lock for queries,
+ * write lock for updates), so implementations need no synchronization of
+ * their own.
+ */
+public abstract class AbstractLeaderboard implements Leaderboard {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractLeaderboard.class);
+
+    // Top-K versions are tracked for K up to 2^TOP_VERSION_BUCKETS-1 (1024)
+    private static final int TOP_VERSION_BUCKETS = 11;
+
+    // Pre-image of a user who had no entry when the capture began
+    private static final ScoreEntry ABSENT = new ScoreEntry(Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE,
+            Long.MIN_VALUE);
+
+    // Guards the storage and keeps the sorted and userId indexes consistent
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Optional per-score-bucket counts for constant-latency percentiles; null
+    // when disabled in the LeaderboardConfig
+    private final FenwickRankEngine rankEngine;
+
+    // Small score histogram kept in step with every update; serves approximate
+    // rank/percentile queries without touching the sorted index
+    private final QuantileSketch scoreSketch;
+
+    // Bumped on every mutation
+    private volatile long version;
+
+    // topVersions[b] is bumped whenever a mutation touches a rank <= 2^b, so
+    // it only changes when the top 2^b entries may have changed
+    private final AtomicLongArray topVersions = new AtomicLongArray(TOP_VERSION_BUCKETS);
+
+    // While a capture is active: each changed user's entry as of
+    // beginCapture(), recorded on their first change. Null otherwise.
+    private ConcurrentLongObjectMap<ScoreEntry> captureImages;
+
+    protected AbstractLeaderboard(LeaderboardConfig config) {
+        this.rankEngine = config.newRankEngine();
+        this.scoreSketch = config.newScoreSketch();
+    }
+
+    /**
+     * Stores the entry as the user's current entry.
+     *
+     * @return the user's previous entry, or null if there was none.
+     */
+    protected abstract ScoreEntry replaceEntry(ScoreEntry newEntry);
+
+    /**
+     * Removes the entry if it is the user's current entry.
+     *
+     * @return true if the entry was removed.
+     */
+    protected abstract boolean removeEntry(ScoreEntry entry);
+
+    protected abstract ScoreEntry findEntry(long userId);
+
+    protected abstract int rankOfUser(long userId);
+
+    protected abstract ScoreEntry entryAtRank(int rank);
+
+    protected abstract List<ScoreEntry> firstEntries(int k);
+
+    protected abstract int entryCount();
+
+    protected abstract void clearEntries();
+
+    /**
+     * Visits the stored entries in rank order.
+     */
+    protected abstract void visitEntries(EntryVisitor visitor);
+
+    /**
+     * Fills the storage, which is empty, from entries already in rank order.
+     */
+    protected abstract void loadSortedEntries(SortedEntries entries);
+
+    @Override
+    public void addOrUpdateScore(ScoreEntry newEntry) {
+        lock.writeLock().lock();
+        try {
+            int oldRank = rankOfUser(newEntry.userId());
+            ScoreEntry oldEntry = replaceEntry(newEntry);
+            recordPreImage(newEntry.userId(), oldEntry);
+            if (oldEntry != null) {
+                onRemoved(oldEntry);
+            }
+            onAdded(newEntry);
+            int newRank = rankOfUser(newEntry.userId());
+            recordMutation(oldRank < 0 ? newRank : Math.min(oldRank, newRank));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeScore(ScoreEntry entryToRemove) {
+        if (entryToRemove == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeIfCurrent(entryToRemove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeScores(List<ScoreEntry> entriesToRemove) {
+        lock.writeLock().lock();
+        try {
+            entriesToRemove.forEach(this::removeIfCurrent);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Only removes the entry if it is still the user's current entry; the
+    // write lock must be held
+    private void removeIfCurrent(ScoreEntry entryToRemove) {
+        // Superseded entries are common among expirations; skip the rank
+        // lookup for them
+        if (!entryToRemove.equals(findEntry(entryToRemove.userId()))) {
+            return;
+        }
+        int rank = rankOfUser(entryToRemove.userId());
+        if (removeEntry(entryToRemove)) {
+            recordPreImage(entryToRemove.userId(), entryToRemove);
+            onRemoved(entryToRemove);
+            recordMutation(rank);
+        }
+    }
+
+    @Override
+    public ScoreEntry getUserScore(Long userId) {
+        lock.readLock().lock();
+        try {
+            return findEntry(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ScoreEntry> getTopK(int k) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            return firstEntries(k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getUserRank(Long userId) {
+        lock.readLock().lock();
+        try {
+            return rankOfUser(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public RankedEntry getRankedEntry(Long userId) {
+        lock.readLock().lock();
+        try {
+            ScoreEntry entry = findEntry(userId);
+            return entry == null ? null : new RankedEntry(entry, rankOfUser(userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ScoreEntry getEntryAtRank(int rank) {
+        lock.readLock().lock();
+        try {
+            return entryAtRank(rank);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FenwickRankEngine getRankEngine() {
+        return rankEngine;
+    }
+
+    @Override
+    public QuantileSketch.Estimate estimateRank(long score) {
+        lock.readLock().lock();
+        try {
+            return scoreSketch.estimateRank(score);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getSketchAccuracy() {
+        return scoreSketch.getRelativeAccuracy();
+    }
+
+    @Override
+    public int getTotalPlayers() {
+        lock.readLock().lock();
+        try {
+            return entryCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (captureImages != null) {
+                for (ScoreEntry entry : firstEntries(entryCount())) {
+                    captureImages.putIfAbsent(entry.userId(), entry);
+                }
+            }
+            clearEntries();
+            if (rankEngine != null) {
+                rankEngine.clear();
+            }
+            scoreSketch.clear();
+            recordMutation(1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            visitEntries(visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadSorted(SortedEntries entries) {
+        checkRankOrder(entries);
+        int capacity = getCapacity();
+        if (entries.size() > capacity) {
+            // Such as a snapshot taken before the capacity was lowered
+            logger.warn("Leaderboard for game {} holds at most {} players, skipping the {} ranked below",
+                    entries.gameId(), capacity, entries.size() - capacity);
+            entries = firstEntries(entries, capacity);
+        }
+        lock.writeLock().lock();
+        try {
+            if (captureImages != null) {
+                throw new IllegalStateException("Cannot bulk-load a leaderboard while a capture is active");
+            }
+            clearEntries();
+            if (rankEngine != null) {
+                rankEngine.clear();
+            }
+            scoreSketch.clear();
+            loadSortedEntries(entries);
+            for (int i = 0; i < entries.size(); i++) {
+                long score = entries.scoreAt(i);
+                if (rankEngine != null) {
+                    rankEngine.add(score);
+                }
+                scoreSketch.add(score);
+            }
+            recordMutation(1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void beginCapture() {
+        lock.writeLock().lock();
+        try {
+            captureImages = new ConcurrentLongObjectMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachCapturedEntry(EntryVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            ConcurrentLongObjectMap<ScoreEntry> images = captureImages;
+            if (images == null || images.isEmpty()) {
+                visitEntries(visitor);
+            } else {
+                // Unchanged users come from the live index; changed users are
+                // swapped for their pre-images, merged back in rank order
+                List<ScoreEntry> preImages = new ArrayList<>(images.size());
+                images.forEach((userId, entry) -> {
+                    if (entry != ABSENT) {
+                        preImages.add(entry);
+                    }
+                });
+                Collections.sort(preImages);
+                CaptureMerger merger = new CaptureMerger(images, preImages, visitor);
+                visitEntries(merger);
+                merger.finish();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            captureImages = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the write lock held, after the user's entry changed
+    private void recordPreImage(long userId, ScoreEntry previous) {
+        if (captureImages != null && !captureImages.containsKey(userId)) {
+            captureImages.put(userId, previous == null ? ABSENT : previous);
+        }
+    }
+
+    private static SortedEntries firstEntries(SortedEntries entries, int count) {
+        return new SortedEntries() {
+            @Override
+            public long gameId() {
+                return entries.gameId();
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public long userIdAt(int index) {
+                return entries.userIdAt(index);
+            }
+
+            @Override
+            public long scoreAt(int index) {
+                return entries.scoreAt(index);
+            }
+
+            @Override
+            public long timestampAt(int index) {
+                return entries.timestampAt(index);
+            }
+        };
+    }
+
+    private static void checkRankOrder(SortedEntries entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            int cmp = Long.compare(entries.scoreAt(i), entries.scoreAt(i - 1));
+            if (cmp == 0) {
+                cmp = Long.compare(entries.timestampAt(i - 1), entries.timestampAt(i));
+            }
+            if (cmp == 0) {
+                cmp = Long.compare(entries.userIdAt(i - 1), entries.userIdAt(i));
+            }
+            if (cmp >= 0) {
+                throw new IllegalArgumentException("Entries are not in rank order at index " + i);
+            }
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public long getTopKVersion(int k) {
+        int bucket = 32 - Integer.numberOfLeadingZeros(Math.max(k, 1) - 1);
+        if (bucket >= TOP_VERSION_BUCKETS) {
+            return version;
+        }
+        return topVersions.get(bucket);
+    }
+
+    // Called with the write lock held. Ranks after the first affected rank may
+    // shift; everything before it is untouched.
+    private void recordMutation(int firstAffectedRank) {
+        version++;
+        for (int bucket = TOP_VERSION_BUCKETS - 1; bucket >= 0; bucket--) {
+            if ((1 << bucket) < firstAffectedRank) {
+                break;
+            }
+            topVersions.incrementAndGet(bucket);
+        }
+    }
+
+    private void onAdded(ScoreEntry entry) {
+        if (rankEngine != null) {
+            rankEngine.add(entry.score());
+        }
+        scoreSketch.add(entry.score());
+    }
+
+    private void onRemoved(ScoreEntry entry) {
+        if (rankEngine != null) {
+            rankEngine.remove(entry.score());
+        }
+        scoreSketch.remove(entry.score());
+    }
+
+    /**
+     * Merges the live entries of unchanged users with the sorted pre-images
+     * of changed users.
+     */
+    private static final class CaptureMerger implements EntryVisitor {
+        private final ConcurrentLongObjectMap<ScoreEntry> images;
+        private final List<ScoreEntry> preImages;
+        private final EntryVisitor target;
+        private int next;
+
+        CaptureMerger(ConcurrentLongObjectMap<ScoreEntry> images, List<ScoreEntry> preImages, EntryVisitor target) {
+            this.images = images;
+            this.preImages = preImages;
+            this.target = target;
+        }
+
+        @Override
+        public void visit(long userId, long score, long timestamp) {
+            if (images.containsKey(userId)) {
+                return; // Changed since the capture began
+            }
+            while (next < preImages.size() && ranksAhead(preImages.get(next), userId, score, timestamp)) {
+                emit(preImages.get(next++));
+            }
+            target.visit(userId, score, timestamp);
+        }
+
+        void finish() {
+            while (next < preImages.size()) {
+                emit(preImages.get(next++));
+            }
+        }
+
+        private void emit(ScoreEntry entry) {
+            target.visit(entry.userId(), entry.score(), entry.timestamp());
+        }
+
+        private static boolean ranksAhead(ScoreEntry entry, long userId, long score, long timestamp) {
+            if (entry.score() != score) {
+                return entry.score() > score;
+            }
+            if (entry.timestamp() != timestamp) {
+                return entry.timestamp() < timestamp;
+            }
+            return entry.userId() < userId;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.ringgrank.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.ringgrank.util.LongIntHashMap;
+
+/**
+ * Window leaderboard that expires entries a whole time bucket at a time
+ * instead of one by one.
+ *
+ * Submissions are ranked in a regular leaderboard, the merged view, which
+ * answers every query. In addition, each fixed bucket of bucketMillis keeps
+ * the latest entry per user whose timestamp falls into it. A bucket is
+ * dropped once all of it has left the window, removing from the merged view
+ * those of its entries that are still current there; users who submitted
+ * again since keep their newer entry. Expiry therefore costs one scheduled
+ * drop per bucket instead of one per submission, and entries leave the
+ * window up to one bucket late.
+ *
+ * A listener is told when a bucket opens, with the time it must be dropped
+ * at, so the owner can schedule {@link #dropExpiredBuckets(long)}.
+ */
+public final class BucketedWindowLeaderboard implements Leaderboard {
+    /**
+     * Receives the drop time of each newly opened bucket.
+     */
+    @FunctionalInterface
+    public interface BucketListener {
+        void bucketOpened(long dropAtMillis);
+    }
+
+    private final long gameId;
+    private final Leaderboard merged;
+    private final long bucketMillis;
+    private final long windowMillis;
+    private final BucketListener listener;
+    // Bucket start -> latest entries per user; guarded by itself
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+    private Bucket lastBucket;
+
+    public BucketedWindowLeaderboard(long gameId, Leaderboard merged, long bucketMillis, long windowMillis,
+            BucketListener listener) {
+        this.gameId = gameId;
+        this.merged = merged;
+        this.bucketMillis = bucketMillis;
+        this.windowMillis = windowMillis;
+        this.listener = listener;
+    }
+
+    @Override
+    public void addOrUpdateScore(ScoreEntry newEntry) {
+        synchronized (buckets) {
+            merged.addOrUpdateScore(newEntry);
+            bucketFor(newEntry.timestamp()).put(newEntry.userId(), newEntry.score(), newEntry.timestamp());
+        }
+    }
+
+    /**
+     * Removes the entry from the merged view if it is still current. Its
+     * bucket keeps it until dropped, which then finds nothing to remove.
+     */
+    @Override
+    public void removeScore(ScoreEntry entryToRemove) {
+        merged.removeScore(entryToRemove);
+    }
+
+    @Override
+    public void removeScores(List<ScoreEntry> entriesToRemove) {
+        merged.removeScores(entriesToRemove);
+    }
+
+    /**
+     * Drops the buckets that have entirely left the window by nowMillis.
+     *
+     * @return The number of bucket entries dropped, whether or not they
+     *         were still current.
+     */
+    public int dropExpiredBuckets(long nowMillis) {
+        int dropped = 0;
+        synchronized (buckets) {
+            while (!buckets.isEmpty()) {
+                Map.Entry<Long, Bucket> oldest = buckets.firstEntry();
+                if (dropTime(oldest.getKey()) > nowMillis) {
+                    break;
+                }
+                buckets.pollFirstEntry();
+                Bucket bucket = oldest.getValue();
+                if (bucket == lastBucket) {
+                    lastBucket = null;
+                }
+                List<ScoreEntry> entries = new ArrayList<>(bucket.size);
+                for (int i = 0; i < bucket.size; i++) {
+                    entries.add(new ScoreEntry(bucket.userIds[i], gameId, bucket.scores[i], bucket.timestamps[i]));
+                }
+                merged.removeScores(entries);
+                dropped += bucket.size;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Number of buckets currently held.
+     */
+    public int getBucketCount() {
+        synchronized (buckets) {
+            return buckets.size();
+        }
+    }
+
+    @Override
+    public ScoreEntry getUserScore(Long userId) {
+        return merged.getUserScore(userId);
+    }
+
+    @Override
+    public List<ScoreEntry> getTopK(int k) {
+        return merged.getTopK(k);
+    }
+
+    @Override
+    public int getUserRank(Long userId) {
+        return merged.getUserRank(userId);
+    }
+
+    @Override
+    public RankedEntry getRankedEntry(Long userId) {
+        return merged.getRankedEntry(userId);
+    }
+
+    @Override
+    public ScoreEntry getEntryAtRank(int rank) {
+        return merged.getEntryAtRank(rank);
+    }
+
+    @Override
+    public FenwickRankEngine getRankEngine() {
+        return merged.getRankEngine();
+    }
+
+    @Override
+    public QuantileSketch.Estimate estimateRank(long score) {
+        return merged.estimateRank(score);
+    }
+
+    @Override
+    public double getSketchAccuracy() {
+        return merged.getSketchAccuracy();
+    }
+
+    @Override
+    public int getTotalPlayers() {
+        return merged.getTotalPlayers();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (buckets) {
+            merged.clear();
+            buckets.clear();
+            lastBucket = null;
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        merged.forEachEntry(visitor);
+    }
+
+    /**
+     * Loads the merged view and files every entry into its bucket. Drops
+     * are only announced for buckets that did not exist yet.
+     */
+    @Override
+    public void loadSorted(SortedEntries entries) {
+        synchronized (buckets) {
+            merged.loadSorted(entries);
+            TreeMap<Long, Bucket> previous = new TreeMap<>(buckets);
+            buckets.clear();
+            lastBucket = null;
+            for (int i = 0; i < entries.size(); i++) {
+                long start = bucketStart(entries.timestampAt(i));
+                Bucket bucket = buckets.get(start);
+                if (bucket == null) {
+                    bucket = new Bucket(start);
+                    buckets.put(start, bucket);
+                    if (!previous.containsKey(start)) {
+                        listener.bucketOpened(dropTime(start));
+                    }
+                }
+                bucket.put(entries.userIdAt(i), entries.scoreAt(i), entries.timestampAt(i));
+            }
+        }
+    }
+
+    @Override
+    public void beginCapture() {
+        merged.beginCapture();
+    }
+
+    @Override
+    public void forEachCapturedEntry(EntryVisitor visitor) {
+        merged.forEachCapturedEntry(visitor);
+    }
+
+    @Override
+    public long getVersion() {
+        return merged.getVersion();
+    }
+
+    @Override
+    public long getTopKVersion(int k) {
+        return merged.getTopKVersion(k);
+    }
+
+    @Override
+    public int getCapacity() {
+        return merged.getCapacity();
+    }
+
+    @Override
+    public void release() {
+        merged.release();
+    }
+
+    private Bucket bucketFor(long timestamp) {
+        long start = bucketStart(timestamp);
+        if (lastBucket != null && lastBucket.start == start) {
+            return lastBucket;
+        }
+        Bucket bucket = buckets.get(start);
+        if (bucket == null) {
+            bucket = new Bucket(start);
+            buckets.put(start, bucket);
+            listener.bucketOpened(dropTime(start));
+        }
+        lastBucket = bucket;
+        return bucket;
+    }
+
+    private long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, bucketMillis) * bucketMillis;
+    }
+
+    // When every timestamp of the bucket has left the window
+    private long dropTime(long bucketStart) {
+        return bucketStart + bucketMillis + windowMillis;
+    }
+
+    /**
+     * Latest entry per user within one bucket, as parallel columns.
+     */
+    private static final class Bucket {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final long start;
+        private final LongIntHashMap userIndexes = new LongIntHashMap();
+        private long[] userIds = new long[INITIAL_CAPACITY];
+        private long[] scores = new long[INITIAL_CAPACITY];
+        private long[] timestamps = new long[INITIAL_CAPACITY];
+        private int size;
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        void put(long userId, long score, long timestamp) {
+            int index = userIndexes.get(userId);
+            if (index == LongIntHashMap.MISSING) {
+                if (size == userIds.length) {
+                    userIds = Arrays.copyOf(userIds, size * 2);
+                    scores = Arrays.copyOf(scores, size * 2);
+                    timestamps = Arrays.copyOf(timestamps, size * 2);
+                }
+                index = size++;
+                userIndexes.put(userId, index);
+                userIds[index] = userId;
+            }
+            scores[index] = score;
+            timestamps[index] = timestamp;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ringgrank.model;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Calendar periods of tumbling window leaderboards, aligned to midnight in
+ * a configured time zone. Weeks start on Monday.
+ * Each period is queried under the key of the running period and that of
+ * the one closed before it, e.g. "today" and "yesterday".
+ */
+public enum CalendarPeriod {
+    DAY("today", "yesterday"),
+    WEEK("week", "last-week"),
+    MONTH("month", "last-month");
+
+    private final String currentKey;
+    private final String previousKey;
+
+    CalendarPeriod(String currentKey, String previousKey) {
+        this.currentKey = currentKey;
+        this.previousKey = previousKey;
+    }
+
+    public String currentKey() {
+        return currentKey;
+    }
+
+    public String previousKey() {
+        return previousKey;
+    }
+
+    /**
+     * Start of the period containing epochMillis, in epoch millis.
+     */
+    public long startOf(long epochMillis, ZoneId zone) {
+        LocalDate date = Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate();
+        LocalDate start = switch (this) {
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+        return start.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Start of the period following the one starting at periodStart.
+     */
+    public long nextStart(long periodStart, ZoneId zone) {
+        LocalDate start = Instant.ofEpochMilli(periodStart).atZone(zone).toLocalDate();
+        LocalDate next = switch (this) {
+            case DAY -> start.plusDays(1);
+            case WEEK -> start.plusWeeks(1);
+            case MONTH -> start.plusMonths(1);
+        };
+        return next.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Start of the period before the one starting at periodStart.
+     */
+    public long previousStart(long periodStart, ZoneId zone) {
+        return startOf(periodStart - 1, zone);
+    }
+
+    /**
+     * Parses a configuration value naming the running period's key, such as
+     * "today", "week" or "month".
+     */
+    public static CalendarPeriod fromConfig(String value) {
+        String key = value.trim().toLowerCase();
+        for (CalendarPeriod period : values()) {
+            if (period.currentKey.equals(key)) {
+                return period;
+            }
+        }
+        throw new IllegalArgumentException("Unknown calendar window: " + value);
+    }
+}
@@ -0,0 +1,162 @@
+package com.ringgrank.model;
+
+import java.util.Arrays;
+
+import com.ringgrank.util.LongIntHashMap;
+
+/**
+ * Memory-lean Leaderboard storing entries as a struct of arrays: parallel
+ * primitive arrays for userId, score and timestamp, plus int links for the
+ * sorted index. No ScoreEntry or tree node objects are kept per player.
+ * About 37 bytes per player plus the userId-to-slot index, compared with the
+ * ScoreEntry record, tree node and map entry of {@link TreeLeaderboard}.
+ * ScoreEntry objects are created on the fly for query results only.
+ */
+public class CompactLeaderboard extends SlotLeaderboard {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] userIds;
+    private long[] scores;
+    private long[] timestamps;
+    private int[] lefts;
+    private int[] rights;
+    private int[] sizes;
+    // AVL height never exceeds ~45 for int-sized boards, so a byte is enough
+    private byte[] heights;
+
+    // Slots below highWater have been used; freed ones are chained through lefts
+    private int highWater;
+    private int freeHead = NIL;
+
+    private final LongIntHashMap userSlots = new LongIntHashMap();
+
+    public CompactLeaderboard(long gameId, LeaderboardConfig config) {
+        super(gameId, config);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    protected int allocateSlot() {
+        if (freeHead != NIL) {
+            int slot = freeHead;
+            freeHead = lefts[slot];
+            return slot;
+        }
+        if (highWater == userIds.length) {
+            grow(userIds.length + (userIds.length >> 1));
+        }
+        return highWater++;
+    }
+
+    @Override
+    protected void releaseSlot(int slot) {
+        lefts[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    @Override
+    protected void writeSlot(int slot, long userId, long score, long timestamp) {
+        userIds[slot] = userId;
+        scores[slot] = score;
+        timestamps[slot] = timestamp;
+        lefts[slot] = NIL;
+        rights[slot] = NIL;
+        sizes[slot] = 1;
+        heights[slot] = 1;
+    }
+
+    @Override
+    protected long userIdAt(int slot) {
+        return userIds[slot];
+    }
+
+    @Override
+    protected long scoreAt(int slot) {
+        return scores[slot];
+    }
+
+    @Override
+    protected long timestampAt(int slot) {
+        return timestamps[slot];
+    }
+
+    @Override
+    protected int leftOf(int slot) {
+        return lefts[slot];
+    }
+
+    @Override
+    protected int rightOf(int slot) {
+        return rights[slot];
+    }
+
+    @Override
+    protected int sizeOf(int slot) {
+        return sizes[slot];
+    }
+
+    @Override
+    protected int heightOf(int slot) {
+        return heights[slot];
+    }
+
+    @Override
+    protected void setLeft(int slot, int child) {
+        lefts[slot] = child;
+    }
+
+    @Override
+    protected void setRight(int slot, int child) {
+        rights[slot] = child;
+    }
+
+    @Override
+    protected void setSizeAndHeight(int slot, int size, int height) {
+        sizes[slot] = size;
+        heights[slot] = (byte) height;
+    }
+
+    @Override
+    protected int lookupSlot(long userId) {
+        int slot = userSlots.get(userId);
+        return slot == LongIntHashMap.MISSING ? NIL : slot;
+    }
+
+    @Override
+    protected void indexSlot(long userId, int slot) {
+        userSlots.put(userId, slot);
+    }
+
+    @Override
+    protected void unindexSlot(long userId) {
+        userSlots.remove(userId);
+    }
+
+    @Override
+    protected void clearStorage() {
+        allocate(INITIAL_CAPACITY);
+        highWater = 0;
+        freeHead = NIL;
+        userSlots.clear();
+    }
+
+    private void allocate(int capacity) {
+        userIds = new long[capacity];
+        scores = new long[capacity];
+        timestamps = new long[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        sizes = new int[capacity];
+        heights = new byte[capacity];
+    }
+
+    private void grow(int capacity) {
+        userIds = Arrays.copyOf(userIds, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+    }
+}
@@ -0,0 +1,156 @@
+package com.ringgrank.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts players per score bucket in a Fenwick (binary indexed) tree, so
+ * "how many players beat score S" costs O(log B) in the number of buckets B
+ * and never touches the leaderboard's sorted index.
+ *
+ * Buckets are exact (one per integer score) when the configured range fits in
+ * the bucket budget. Wider ranges use log-linear buckets: scores near the
+ * bottom of the range keep width 1 and bucket width doubles with every power
+ * of two, which keeps the relative error of a bucket bounded. Scores outside
+ * [minScore, maxScore] are clamped into the first or last bucket.
+ *
+ * Updates are lock-free adds on an AtomicLongArray, so concurrent writers
+ * never lose counts. A query running concurrently with writers may see a
+ * partially applied update, which only shifts the answer by that one player.
+ */
+public class FenwickRankEngine {
+    private final long minScore;
+    private final long range;
+    // Scores below 2^precisionBits (relative to minScore) get one bucket each;
+    // above that every power of two is split into 2^(precisionBits - 1) buckets.
+    private final int precisionBits;
+    private final int bucketCount;
+    private final AtomicLongArray tree;
+    private final AtomicLong totalCount = new AtomicLong();
+
+    public FenwickRankEngine(long minScore, long maxScore, int maxBuckets) {
+        if (maxScore < minScore) {
+            throw new IllegalArgumentException("maxScore must not be below minScore");
+        }
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("maxBuckets must be at least 2");
+        }
+        this.minScore = minScore;
+        this.range = maxScore - minScore;
+        this.precisionBits = choosePrecisionBits(range, maxBuckets);
+        this.bucketCount = bucketIndex(range, precisionBits) + 1;
+        this.tree = new AtomicLongArray(bucketCount + 1);
+    }
+
+    public void add(long score) {
+        update(bucketOf(score), 1);
+        totalCount.incrementAndGet();
+    }
+
+    public void remove(long score) {
+        update(bucketOf(score), -1);
+        totalCount.decrementAndGet();
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the number of players with a score strictly greater than the given
+     * score. Exact when {@link #isExact()}; otherwise players sharing the score's
+     * bucket are apportioned by linear interpolation across the bucket.
+     */
+    public long countAbove(long score) {
+        int bucket = bucketOf(score);
+        long atOrBelowBucket = prefixSum(bucket);
+        long above = totalCount.get() - atOrBelowBucket;
+        if (!isExact()) {
+            long inBucket = atOrBelowBucket - (bucket == 0 ? 0 : prefixSum(bucket - 1));
+            long lower = bucketLowerBound(bucket);
+            long width = bucketWidth(bucket);
+            long offset = Math.min(Math.max(score - minScore, 0), range);
+            above += (long) (inBucket * (double) (lower + width - 1 - offset) / width);
+        }
+        return Math.max(above, 0);
+    }
+
+    /**
+     * Returns true if every integer score in range has its own bucket.
+     */
+    public boolean isExact() {
+        return range < (1L << precisionBits);
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public void clear() {
+        for (int i = 0; i < tree.length(); i++) {
+            tree.set(i, 0);
+        }
+        totalCount.set(0);
+    }
+
+    private int bucketOf(long score) {
+        long offset = Math.min(Math.max(score - minScore, 0), range);
+        return bucketIndex(offset, precisionBits);
+    }
+
+    private void update(int bucket, long delta) {
+        for (int i = bucket + 1; i <= bucketCount; i += i & -i) {
+            tree.addAndGet(i, delta);
+        }
+    }
+
+    // Number of players in buckets [0, bucket]
+    private long prefixSum(int bucket) {
+        long sum = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            sum += tree.get(i);
+        }
+        return sum;
+    }
+
+    private long bucketLowerBound(int bucket) {
+        long linearLimit = 1L << precisionBits;
+        if (bucket < linearLimit) {
+            return bucket;
+        }
+        long half = linearLimit >>> 1;
+        long level = (bucket - linearLimit) / half + 1;
+        long sub = (bucket - linearLimit) % half + half;
+        return sub << level;
+    }
+
+    private long bucketWidth(int bucket) {
+        long linearLimit = 1L << precisionBits;
+        if (bucket < linearLimit) {
+            return 1;
+        }
+        long half = linearLimit >>> 1;
+        return 1L << ((bucket - linearLimit) / half + 1);
+    }
+
+    private static int bucketIndex(long offset, int precisionBits) {
+        long linearLimit = 1L << precisionBits;
+        if (offset < linearLimit) {
+            return (int) offset;
+        }
+        long half = linearLimit >>> 1;
+        int msb = 63 - Long.numberOfLeadingZeros(offset);
+        int level = msb - precisionBits + 1;
+        long sub = offset >>> level;
+        return (int) (linearLimit + (level - 1) * half + (sub - half));
+    }
+
+    private static int choosePrecisionBits(long range, int maxBuckets) {
+        int maxBits = 31 - Integer.numberOfLeadingZeros(maxBuckets);
+        int bits = maxBits;
+        while (bits > 1 && (long) bucketIndex(range, bits) + 1 > maxBuckets) {
+            bits--;
+        }
+        return bits;
+    }
+}
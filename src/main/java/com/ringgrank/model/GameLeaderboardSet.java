@@ -1,23 +1,35 @@
 package com.ringgrank.model;
 
-import java.io.Serializable;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
 
+import com.ringgrank.exception.InvalidWindowException;
+import com.ringgrank.service.ExpirationWheel;
 import com.ringgrank.service.GlobalLeaderboardManager;
+import com.ringgrank.util.IndexSort;
+import com.ringgrank.util.LongIntHashMap;
 
 /**
  * Manages all leaderboards (all-time and windowed) for a single game.
- * Must be Serializable for snapshot support.
+ * Snapshots store it through SnapshotWriter and restore it through
+ * SnapshotReader.
  */
-public class GameLeaderboardSet implements Serializable {
-    private static final long serialVersionUID = 1L;
+public final class GameLeaderboardSet {
+    // Replayed entries below 1/8 of a leaderboard are applied one by one
+    // rather than rebuilding it
+    private static final int REBUILD_RATIO = 8;
 
     private final long gameId;
-    private final Leaderboard allTimeLeaderboard = new Leaderboard();
+    private final LeaderboardConfig config;
+    private final Leaderboard allTimeLeaderboard;
 
     // Key: window identifier (e.g., "24h"), Value: Leaderboard for that window
     private final Map<String, Leaderboard> windowedLeaderboards = new ConcurrentHashMap<>();
@@ -25,25 +37,194 @@ public class GameLeaderboardSet implements Serializable {
     // Key: window identifier, Value: Duration of the window
     private final Map<String, Duration> windowDurations = new ConcurrentHashMap<>();
 
-    private transient DelayQueue<GlobalLeaderboardManager.ExpiringScore> expiringScoresQueueRef;
+    // Tumbling calendar windows, and their running and closed period views
+    // by key (e.g. "today" and "yesterday"); fixed by the config
+    private final Map<CalendarPeriod, TumblingWindowLeaderboard> calendarLeaderboards;
+    private final Map<String, Leaderboard> calendarViews;
 
-    public GameLeaderboardSet(long gameId, DelayQueue<GlobalLeaderboardManager.ExpiringScore> expiringScoresQueueRef) {
+    // Scores answering windows that are not configured, null without a
+    // retention limit. Windows queried often enough are kept live by key,
+    // and dropped boards are released one sweep later, once no query can
+    // still be reading them. Only the log is part of snapshots.
+    private final ScoreLog scoreLog;
+    private final Map<String, MaterializedWindow> materializedWindows = new ConcurrentHashMap<>();
+    private final Map<String, WindowDemand> windowDemand = new ConcurrentHashMap<>();
+    private final List<Leaderboard> droppedWindows = new ArrayList<>();
+
+    private final ExpirationWheel expirationWheel;
+
+    public GameLeaderboardSet(long gameId, LeaderboardConfig config, ExpirationWheel expirationWheel) {
         this.gameId = gameId;
-        // Configure default windows
+        this.config = config;
+        this.allTimeLeaderboard = config.newLeaderboard(gameId);
+        this.expirationWheel = expirationWheel;
+        this.calendarLeaderboards = new EnumMap<>(CalendarPeriod.class);
+        this.calendarViews = new HashMap<>();
+        long nowMillis = System.currentTimeMillis();
+        for (CalendarPeriod period : config.calendarPeriods()) {
+            TumblingWindowLeaderboard leaderboard = new TumblingWindowLeaderboard(gameId, config, period, nowMillis);
+            calendarLeaderboards.put(period, leaderboard);
+            calendarViews.put(period.currentKey(), leaderboard);
+            calendarViews.put(period.previousKey(), leaderboard.closedPeriod());
+        }
+        this.scoreLog = config.windowLogRetentionMillis() > 0
+                ? new ScoreLog(gameId, config.windowLogRetentionMillis())
+                : null;
+        // Configure default windows once every field is set, since their
+        // boards schedule expirations through this set
         configureWindow("24h", Duration.ofHours(24));
-        this.expiringScoresQueueRef = expiringScoresQueueRef;
     }
 
     public void configureWindow(String windowKey, Duration duration) {
-        windowedLeaderboards.putIfAbsent(windowKey, new Leaderboard());
+        windowedLeaderboards.computeIfAbsent(windowKey, key -> newWindowLeaderboard(key, duration.toMillis()));
         windowDurations.put(windowKey, duration);
     }
 
+    private Leaderboard newWindowLeaderboard(String windowKey, long windowMillis) {
+        return config.newWindowLeaderboard(gameId, windowMillis, dropAtMillis -> expirationWheel.schedule(
+                new GlobalLeaderboardManager.BucketDrop(gameId, windowKey, dropAtMillis)));
+    }
+
+    /**
+     * The all-time board for a null or empty key, otherwise the board kept
+     * for windowKey: a configured window, a calendar period or a window
+     * currently kept live from the score log. Null for any other key.
+     */
     public Leaderboard getLeaderboard(String windowKey) {
         if (windowKey == null || windowKey.trim().isEmpty()) {
             return allTimeLeaderboard;
         }
-        return windowedLeaderboards.get(windowKey);
+        Leaderboard leaderboard = windowedLeaderboards.get(windowKey);
+        if (leaderboard != null) {
+            return leaderboard;
+        }
+        MaterializedWindow materialized = materializedWindows.get(windowKey);
+        return materialized != null ? materialized.leaderboard : calendarViews.get(windowKey);
+    }
+
+    /**
+     * The board answering a query of windowKey. Besides the boards of
+     * {@link #getLeaderboard(String)}, a sliding window of any duration up to
+     * the score log's retention is answered from the log. Such a window is
+     * kept live once it has been queried often enough, and is otherwise
+     * built for this query only.
+     *
+     * @throws InvalidWindowException if the window is neither kept nor
+     *                                within the score log's retention.
+     */
+    public Leaderboard queryLeaderboard(String windowKey, long nowMillis) {
+        MaterializedWindow materialized = windowKey == null ? null : materializedWindows.get(windowKey);
+        if (materialized != null) {
+            materialized.lastQueriedMillis = nowMillis;
+            return materialized.leaderboard;
+        }
+        Leaderboard leaderboard = getLeaderboard(windowKey);
+        if (leaderboard != null) {
+            return leaderboard;
+        }
+        long windowMillis = parseWindowMillis(windowKey);
+        if (windowMillis <= 0) {
+            throw new InvalidWindowException("Unknown window '" + windowKey + "'");
+        }
+        if (scoreLog == null) {
+            throw new InvalidWindowException("Window " + windowKey + " is not configured for game " + gameId);
+        }
+        if (windowMillis > scoreLog.getRetentionMillis()) {
+            throw new InvalidWindowException("Window " + windowKey + " exceeds the score log retention of "
+                    + Duration.ofMillis(scoreLog.getRetentionMillis()) + " for game " + gameId);
+        }
+        WindowDemand demand = windowDemand.computeIfAbsent(windowKey, key -> new WindowDemand(nowMillis));
+        if (demand.recordQuery(nowMillis, config.windowIdleMillis()) >= config.windowMaterializeQueries()) {
+            return materialize(windowKey, windowMillis, nowMillis);
+        }
+        leaderboard = config.newQueryLeaderboard(gameId);
+        leaderboard.loadSorted(scoreLog.window(nowMillis - windowMillis));
+        return leaderboard;
+    }
+
+    // Builds a live board for the window from the score log. Holding the log
+    // while the board is published means every later score reaches it.
+    private Leaderboard materialize(String windowKey, long windowMillis, long nowMillis) {
+        synchronized (scoreLog) {
+            MaterializedWindow materialized = materializedWindows.get(windowKey);
+            if (materialized == null) {
+                Leaderboard leaderboard = newWindowLeaderboard(windowKey, windowMillis);
+                SortedEntries entries = scoreLog.window(nowMillis - windowMillis);
+                leaderboard.loadSorted(entries);
+                materialized = new MaterializedWindow(leaderboard, windowMillis, nowMillis);
+                materializedWindows.put(windowKey, materialized);
+                windowDemand.remove(windowKey);
+                scheduleExpiry(windowKey, windowMillis, entries);
+            }
+            return materialized.leaderboard;
+        }
+    }
+
+    /**
+     * Drops the windows kept live from the score log that were not queried
+     * within the idle time, and releases those dropped by the previous call.
+     *
+     * @return The number of windows dropped.
+     */
+    public int dropIdleWindows(long nowMillis) {
+        long idleSince = nowMillis - config.windowIdleMillis();
+        synchronized (droppedWindows) {
+            droppedWindows.forEach(Leaderboard::release);
+            droppedWindows.clear();
+            int dropped = 0;
+            for (Map.Entry<String, MaterializedWindow> window : materializedWindows.entrySet()) {
+                if (window.getValue().lastQueriedMillis < idleSince
+                        && materializedWindows.remove(window.getKey(), window.getValue())) {
+                    droppedWindows.add(window.getValue().leaderboard);
+                    dropped++;
+                }
+            }
+            windowDemand.values().removeIf(demand -> demand.isIdle(idleSince));
+            return dropped;
+        }
+    }
+
+    /**
+     * Parses a sliding window key such as "30m": a positive count of seconds
+     * (s or S), minutes (m), hours (h), days (d) or 30-day months (M).
+     *
+     * @return The window length in millis, or -1 if windowKey is not one.
+     */
+    static long parseWindowMillis(String windowKey) {
+        if (windowKey == null || windowKey.length() < 2) {
+            return -1;
+        }
+        long unitMillis = switch (windowKey.charAt(windowKey.length() - 1)) {
+            case 's', 'S' -> 1000L;
+            case 'm' -> 60_000L;
+            case 'h' -> 3_600_000L;
+            case 'd' -> 86_400_000L;
+            case 'M' -> 30 * 86_400_000L;
+            default -> -1;
+        };
+        try {
+            long count = Long.parseLong(windowKey.substring(0, windowKey.length() - 1));
+            return unitMillis > 0 && count > 0 ? Math.multiplyExact(count, unitMillis) : -1;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reserves room for the user on the all-time board, which holds every
+     * player of the game, so that a score is refused before it is logged.
+     * Must be followed by {@link #addScore(ScoreEntry)} or
+     * {@link #cancelReservation(long)} for the user.
+     *
+     * @throws com.ringgrank.exception.LeaderboardCapacityExceededException if
+     *         the game has no room for another player.
+     */
+    public void reserveEntry(long userId) {
+        allTimeLeaderboard.reserveEntry(userId);
+    }
+
+    public void cancelReservation(long userId) {
+        allTimeLeaderboard.cancelReservation(userId);
     }
 
     public void addScore(ScoreEntry entry) {
@@ -51,22 +232,233 @@ public class GameLeaderboardSet implements Serializable {
         allTimeLeaderboard.addOrUpdateScore(entry);
 
         // Update windowed leaderboards if the score is within the window
-        Instant scoreTime = Instant.ofEpochMilli(entry.timestamp());
         windowedLeaderboards.forEach((windowKey, leaderboard) -> {
             Duration windowDuration = windowDurations.get(windowKey);
             if (windowDuration != null) {
-                Instant windowStartTime = Instant.now().minus(windowDuration);
-                if (scoreTime.isAfter(windowStartTime)) {
-                    leaderboard.addOrUpdateScore(entry);
-                    expiringScoresQueueRef.add(new GlobalLeaderboardManager.ExpiringScore(entry, gameId, windowKey,
-                            scoreTime.plus(windowDuration).toEpochMilli()));
-                }
+                addToWindow(windowKey, leaderboard, windowDuration.toMillis(), entry);
+            }
+        });
+        // Logged before reaching the live windows built from the log, so
+        // that a window materialized in between still gets the score
+        if (scoreLog != null) {
+            scoreLog.append(entry.userId(), entry.score(), entry.timestamp());
+            materializedWindows.forEach((windowKey, window) -> addToWindow(windowKey, window.leaderboard,
+                    window.windowMillis, entry));
+        }
+        // Calendar windows only take scores of their running period
+        calendarLeaderboards.values().forEach(leaderboard -> leaderboard.addOrUpdateScore(entry));
+    }
+
+    private void addToWindow(String windowKey, Leaderboard leaderboard, long windowMillis, ScoreEntry entry) {
+        Instant scoreTime = Instant.ofEpochMilli(entry.timestamp());
+        Instant windowStartTime = Instant.now().minusMillis(windowMillis);
+        if (scoreTime.isAfter(windowStartTime)) {
+            leaderboard.addOrUpdateScore(entry);
+            // Bucketed windows schedule their drops themselves
+            if (!(leaderboard instanceof BucketedWindowLeaderboard)) {
+                expirationWheel.schedule(gameId, windowKey, entry.userId(), entry.score(), entry.timestamp(),
+                        scoreTime.plusMillis(windowMillis).toEpochMilli());
+            }
+        }
+    }
+
+    /**
+     * Appends records in log order to the score log, if there is one, as
+     * restored from a snapshot or replayed from the WAL.
+     */
+    public void appendToScoreLog(long[] userIds, long[] scores, long[] timestamps, int count) {
+        if (scoreLog != null) {
+            scoreLog.appendAll(userIds, scores, timestamps, count);
+        }
+    }
+
+    /**
+     * Null unless scores are logged for arbitrary windows.
+     */
+    public ScoreLog getScoreLog() {
+        return scoreLog;
+    }
+
+    /**
+     * Loads a calendar window from snapshot entries in rank order, see
+     * {@link TumblingWindowLeaderboard#restore}. Ignored if the window is no
+     * longer configured.
+     */
+    public void restoreCalendarWindow(CalendarPeriod period, long periodStart, SortedEntries current,
+            SortedEntries previous, long nowMillis) {
+        TumblingWindowLeaderboard leaderboard = calendarLeaderboards.get(period);
+        if (leaderboard != null) {
+            leaderboard.restore(periodStart, current, previous, nowMillis);
+        }
+    }
+
+    /**
+     * Like {@link #mergeReplayed(String, SortedEntries)} for the calendar
+     * period of the given type starting at periodStart. Ignored unless that
+     * is the running or the closed period.
+     */
+    public void mergeReplayedCalendar(CalendarPeriod period, long periodStart, SortedEntries entries,
+            long nowMillis) {
+        TumblingWindowLeaderboard leaderboard = calendarLeaderboards.get(period);
+        Leaderboard board = leaderboard == null ? null : leaderboard.boardFor(periodStart, nowMillis);
+        if (board != null && entries.size() > 0) {
+            mergeInto(board, entries);
+        }
+    }
+
+    /**
+     * Loads a window's leaderboard from snapshot entries in rank order,
+     * skipping those that expired since, and schedules the rest to expire
+     * as one batch.
+     */
+    public void restoreWindow(String windowKey, SortedEntries entries, long nowMillis) {
+        long windowMillis = windowDurations.get(windowKey).toMillis();
+        EntryArrays live = new EntryArrays(gameId, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.timestampAt(i) + windowMillis > nowMillis) {
+                live.add(entries.userIdAt(i), entries.scoreAt(i), entries.timestampAt(i));
+            }
+        }
+        windowedLeaderboards.get(windowKey).loadSorted(live.size() == entries.size() ? entries : live);
+        scheduleExpiry(windowKey, windowMillis, live);
+    }
+
+    /**
+     * Replaces the entries of the given users in one leaderboard (null for
+     * all-time) with their final entries from WAL replay, given in rank order
+     * with one entry per user. Unless they are few, the leaderboard is
+     * rebuilt once from a linear merge with its current entries. Window
+     * entries are scheduled to expire as one batch.
+     */
+    public void mergeReplayed(String windowKey, SortedEntries entries) {
+        if (entries.size() == 0) {
+            return;
+        }
+        mergeInto(getLeaderboard(windowKey), entries);
+        if (windowKey != null) {
+            scheduleExpiry(windowKey, windowDurations.get(windowKey).toMillis(), entries);
+        }
+    }
+
+    // A rebuild that would exceed the board's capacity keeps the top ranks
+    private void mergeInto(Leaderboard leaderboard, SortedEntries entries) {
+        int existing = leaderboard.getTotalPlayers();
+        if (existing == 0) {
+            leaderboard.loadSorted(entries);
+        } else if ((long) entries.size() * REBUILD_RATIO < existing
+                && (long) existing + entries.size() <= leaderboard.getCapacity()) {
+            for (int i = 0; i < entries.size(); i++) {
+                leaderboard.addOrUpdateScore(
+                        new ScoreEntry(entries.userIdAt(i), gameId, entries.scoreAt(i), entries.timestampAt(i)));
+            }
+        } else {
+            leaderboard.loadSorted(merge(leaderboard, entries));
+        }
+    }
+
+    // Merges the current entries of users not in replayed with replayed,
+    // both in rank order
+    private EntryArrays merge(Leaderboard leaderboard, SortedEntries replayed) {
+        LongIntHashMap replacedUsers = new LongIntHashMap(replayed.size());
+        for (int i = 0; i < replayed.size(); i++) {
+            replacedUsers.put(replayed.userIdAt(i), i);
+        }
+        EntryArrays kept = new EntryArrays(gameId, leaderboard.getTotalPlayers());
+        leaderboard.forEachEntry((userId, score, timestamp) -> {
+            if (replacedUsers.get(userId) == LongIntHashMap.MISSING) {
+                kept.add(userId, score, timestamp);
             }
         });
+        EntryArrays merged = new EntryArrays(gameId, kept.size() + replayed.size());
+        int k = 0;
+        int r = 0;
+        while (k < kept.size() || r < replayed.size()) {
+            boolean takeKept = r == replayed.size() || (k < kept.size()
+                    && compareRank(kept.scoreAt(k), kept.timestampAt(k), kept.userIdAt(k),
+                            replayed.scoreAt(r), replayed.timestampAt(r), replayed.userIdAt(r)) < 0);
+            if (takeKept) {
+                merged.add(kept.userIdAt(k), kept.scoreAt(k), kept.timestampAt(k));
+                k++;
+            } else {
+                merged.add(replayed.userIdAt(r), replayed.scoreAt(r), replayed.timestampAt(r));
+                r++;
+            }
+        }
+        return merged;
     }
 
-    public void setExpiringScoresQueueRef(DelayQueue<GlobalLeaderboardManager.ExpiringScore> expiringScoresQueueRef) {
-        this.expiringScoresQueueRef = expiringScoresQueueRef;
+    // Same order as ScoreEntry.compareTo
+    private static int compareRank(long score, long timestamp, long userId, long otherScore, long otherTimestamp,
+            long otherUserId) {
+        int byScore = Long.compare(otherScore, score);
+        if (byScore != 0) {
+            return byScore;
+        }
+        int byTimestamp = Long.compare(timestamp, otherTimestamp);
+        return byTimestamp != 0 ? byTimestamp : Long.compare(userId, otherUserId);
+    }
+
+    private void scheduleExpiry(String windowKey, long windowMillis, SortedEntries live) {
+        int count = live.size();
+        if (count == 0 || getLeaderboard(windowKey) instanceof BucketedWindowLeaderboard) {
+            return;
+        }
+        int[] order = IndexSort.sortedIndexes(count,
+                (left, right) -> Long.compare(live.timestampAt(left), live.timestampAt(right)));
+        long[] userIds = new long[count];
+        long[] scores = new long[count];
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            userIds[i] = live.userIdAt(order[i]);
+            scores[i] = live.scoreAt(order[i]);
+            timestamps[i] = live.timestampAt(order[i]);
+        }
+        expirationWheel.schedule(new GlobalLeaderboardManager.ExpiringBatch(gameId, windowKey, windowMillis,
+                userIds, scores, timestamps));
+    }
+
+    /**
+     * Starts a capture on every leaderboard of this game, see
+     * {@link Leaderboard#beginCapture()}. No score may be in flight for this
+     * game while it runs.
+     */
+    public void beginCapture() {
+        allTimeLeaderboard.beginCapture();
+        windowedLeaderboards.values().forEach(Leaderboard::beginCapture);
+        calendarLeaderboards.values().forEach(Leaderboard::beginCapture);
+        if (scoreLog != null) {
+            scoreLog.beginCapture();
+        }
+    }
+
+    /**
+     * Sum of the versions of this game's leaderboards. Board versions only
+     * grow, so an unchanged sum means none of the boards changed.
+     */
+    public long getVersion() {
+        long version = allTimeLeaderboard.getVersion();
+        for (Leaderboard leaderboard : windowedLeaderboards.values()) {
+            version += leaderboard.getVersion();
+        }
+        for (Leaderboard leaderboard : calendarLeaderboards.values()) {
+            version += leaderboard.getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Releases off-heap memory held by this game's leaderboards. Called when
+     * the game is dropped; the set must not be used afterwards.
+     */
+    public void release() {
+        allTimeLeaderboard.release();
+        windowedLeaderboards.values().forEach(Leaderboard::release);
+        calendarLeaderboards.values().forEach(Leaderboard::release);
+        materializedWindows.values().forEach(window -> window.leaderboard.release());
+        synchronized (droppedWindows) {
+            droppedWindows.forEach(Leaderboard::release);
+            droppedWindows.clear();
+        }
     }
 
     public long getGameId() {
@@ -76,4 +468,105 @@ public class GameLeaderboardSet implements Serializable {
     public Map<String, Duration> getWindowDurations() {
         return windowDurations;
     }
+
+    public Collection<TumblingWindowLeaderboard> getCalendarLeaderboards() {
+        return calendarLeaderboards.values();
+    }
+
+    /**
+     * A window kept live from the score log.
+     */
+    private static final class MaterializedWindow {
+        private final Leaderboard leaderboard;
+        private final long windowMillis;
+        private volatile long lastQueriedMillis;
+
+        MaterializedWindow(Leaderboard leaderboard, long windowMillis, long lastQueriedMillis) {
+            this.leaderboard = leaderboard;
+            this.windowMillis = windowMillis;
+            this.lastQueriedMillis = lastQueriedMillis;
+        }
+    }
+
+    /**
+     * Queries of a window not kept live, counted per idle period.
+     */
+    private static final class WindowDemand {
+        private long periodStart;
+        private int queries;
+
+        WindowDemand(long nowMillis) {
+            this.periodStart = nowMillis;
+        }
+
+        // Returns the queries so far in the current period
+        synchronized int recordQuery(long nowMillis, long idleMillis) {
+            if (nowMillis - periodStart >= idleMillis) {
+                periodStart = nowMillis;
+                queries = 0;
+            }
+            return ++queries;
+        }
+
+        synchronized boolean isIdle(long idleSince) {
+            return periodStart < idleSince;
+        }
+    }
+
+    /**
+     * Growable parallel arrays of entries, kept in the order added.
+     */
+    private static final class EntryArrays implements SortedEntries {
+        private final long gameId;
+        private long[] userIds;
+        private long[] scores;
+        private long[] timestamps;
+        private int size;
+
+        EntryArrays(long gameId, int capacity) {
+            this.gameId = gameId;
+            int initial = Math.max(capacity, 1);
+            this.userIds = new long[initial];
+            this.scores = new long[initial];
+            this.timestamps = new long[initial];
+        }
+
+        void add(long userId, long score, long timestamp) {
+            if (size == userIds.length) {
+                int capacity = size * 2;
+                userIds = Arrays.copyOf(userIds, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            userIds[size] = userId;
+            scores[size] = score;
+            timestamps[size] = timestamp;
+            size++;
+        }
+
+        @Override
+        public long gameId() {
+            return gameId;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long userIdAt(int index) {
+            return userIds[index];
+        }
+
+        @Override
+        public long scoreAt(int index) {
+            return scores[index];
+        }
+
+        @Override
+        public long timestampAt(int index) {
+            return timestamps[index];
+        }
+    }
 }
\ No newline at end of file
@@ -1,97 +1,161 @@
 package com.ringgrank.model;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.NavigableSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
- * Manages a single leaderboard instance (either all-time or a specific window).
- * Contains the sorted set of scores and a map for quick user score lookup.
- * This class is thread-safe and serializable for snapshot support.
+ * A single leaderboard instance (either all-time or a specific window).
+ * Keeps one current ScoreEntry per user, ordered by score (desc), then
+ * timestamp (asc), then userId. Ranks are 1-based.
+ * Implementations are thread-safe; see {@link StorageEngine} for the
+ * available storage layouts.
  */
-public class Leaderboard implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    // Stores all score entries, sorted by score (desc) and then timestamp (asc)
-    private final NavigableSet<ScoreEntry> sortedScores;
-
-    // Maps userId to their current ScoreEntry for O(1) lookup
-    private final Map<Long, ScoreEntry> userScores;
-
-    public Leaderboard() {
-        this.sortedScores = new ConcurrentSkipListSet<>();
-        this.userScores = new ConcurrentHashMap<>();
-    }
-
-    public void addOrUpdateScore(ScoreEntry newEntry) {
-        ScoreEntry oldEntry = userScores.get(newEntry.userId());
-
-        if (oldEntry != null) {
-            sortedScores.remove(oldEntry);
-        }
-
-        sortedScores.add(newEntry);
-        userScores.put(newEntry.userId(), newEntry);
+public interface Leaderboard {
+
+    /**
+     * Adds the entry, replacing the user's current entry if there is one.
+     */
+    void addOrUpdateScore(ScoreEntry newEntry);
+
+    /**
+     * Removes the entry if it is still the user's current entry.
+     */
+    void removeScore(ScoreEntry entryToRemove);
+
+    /**
+     * Removes each entry that is still its user's current entry, like
+     * {@link #removeScore(ScoreEntry)} but as one update.
+     */
+    default void removeScores(List<ScoreEntry> entriesToRemove) {
+        entriesToRemove.forEach(this::removeScore);
     }
 
-    public void removeScore(ScoreEntry entryToRemove) {
-        if (entryToRemove == null) {
-            return;
-        }
-
-        sortedScores.remove(entryToRemove);
-        userScores.computeIfPresent(entryToRemove.userId(),
-                (userId, currentEntry) -> currentEntry.equals(entryToRemove) ? null : currentEntry);
+    ScoreEntry getUserScore(Long userId);
+
+    List<ScoreEntry> getTopK(int k);
+
+    /**
+     * Returns the 1-based rank of the user, or -1 if the user is not on this
+     * leaderboard.
+     */
+    int getUserRank(Long userId);
+
+    /**
+     * Returns the user's entry together with its 1-based rank, both read under
+     * one lock acquisition so they describe the same state, or null if the
+     * user is not on this leaderboard.
+     */
+    RankedEntry getRankedEntry(Long userId);
+
+    /**
+     * Returns the entry at the given 1-based rank, or null if the rank is out of
+     * range.
+     */
+    ScoreEntry getEntryAtRank(int rank);
+
+    /**
+     * Returns the score-bucket rank engine, or null if this leaderboard was
+     * created without one.
+     */
+    FenwickRankEngine getRankEngine();
+
+    /**
+     * Estimates the rank of a score from the quantile sketch. Cost depends only
+     * on the sketch size (a few KB), not on the number of players.
+     */
+    QuantileSketch.Estimate estimateRank(long score);
+
+    double getSketchAccuracy();
+
+    int getTotalPlayers();
+
+    void clear();
+
+    /**
+     * Visits every entry in rank order while holding the leaderboard's read
+     * lock, so the visitor sees one consistent state. Writes wait until the
+     * visit completes.
+     */
+    void forEachEntry(EntryVisitor visitor);
+
+    /**
+     * Replaces the contents of this leaderboard with the given entries, which
+     * must already be in rank order with one entry per user. Builds the sorted
+     * index in O(N) rather than N individual inserts.
+     *
+     * @throws IllegalArgumentException if the entries are not in rank order.
+     */
+    void loadSorted(SortedEntries entries);
+
+    /**
+     * Marks the current state as the capture point. Until the capture is
+     * read by {@link #forEachCapturedEntry(EntryVisitor)}, each user's first
+     * change records the entry they had at this point. Callers must ensure no
+     * write to this leaderboard is in flight.
+     */
+    void beginCapture();
+
+    /**
+     * Visits the entries as they were at {@link #beginCapture()}, in rank
+     * order, then ends the capture. Without an active capture it visits the
+     * current entries.
+     */
+    void forEachCapturedEntry(EntryVisitor visitor);
+
+    /**
+     * Returns a counter that increases with every mutation of this leaderboard.
+     */
+    long getVersion();
+
+    /**
+     * Returns a counter that increases whenever the top k entries may have
+     * changed. Mutations that only touch ranks well below k leave it unchanged,
+     * so cached top-K results stay valid across them.
+     */
+    long getTopKVersion(int k);
+
+    /**
+     * Most players this leaderboard holds. {@link #loadSorted(SortedEntries)}
+     * skips the entries ranked below it.
+     */
+    default int getCapacity() {
+        return Integer.MAX_VALUE;
     }
 
-    public ScoreEntry getUserScore(Long userId) {
-        return userScores.get(userId);
+    /**
+     * Reserves room for the user's entry, so that a score can be refused
+     * before it is logged. Each reservation ends with the user's next
+     * {@link #addOrUpdateScore(ScoreEntry)} or
+     * {@link #cancelReservation(long)}. Boards without a capacity limit
+     * always have room.
+     *
+     * @throws com.ringgrank.exception.LeaderboardCapacityExceededException if
+     *         the board is full and the user has no entry or reservation on
+     *         it.
+     */
+    default void reserveEntry(long userId) {
     }
 
-    public List<ScoreEntry> getTopK(int k) {
-        if (k <= 0) {
-            return Collections.emptyList();
-        }
-
-        List<ScoreEntry> topK = new ArrayList<>(k);
-        int count = 0;
-        for (ScoreEntry entry : sortedScores) {
-            if (count >= k) {
-                break;
-            }
-            topK.add(entry);
-            count++;
-        }
-        return topK;
+    default void cancelReservation(long userId) {
     }
 
-    public int getUserRank(Long userId) {
-        ScoreEntry userEntry = userScores.get(userId);
-        if (userEntry == null) {
-            return -1; // User not found
-        }
-
-        int rank = 1;
-        for (ScoreEntry entry : sortedScores) {
-            if (entry.equals(userEntry)) {
-                return rank;
-            }
-            rank++;
-        }
-        return -1; // Should not happen if userEntry was found in userBestScores
+    /**
+     * Frees any memory the leaderboard holds outside the Java heap. Called when
+     * the leaderboard is discarded; it must not be used afterwards.
+     */
+    default void release() {
     }
 
-    public int getTotalPlayers() {
-        return sortedScores.size();
+    /**
+     * A user's entry and its 1-based rank at the same point in time.
+     */
+    record RankedEntry(ScoreEntry entry, int rank) {
     }
 
-    public void clear() {
-        sortedScores.clear();
-        userScores.clear();
+    /**
+     * Receives entries from {@link #forEachEntry(EntryVisitor)}.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(long userId, long score, long timestamp);
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.ringgrank.model;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Settings applied to every Leaderboard created for a game.
+ *
+ * @param storageEngine        Storage layout of the game's leaderboards.
+ * @param rankEngineEnabled    Whether each leaderboard maintains a
+ *                             {@link FenwickRankEngine} for percentile queries.
+ * @param rankEngineMinScore   Lowest score tracked by the rank engine.
+ * @param rankEngineMaxScore   Highest score tracked by the rank engine.
+ * @param rankEngineMaxBuckets Bucket budget for the rank engine. Ranges that fit
+ *                             get exact buckets, wider ranges adaptive ones.
+ * @param sketchAccuracy       Relative score accuracy of the {@link QuantileSketch}
+ *                             used for approximate ranks (e.g. 0.01 for 1%).
+ * @param sketchMaxBins        Bin budget of the quantile sketch; 4 bytes each.
+ * @param offHeapSlabRecords   Records per direct-memory slab for the off-heap
+ *                             engine (40 bytes each).
+ * @param offHeapMaxEntries    Maximum players per off-heap leaderboard.
+ * @param windowBucketMillis   Bucket length of sliding windows, which then
+ *                             expire a whole bucket at a time; 0 expires
+ *                             each entry on its own.
+ * @param calendarPeriods      Tumbling calendar windows kept per game.
+ * @param calendarZone         Time zone whose midnight starts calendar
+ *                             periods.
+ * @param windowLogRetentionMillis How long each game's {@link ScoreLog}
+ *                             keeps scores, and so the longest window it
+ *                             answers; 0 keeps no log.
+ * @param windowMaterializeQueries Queries of a window within
+ *                             windowIdleMillis after which it is kept live.
+ * @param windowIdleMillis     Time without a query after which a window
+ *                             built from the log is dropped again.
+ */
+public record LeaderboardConfig(
+        StorageEngine storageEngine,
+        boolean rankEngineEnabled,
+        long rankEngineMinScore,
+        long rankEngineMaxScore,
+        int rankEngineMaxBuckets,
+        double sketchAccuracy,
+        int sketchMaxBins,
+        int offHeapSlabRecords,
+        int offHeapMaxEntries,
+        long windowBucketMillis,
+        List<CalendarPeriod> calendarPeriods,
+        ZoneId calendarZone,
+        long windowLogRetentionMillis,
+        int windowMaterializeQueries,
+        long windowIdleMillis) {
+
+    public static final LeaderboardConfig DEFAULT = new LeaderboardConfig(StorageEngine.TREE, false, 0, 1_000_000,
+            4096, 0.01, 1024, 65536, 10_000_000, 0, List.of(), ZoneOffset.UTC, 0, 3, 600_000);
+
+    public LeaderboardConfig withStorageEngine(StorageEngine engine) {
+        return new LeaderboardConfig(engine, rankEngineEnabled, rankEngineMinScore, rankEngineMaxScore,
+                rankEngineMaxBuckets, sketchAccuracy, sketchMaxBins, offHeapSlabRecords, offHeapMaxEntries,
+                windowBucketMillis, calendarPeriods, calendarZone, windowLogRetentionMillis,
+                windowMaterializeQueries, windowIdleMillis);
+    }
+
+    Leaderboard newLeaderboard(long gameId) {
+        return switch (storageEngine) {
+            case TREE -> new TreeLeaderboard(this);
+            case COMPACT -> new CompactLeaderboard(gameId, this);
+            case OFF_HEAP -> new OffHeapLeaderboard(gameId, this, offHeapSlabRecords, offHeapMaxEntries);
+        };
+    }
+
+    // For a board built for a single query and then left to the garbage
+    // collector, so never off-heap
+    Leaderboard newQueryLeaderboard(long gameId) {
+        return storageEngine == StorageEngine.OFF_HEAP ? new CompactLeaderboard(gameId, this) : newLeaderboard(gameId);
+    }
+
+    Leaderboard newWindowLeaderboard(long gameId, long windowMillis,
+            BucketedWindowLeaderboard.BucketListener listener) {
+        if (windowBucketMillis <= 0) {
+            return newLeaderboard(gameId);
+        }
+        return new BucketedWindowLeaderboard(gameId, newLeaderboard(gameId), windowBucketMillis, windowMillis,
+                listener);
+    }
+
+    FenwickRankEngine newRankEngine() {
+        if (!rankEngineEnabled) {
+            return null;
+        }
+        return new FenwickRankEngine(rankEngineMinScore, rankEngineMaxScore, rankEngineMaxBuckets);
+    }
+
+    QuantileSketch newScoreSketch() {
+        return new QuantileSketch(sketchAccuracy, sketchMaxBins);
+    }
+}
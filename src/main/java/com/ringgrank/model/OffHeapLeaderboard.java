@@ -0,0 +1,287 @@
+package com.ringgrank.model;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ringgrank.exception.LeaderboardCapacityExceededException;
+import com.ringgrank.util.DirectBuffers;
+import com.ringgrank.util.OffHeapLongIntMap;
+
+/**
+ * Leaderboard whose entries, sorted index and userId index all live outside
+ * the Java heap, so multi-GB boards add nothing for the garbage collector to
+ * trace.
+ *
+ * Entries are fixed-width 40-byte records in direct ByteBuffer slabs:
+ * userId, score, timestamp (8 bytes each), then left, right, subtree size and
+ * height (4 bytes each). Slabs are allocated on demand as the board grows.
+ * The board refuses new players beyond its configured capacity, counting
+ * those with a reservation as present. Memory stays
+ * reserved until {@link #release()} frees every slab and the index, which
+ * should happen when the game is dropped.
+ */
+public class OffHeapLeaderboard extends SlotLeaderboard {
+    private static final int RECORD_BYTES = 40;
+    private static final int USER_ID = 0;
+    private static final int SCORE = 8;
+    private static final int TIMESTAMP = 16;
+    private static final int LEFT = 24;
+    private static final int RIGHT = 28;
+    private static final int SIZE = 32;
+    private static final int HEIGHT = 36;
+
+    private final int maxEntries;
+    private final int slabShift;
+    private final int slabMask;
+
+    private List<ByteBuffer> slabs;
+    private OffHeapLongIntMap userSlots;
+    // Slots below highWater have been used; freed ones are chained through LEFT
+    private int highWater;
+    private int freeHead;
+    private boolean released;
+    // Pending submissions per user without an entry, see reserveEntry
+    private Map<Long, Integer> reservations;
+
+    /**
+     * @param slabRecords Records per slab, rounded up to a power of two.
+     * @param maxEntries  Maximum number of players on this board.
+     */
+    public OffHeapLeaderboard(long gameId, LeaderboardConfig config, int slabRecords, int maxEntries) {
+        super(gameId, config);
+        int records = Integer.highestOneBit(Math.max(1, slabRecords - 1) << 1);
+        this.slabShift = Integer.numberOfTrailingZeros(records);
+        this.slabMask = records - 1;
+        this.maxEntries = maxEntries;
+        this.reservations = new HashMap<>();
+        initStorage();
+    }
+
+    @Override
+    public int getCapacity() {
+        return maxEntries;
+    }
+
+    @Override
+    public void reserveEntry(long userId) {
+        lock.writeLock().lock();
+        try {
+            checkNotReleased();
+            if (lookupSlot(userId) != NIL) {
+                return;
+            }
+            Integer pending = reservations.get(userId);
+            if (pending == null && entryCount() + reservations.size() >= maxEntries) {
+                throw new LeaderboardCapacityExceededException(
+                        "Off-heap leaderboard for game " + gameId + " is full (" + maxEntries + " players)");
+            }
+            reservations.put(userId, pending == null ? 1 : pending + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void cancelReservation(long userId) {
+        lock.writeLock().lock();
+        try {
+            endReservation(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected ScoreEntry replaceEntry(ScoreEntry newEntry) {
+        ScoreEntry oldEntry = super.replaceEntry(newEntry);
+        endReservation(newEntry.userId());
+        return oldEntry;
+    }
+
+    private void endReservation(long userId) {
+        reservations.computeIfPresent(userId, (user, pending) -> pending > 1 ? pending - 1 : null);
+    }
+
+    /**
+     * Frees all off-heap memory held by this board. A reader still holding
+     * the board afterwards sees it empty; writes fail with an
+     * IllegalStateException.
+     */
+    @Override
+    public void release() {
+        lock.writeLock().lock();
+        try {
+            if (released) {
+                return;
+            }
+            freeStorage();
+            forgetEntries();
+            released = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Native memory currently reserved by the slabs and the userId index.
+     */
+    public long allocatedBytes() {
+        lock.readLock().lock();
+        try {
+            if (released) {
+                return 0;
+            }
+            return (long) slabs.size() * (slabMask + 1) * RECORD_BYTES + userSlots.allocatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected int allocateSlot() {
+        checkNotReleased();
+        if (freeHead != NIL) {
+            int slot = freeHead;
+            freeHead = leftOf(slot);
+            return slot;
+        }
+        if (highWater >= maxEntries) {
+            throw new LeaderboardCapacityExceededException(
+                    "Off-heap leaderboard for game " + gameId + " is full (" + maxEntries + " players)");
+        }
+        if ((highWater >>> slabShift) == slabs.size()) {
+            slabs.add(DirectBuffers.allocate((slabMask + 1) * RECORD_BYTES));
+        }
+        return highWater++;
+    }
+
+    @Override
+    protected void releaseSlot(int slot) {
+        setLeft(slot, freeHead);
+        freeHead = slot;
+    }
+
+    @Override
+    protected void writeSlot(int slot, long userId, long score, long timestamp) {
+        ByteBuffer slab = slab(slot);
+        int base = offset(slot);
+        slab.putLong(base + USER_ID, userId);
+        slab.putLong(base + SCORE, score);
+        slab.putLong(base + TIMESTAMP, timestamp);
+        slab.putInt(base + LEFT, NIL);
+        slab.putInt(base + RIGHT, NIL);
+        slab.putInt(base + SIZE, 1);
+        slab.putInt(base + HEIGHT, 1);
+    }
+
+    @Override
+    protected long userIdAt(int slot) {
+        return slab(slot).getLong(offset(slot) + USER_ID);
+    }
+
+    @Override
+    protected long scoreAt(int slot) {
+        return slab(slot).getLong(offset(slot) + SCORE);
+    }
+
+    @Override
+    protected long timestampAt(int slot) {
+        return slab(slot).getLong(offset(slot) + TIMESTAMP);
+    }
+
+    @Override
+    protected int leftOf(int slot) {
+        return slab(slot).getInt(offset(slot) + LEFT);
+    }
+
+    @Override
+    protected int rightOf(int slot) {
+        return slab(slot).getInt(offset(slot) + RIGHT);
+    }
+
+    @Override
+    protected int sizeOf(int slot) {
+        return slab(slot).getInt(offset(slot) + SIZE);
+    }
+
+    @Override
+    protected int heightOf(int slot) {
+        return slab(slot).getInt(offset(slot) + HEIGHT);
+    }
+
+    @Override
+    protected void setLeft(int slot, int child) {
+        slab(slot).putInt(offset(slot) + LEFT, child);
+    }
+
+    @Override
+    protected void setRight(int slot, int child) {
+        slab(slot).putInt(offset(slot) + RIGHT, child);
+    }
+
+    @Override
+    protected void setSizeAndHeight(int slot, int size, int height) {
+        ByteBuffer slab = slab(slot);
+        int base = offset(slot);
+        slab.putInt(base + SIZE, size);
+        slab.putInt(base + HEIGHT, height);
+    }
+
+    @Override
+    protected int lookupSlot(long userId) {
+        if (released) {
+            return NIL;
+        }
+        int slot = userSlots.get(userId);
+        return slot == OffHeapLongIntMap.MISSING ? NIL : slot;
+    }
+
+    @Override
+    protected void indexSlot(long userId, int slot) {
+        userSlots.put(userId, slot);
+    }
+
+    @Override
+    protected void unindexSlot(long userId) {
+        userSlots.remove(userId);
+    }
+
+    @Override
+    protected void clearStorage() {
+        checkNotReleased();
+        freeStorage();
+        initStorage();
+    }
+
+    private ByteBuffer slab(int slot) {
+        return slabs.get(slot >>> slabShift);
+    }
+
+    private int offset(int slot) {
+        return (slot & slabMask) * RECORD_BYTES;
+    }
+
+    private void initStorage() {
+        slabs = new ArrayList<>();
+        userSlots = new OffHeapLongIntMap();
+        highWater = 0;
+        freeHead = NIL;
+    }
+
+    private void freeStorage() {
+        for (ByteBuffer slab : slabs) {
+            DirectBuffers.free(slab);
+        }
+        slabs.clear();
+        userSlots.release();
+    }
+
+    private void checkNotReleased() {
+        if (released) {
+            throw new IllegalStateException("Off-heap leaderboard for game " + gameId + " has been released");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.ringgrank.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Size-augmented AVL tree ordered by the elements' natural ordering.
+ * Every node stores the size of its subtree, which lets the tree answer
+ * "rank of element" and "element at rank r" in O(log N) in addition to the
+ * usual O(log N) insert and delete.
+ * Ranks are 1-based: rank 1 is the smallest element in natural order (for
+ * {@link ScoreEntry} that is the best score).
+ * This class is not thread-safe; callers must provide their own locking.
+ */
+public class OrderStatisticTree<E extends Comparable<? super E>> {
+    private Node<E> root;
+
+    private static final class Node<E> {
+        E value;
+        Node<E> left;
+        Node<E> right;
+        int height = 1;
+        int size = 1;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * Adds the element if it is not already present.
+     *
+     * @return true if the tree changed.
+     */
+    public boolean add(E value) {
+        int before = size();
+        root = insert(root, value);
+        return size() != before;
+    }
+
+    /**
+     * Removes the element if present.
+     *
+     * @return true if the tree changed.
+     */
+    public boolean remove(E value) {
+        int before = size();
+        root = delete(root, value);
+        return size() != before;
+    }
+
+    /**
+     * Returns the 1-based rank of the element, or -1 if it is not present.
+     */
+    public int rankOf(E value) {
+        int rank = 0;
+        Node<E> node = root;
+        while (node != null) {
+            int cmp = value.compareTo(node.value);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left) + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the element at the given 1-based rank, or null if the rank is out
+     * of range.
+     */
+    public E get(int rank) {
+        if (rank < 1 || rank > size()) {
+            return null;
+        }
+        Node<E> node = root;
+        int remaining = rank;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (remaining <= leftSize) {
+                node = node.left;
+            } else if (remaining == leftSize + 1) {
+                return node.value;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first k elements in order. Runs in O(log N + k).
+     */
+    public List<E> first(int k) {
+        if (k <= 0 || root == null) {
+            return Collections.emptyList();
+        }
+        List<E> result = new ArrayList<>(Math.min(k, size()));
+        // Explicit stack; AVL height is bounded so a small array is enough
+        @SuppressWarnings("unchecked")
+        Node<E>[] stack = (Node<E>[]) new Node<?>[root.height + 1];
+        int top = 0;
+        Node<E> node = root;
+        while ((node != null || top > 0) && result.size() < k) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            result.add(node.value);
+            node = node.right;
+        }
+        return result;
+    }
+
+    /**
+     * Visits every element in order.
+     */
+    public void forEach(Consumer<? super E> action) {
+        if (root == null) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Node<E>[] stack = (Node<E>[]) new Node<?>[root.height + 1];
+        int top = 0;
+        Node<E> node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+            node = stack[--top];
+            action.accept(node.value);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Replaces the contents of the tree with the given elements, which must
+     * already be sorted in natural order and free of duplicates. Builds a
+     * perfectly balanced tree in O(N) instead of N individual inserts.
+     */
+    public void buildFromSorted(List<E> sorted) {
+        root = build(sorted, 0, sorted.size() - 1);
+    }
+
+    private Node<E> build(List<E> sorted, int from, int to) {
+        if (from > to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        Node<E> node = new Node<>(sorted.get(mid));
+        node.left = build(sorted, from, mid - 1);
+        node.right = build(sorted, mid + 1, to);
+        update(node);
+        return node;
+    }
+
+    private Node<E> insert(Node<E> node, E value) {
+        if (node == null) {
+            return new Node<>(value);
+        }
+        int cmp = value.compareTo(node.value);
+        if (cmp < 0) {
+            node.left = insert(node.left, value);
+        } else if (cmp > 0) {
+            node.right = insert(node.right, value);
+        } else {
+            return node;
+        }
+        return rebalance(node);
+    }
+
+    private Node<E> delete(Node<E> node, E value) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = value.compareTo(node.value);
+        if (cmp < 0) {
+            node.left = delete(node.left, value);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, value);
+        } else {
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // Replace with the in-order successor
+            Node<E> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node.value = successor.value;
+            node.right = delete(node.right, successor.value);
+        }
+        return rebalance(node);
+    }
+
+    private Node<E> rebalance(Node<E> node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<E> rotateRight(Node<E> node) {
+        Node<E> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private Node<E> rotateLeft(Node<E> node) {
+        Node<E> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private void update(Node<E> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,178 @@
+package com.ringgrank.model;
+
+/**
+ * Mergeable quantile sketch over scores with a relative-accuracy guarantee.
+ *
+ * Scores are counted in logarithmic bins, where bin i covers
+ * (gamma^(i-1), gamma^i] and gamma = (1 + a) / (1 - a) for relative accuracy
+ * a. Unlike KLL or t-digest, the bins are plain counters, so removing a score
+ * is as cheap as adding one. That lets a Leaderboard keep the sketch in step
+ * with addOrUpdateScore and removeScore. Two sketches with the same accuracy
+ * merge by adding their bins.
+ *
+ * Memory is bounded by maxBins; when the score range needs more, the lowest
+ * bins are folded together, so accuracy is only lost at the bottom of the
+ * board. Scores of zero or below share a dedicated bin.
+ * This class is not thread-safe; Leaderboard guards it with its own lock.
+ */
+public class QuantileSketch {
+    private static final int INITIAL_BINS = 64;
+
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final int maxBins;
+
+    // bins[i] counts the scores whose bin index is offset + i
+    private int[] bins = new int[0];
+    private int offset;
+    // Bin indexes below this have been folded into it
+    private int floorIndex = Integer.MIN_VALUE;
+    private long zeroCount;
+    private long totalCount;
+
+    /**
+     * Rank estimate for a score.
+     *
+     * @param rank      Estimated 1-based rank (midpoint of the possible range).
+     * @param rankError Maximum distance between the estimate and the true rank.
+     * @param total     Number of scores in the sketch.
+     */
+    public record Estimate(long rank, long rankError, long total) {
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relativeAccuracy must be in (0, 1)");
+        }
+        if (maxBins < 2) {
+            throw new IllegalArgumentException("maxBins must be at least 2");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+        this.maxBins = maxBins;
+    }
+
+    public void add(long score) {
+        adjust(score, 1);
+    }
+
+    public void remove(long score) {
+        adjust(score, -1);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Adds all counts of another sketch into this one. Both sketches must use
+     * the same relative accuracy.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+        }
+        for (int i = 0; i < other.bins.length; i++) {
+            if (other.bins[i] != 0) {
+                adjustBin(other.offset + i, other.bins[i]);
+            }
+        }
+        zeroCount += other.zeroCount;
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * Estimates the rank of a score that is present in the sketch. Every score in
+     * a higher bin ranks above it; scores sharing its bin may rank on either side,
+     * which is what the error bound covers.
+     */
+    public Estimate estimateRank(long score) {
+        long above;
+        long sameBin;
+        if (score <= 0) {
+            above = totalCount - zeroCount;
+            sameBin = zeroCount;
+        } else {
+            int index = Math.max(indexOf(score), floorIndex);
+            above = 0;
+            sameBin = 0;
+            for (int i = bins.length - 1; i >= 0; i--) {
+                int binIndex = offset + i;
+                if (binIndex > index) {
+                    above += bins[i];
+                } else {
+                    if (binIndex == index) {
+                        sameBin = bins[i];
+                    }
+                    break;
+                }
+            }
+        }
+        // The score itself is one of the sameBin entries
+        long others = Math.max(sameBin - 1, 0);
+        long rankError = (others + 1) / 2;
+        return new Estimate(above + 1 + others / 2, rankError, totalCount);
+    }
+
+    public void clear() {
+        bins = new int[0];
+        offset = 0;
+        floorIndex = Integer.MIN_VALUE;
+        zeroCount = 0;
+        totalCount = 0;
+    }
+
+    private int indexOf(long score) {
+        return (int) Math.ceil(Math.log(score) / logGamma);
+    }
+
+    private void adjust(long score, int delta) {
+        totalCount += delta;
+        if (score <= 0) {
+            zeroCount += delta;
+            return;
+        }
+        adjustBin(indexOf(score), delta);
+    }
+
+    private void adjustBin(int index, int delta) {
+        index = Math.max(index, floorIndex);
+        if (bins.length == 0) {
+            bins = new int[Math.min(INITIAL_BINS, maxBins)];
+            offset = index - bins.length / 2;
+        } else if (index < offset || index >= offset + bins.length) {
+            index = grow(index);
+        }
+        bins[index - offset] += delta;
+    }
+
+    // Resizes the bin array to cover the index, folding the lowest bins together
+    // when the span would exceed maxBins. Returns the (possibly folded) index.
+    private int grow(int index) {
+        int low = Math.min(offset, index);
+        int high = Math.max(offset + bins.length - 1, index);
+        int length = Math.min(maxBins, Math.max(high - low + 1, bins.length * 2));
+        int newOffset;
+        if (high - low + 1 > maxBins) {
+            newOffset = high - maxBins + 1;
+            floorIndex = newOffset;
+        } else if (index < offset) {
+            // Growing downwards: leave the headroom below
+            newOffset = high - length + 1;
+        } else {
+            newOffset = low;
+        }
+        int[] resized = new int[length];
+        for (int i = 0; i < bins.length; i++) {
+            int target = Math.max(offset + i, newOffset) - newOffset;
+            resized[target] += bins[i];
+        }
+        bins = resized;
+        offset = newOffset;
+        return Math.max(index, newOffset);
+    }
+}
@@ -0,0 +1,223 @@
+package com.ringgrank.model;
+
+import java.util.Arrays;
+
+import com.ringgrank.util.IndexSort;
+import com.ringgrank.util.LongIntHashMap;
+
+/**
+ * Time-indexed log of one game's submissions, from which a sliding window of
+ * any duration up to the retention limit can be answered.
+ *
+ * Records are kept in arrival order as primitive columns, together with the
+ * running maximum of their timestamps. No record before the last position
+ * whose running maximum is still outside a window can fall into it, so a
+ * binary search finds the tail of the log a window has to read. Scanning
+ * that tail backwards, a user's first record inside the window is the one
+ * a live window board would hold: the last one submitted.
+ *
+ * Whenever the columns fill up, the log is compacted into new columns twice
+ * the size of what remains. Records outside the retention limit are
+ * dropped, together with records superseded for every window by a later
+ * record of the same user with the same or a later timestamp; WAL
+ * compaction drops the same records. The log therefore stays proportional
+ * to the users active within the retention limit.
+ *
+ * Guarded by itself. Appends only write past the current size and
+ * compaction writes new columns, so a capture just keeps the current ones.
+ */
+public final class ScoreLog {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long gameId;
+    private final long retentionMillis;
+    private long[] userIds = new long[INITIAL_CAPACITY];
+    private long[] scores = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    // Highest timestamp up to and including each record
+    private long[] maxTimestamps = new long[INITIAL_CAPACITY];
+    private int size;
+    private volatile Columns captured;
+
+    public ScoreLog(long gameId, long retentionMillis) {
+        this.gameId = gameId;
+        this.retentionMillis = retentionMillis;
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void append(long userId, long score, long timestamp) {
+        if (size == userIds.length) {
+            compact(System.currentTimeMillis());
+        }
+        userIds[size] = userId;
+        scores[size] = score;
+        timestamps[size] = timestamp;
+        maxTimestamps[size] = size == 0 ? timestamp : Math.max(maxTimestamps[size - 1], timestamp);
+        size++;
+    }
+
+    /**
+     * Appends count records given in log order, such as those of a snapshot.
+     */
+    public synchronized void appendAll(long[] userIds, long[] scores, long[] timestamps, int count) {
+        for (int i = 0; i < count; i++) {
+            append(userIds[i], scores[i], timestamps[i]);
+        }
+    }
+
+    /**
+     * Each user's last submitted record with a timestamp after windowStart,
+     * in rank order.
+     */
+    public SortedEntries window(long windowStart) {
+        long[] pickUsers;
+        long[] pickScores;
+        long[] pickTimestamps;
+        int picks = 0;
+        synchronized (this) {
+            int from = firstAfter(windowStart);
+            int capacity = Math.max(size - from, 1);
+            pickUsers = new long[capacity];
+            pickScores = new long[capacity];
+            pickTimestamps = new long[capacity];
+            LongIntHashMap picked = new LongIntHashMap(capacity);
+            for (int i = size - 1; i >= from; i--) {
+                if (timestamps[i] > windowStart && picked.get(userIds[i]) == LongIntHashMap.MISSING) {
+                    picked.put(userIds[i], picks);
+                    pickUsers[picks] = userIds[i];
+                    pickScores[picks] = scores[i];
+                    pickTimestamps[picks] = timestamps[i];
+                    picks++;
+                }
+            }
+        }
+        long[] users = pickUsers;
+        long[] userScores = pickScores;
+        long[] userTimestamps = pickTimestamps;
+        int[] order = IndexSort.sortedIndexes(picks, (left, right) -> {
+            int byScore = Long.compare(userScores[right], userScores[left]);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byTimestamp = Long.compare(userTimestamps[left], userTimestamps[right]);
+            return byTimestamp != 0 ? byTimestamp : Long.compare(users[left], users[right]);
+        });
+        return new SortedEntries() {
+            @Override
+            public long gameId() {
+                return gameId;
+            }
+
+            @Override
+            public int size() {
+                return order.length;
+            }
+
+            @Override
+            public long userIdAt(int index) {
+                return users[order[index]];
+            }
+
+            @Override
+            public long scoreAt(int index) {
+                return userScores[order[index]];
+            }
+
+            @Override
+            public long timestampAt(int index) {
+                return userTimestamps[order[index]];
+            }
+        };
+    }
+
+    /**
+     * Keeps the records as of now for {@link #forEachCapturedRecord}.
+     */
+    public synchronized void beginCapture() {
+        captured = new Columns(userIds, scores, timestamps, size);
+    }
+
+    /**
+     * Visits the records as of {@link #beginCapture()}, in log order.
+     */
+    public void forEachCapturedRecord(Leaderboard.EntryVisitor visitor) {
+        Columns columns = captured;
+        if (columns == null) {
+            return;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            visitor.visit(columns.userIds()[i], columns.scores()[i], columns.timestamps()[i]);
+        }
+    }
+
+    // First record whose running maximum timestamp is after windowStart
+    private int firstAfter(long windowStart) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxTimestamps[mid] > windowStart) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // Rewrites the log into new columns without the records no window up to
+    // the retention limit can pick any more
+    private void compact(long nowMillis) {
+        long retainedAfter = nowMillis - retentionMillis;
+        boolean[] keep = new boolean[size];
+        int kept = 0;
+        // Highest timestamp of each user's later records
+        LongIntHashMap userSlots = new LongIntHashMap();
+        long[] laterTimestamps = new long[INITIAL_CAPACITY];
+        for (int i = size - 1; i >= 0; i--) {
+            if (timestamps[i] <= retainedAfter) {
+                continue;
+            }
+            int slot = userSlots.get(userIds[i]);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = userSlots.size();
+                userSlots.put(userIds[i], slot);
+                if (slot == laterTimestamps.length) {
+                    laterTimestamps = Arrays.copyOf(laterTimestamps, slot * 2);
+                }
+            } else if (laterTimestamps[slot] >= timestamps[i]) {
+                continue;
+            }
+            laterTimestamps[slot] = timestamps[i];
+            keep[i] = true;
+            kept++;
+        }
+        Columns old = new Columns(userIds, scores, timestamps, size);
+        int capacity = Math.max(kept * 2, INITIAL_CAPACITY);
+        userIds = new long[capacity];
+        scores = new long[capacity];
+        timestamps = new long[capacity];
+        maxTimestamps = new long[capacity];
+        size = 0;
+        for (int i = 0; i < old.size(); i++) {
+            if (keep[i]) {
+                userIds[size] = old.userIds()[i];
+                scores[size] = old.scores()[i];
+                timestamps[size] = old.timestamps()[i];
+                maxTimestamps[size] = size == 0 ? timestamps[size]
+                        : Math.max(maxTimestamps[size - 1], timestamps[size]);
+                size++;
+            }
+        }
+    }
+
+    private record Columns(long[] userIds, long[] scores, long[] timestamps, int size) {
+    }
+}
@@ -0,0 +1,358 @@
+package com.ringgrank.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Leaderboard whose entries live in numbered slots of primitive storage
+ * rather than as one object per player. The sorted index is a size-augmented
+ * AVL tree whose links are slot numbers, so ranks, top-K and updates cost the
+ * same as in {@link TreeLeaderboard}. Subclasses decide where the slot fields
+ * and the userId-to-slot index are stored.
+ * The game ID is held once per board instead of once per entry and is added
+ * back when a ScoreEntry is handed out.
+ */
+public abstract class SlotLeaderboard extends AbstractLeaderboard {
+    protected static final int NIL = -1;
+
+    protected final long gameId;
+    private int root = NIL;
+    private int count;
+
+    protected SlotLeaderboard(long gameId, LeaderboardConfig config) {
+        super(config);
+        this.gameId = gameId;
+    }
+
+    // Slot storage. allocateSlot returns a free slot; writeSlot stores the
+    // entry fields and resets the slot's links to a single-node tree.
+
+    protected abstract int allocateSlot();
+
+    protected abstract void releaseSlot(int slot);
+
+    protected abstract void writeSlot(int slot, long userId, long score, long timestamp);
+
+    protected abstract long userIdAt(int slot);
+
+    protected abstract long scoreAt(int slot);
+
+    protected abstract long timestampAt(int slot);
+
+    protected abstract int leftOf(int slot);
+
+    protected abstract int rightOf(int slot);
+
+    protected abstract int sizeOf(int slot);
+
+    protected abstract int heightOf(int slot);
+
+    protected abstract void setLeft(int slot, int child);
+
+    protected abstract void setRight(int slot, int child);
+
+    protected abstract void setSizeAndHeight(int slot, int size, int height);
+
+    // userId index
+
+    protected abstract int lookupSlot(long userId);
+
+    protected abstract void indexSlot(long userId, int slot);
+
+    protected abstract void unindexSlot(long userId);
+
+    protected abstract void clearStorage();
+
+    @Override
+    protected ScoreEntry replaceEntry(ScoreEntry newEntry) {
+        int slot = lookupSlot(newEntry.userId());
+        ScoreEntry oldEntry = null;
+        if (slot != NIL) {
+            // Reuse the user's slot: unlink, overwrite, relink
+            oldEntry = entryOf(slot);
+            root = delete(root, slot);
+        } else {
+            slot = allocateSlot();
+            indexSlot(newEntry.userId(), slot);
+            count++;
+        }
+        writeSlot(slot, newEntry.userId(), newEntry.score(), newEntry.timestamp());
+        root = insert(root, slot);
+        return oldEntry;
+    }
+
+    @Override
+    protected boolean removeEntry(ScoreEntry entry) {
+        int slot = lookupSlot(entry.userId());
+        if (slot == NIL || entry.gameId() != gameId || scoreAt(slot) != entry.score()
+                || timestampAt(slot) != entry.timestamp()) {
+            return false;
+        }
+        root = delete(root, slot);
+        unindexSlot(entry.userId());
+        releaseSlot(slot);
+        count--;
+        return true;
+    }
+
+    @Override
+    protected void visitEntries(EntryVisitor visitor) {
+        if (root == NIL) {
+            return;
+        }
+        int[] stack = new int[heightOf(root) + 1];
+        int top = 0;
+        int node = root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                stack[top++] = node;
+                node = leftOf(node);
+            }
+            node = stack[--top];
+            visitor.visit(userIdAt(node), scoreAt(node), timestampAt(node));
+            node = rightOf(node);
+        }
+    }
+
+    @Override
+    protected void loadSortedEntries(SortedEntries entries) {
+        int size = entries.size();
+        if (size == 0) {
+            return;
+        }
+        // Slots are filled in rank order, then linked into a perfectly
+        // balanced tree without any comparisons or rotations
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++) {
+            int slot = allocateSlot();
+            long userId = entries.userIdAt(i);
+            writeSlot(slot, userId, entries.scoreAt(i), entries.timestampAt(i));
+            indexSlot(userId, slot);
+            slots[i] = slot;
+        }
+        count = size;
+        root = build(slots, 0, size - 1);
+    }
+
+    private int build(int[] slots, int from, int to) {
+        if (from > to) {
+            return NIL;
+        }
+        int mid = (from + to) >>> 1;
+        int node = slots[mid];
+        setLeft(node, build(slots, from, mid - 1));
+        setRight(node, build(slots, mid + 1, to));
+        update(node);
+        return node;
+    }
+
+    @Override
+    protected ScoreEntry findEntry(long userId) {
+        int slot = lookupSlot(userId);
+        return slot == NIL ? null : entryOf(slot);
+    }
+
+    @Override
+    protected int rankOfUser(long userId) {
+        int target = lookupSlot(userId);
+        if (target == NIL) {
+            return -1; // User not found
+        }
+        int rank = 0;
+        int node = root;
+        while (node != NIL) {
+            int cmp = compare(target, node);
+            if (cmp < 0) {
+                node = leftOf(node);
+            } else if (cmp > 0) {
+                rank += sizeOrZero(leftOf(node)) + 1;
+                node = rightOf(node);
+            } else {
+                return rank + sizeOrZero(leftOf(node)) + 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected ScoreEntry entryAtRank(int rank) {
+        if (rank < 1 || rank > count) {
+            return null;
+        }
+        int node = root;
+        int remaining = rank;
+        while (node != NIL) {
+            int leftSize = sizeOrZero(leftOf(node));
+            if (remaining <= leftSize) {
+                node = leftOf(node);
+            } else if (remaining == leftSize + 1) {
+                return entryOf(node);
+            } else {
+                remaining -= leftSize + 1;
+                node = rightOf(node);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected List<ScoreEntry> firstEntries(int k) {
+        if (root == NIL) {
+            return Collections.emptyList();
+        }
+        List<ScoreEntry> result = new ArrayList<>(Math.min(k, count));
+        int[] stack = new int[heightOf(root) + 1];
+        int top = 0;
+        int node = root;
+        while ((node != NIL || top > 0) && result.size() < k) {
+            while (node != NIL) {
+                stack[top++] = node;
+                node = leftOf(node);
+            }
+            node = stack[--top];
+            result.add(entryOf(node));
+            node = rightOf(node);
+        }
+        return result;
+    }
+
+    @Override
+    protected int entryCount() {
+        return count;
+    }
+
+    @Override
+    protected void clearEntries() {
+        clearStorage();
+        forgetEntries();
+    }
+
+    // Empties the sorted index without touching the slots, for storage that
+    // has been freed
+    protected void forgetEntries() {
+        root = NIL;
+        count = 0;
+    }
+
+    protected ScoreEntry entryOf(int slot) {
+        return new ScoreEntry(userIdAt(slot), gameId, scoreAt(slot), timestampAt(slot));
+    }
+
+    // Same order as ScoreEntry.compareTo: score desc, timestamp asc, userId asc
+    private int compare(int a, int b) {
+        int cmp = Long.compare(scoreAt(b), scoreAt(a));
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Long.compare(timestampAt(a), timestampAt(b));
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(userIdAt(a), userIdAt(b));
+    }
+
+    private int insert(int node, int slot) {
+        if (node == NIL) {
+            return slot;
+        }
+        if (compare(slot, node) < 0) {
+            setLeft(node, insert(leftOf(node), slot));
+        } else {
+            setRight(node, insert(rightOf(node), slot));
+        }
+        return rebalance(node);
+    }
+
+    private int delete(int node, int target) {
+        if (node == NIL) {
+            return NIL;
+        }
+        int cmp = compare(target, node);
+        if (cmp < 0) {
+            setLeft(node, delete(leftOf(node), target));
+        } else if (cmp > 0) {
+            setRight(node, delete(rightOf(node), target));
+        } else {
+            int left = leftOf(node);
+            int right = rightOf(node);
+            if (left == NIL) {
+                return right;
+            }
+            if (right == NIL) {
+                return left;
+            }
+            // Slots never move, so the in-order successor is relinked into
+            // this node's position instead of copying its fields over
+            int successor = right;
+            while (leftOf(successor) != NIL) {
+                successor = leftOf(successor);
+            }
+            setRight(successor, deleteMin(right));
+            setLeft(successor, left);
+            return rebalance(successor);
+        }
+        return rebalance(node);
+    }
+
+    private int deleteMin(int node) {
+        if (leftOf(node) == NIL) {
+            return rightOf(node);
+        }
+        setLeft(node, deleteMin(leftOf(node)));
+        return rebalance(node);
+    }
+
+    private int rebalance(int node) {
+        update(node);
+        int balance = heightOrZero(leftOf(node)) - heightOrZero(rightOf(node));
+        if (balance > 1) {
+            int left = leftOf(node);
+            if (heightOrZero(leftOf(left)) < heightOrZero(rightOf(left))) {
+                setLeft(node, rotateLeft(left));
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            int right = rightOf(node);
+            if (heightOrZero(rightOf(right)) < heightOrZero(leftOf(right))) {
+                setRight(node, rotateRight(right));
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private int rotateRight(int node) {
+        int pivot = leftOf(node);
+        setLeft(node, rightOf(pivot));
+        setRight(pivot, node);
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private int rotateLeft(int node) {
+        int pivot = rightOf(node);
+        setRight(node, leftOf(pivot));
+        setLeft(pivot, node);
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private void update(int node) {
+        int left = leftOf(node);
+        int right = rightOf(node);
+        setSizeAndHeight(node, sizeOrZero(left) + sizeOrZero(right) + 1,
+                Math.max(heightOrZero(left), heightOrZero(right)) + 1);
+    }
+
+    private int sizeOrZero(int slot) {
+        return slot == NIL ? 0 : sizeOf(slot);
+    }
+
+    private int heightOrZero(int slot) {
+        return slot == NIL ? 0 : heightOf(slot);
+    }
+}
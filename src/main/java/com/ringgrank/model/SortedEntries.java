@@ -0,0 +1,18 @@
+package com.ringgrank.model;
+
+/**
+ * Read-only view of one game's entries in rank order (score desc, timestamp
+ * asc, userId asc), used to bulk-load a leaderboard without an insert per
+ * entry. Implementations may read straight from a decoded buffer.
+ */
+public interface SortedEntries {
+    long gameId();
+
+    int size();
+
+    long userIdAt(int index);
+
+    long scoreAt(int index);
+
+    long timestampAt(int index);
+}
@@ -0,0 +1,25 @@
+package com.ringgrank.model;
+
+/**
+ * Storage layouts available for a game's leaderboards.
+ * Selected per game through configuration; see LeaderboardConfig.
+ */
+public enum StorageEngine {
+    /** One ScoreEntry object per player in a rank-augmented tree. */
+    TREE,
+    /** Parallel primitive arrays per board; several times less heap per player. */
+    COMPACT,
+    /** Fixed-width records in direct memory slabs; almost nothing on the heap. */
+    OFF_HEAP;
+
+    /**
+     * Parses a configuration value such as "tree", "compact" or "off-heap".
+     */
+    public static StorageEngine fromConfig(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown leaderboard storage engine: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.ringgrank.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ringgrank.util.ConcurrentLongObjectMap;
+
+/**
+ * Default Leaderboard storage: one ScoreEntry object per player, kept in a
+ * rank-augmented sorted tree plus a map for quick user score lookup.
+ * This class is thread-safe.
+ */
+public class TreeLeaderboard extends AbstractLeaderboard {
+    // Stores all score entries, sorted by score (desc) and then timestamp (asc).
+    // Each node knows its subtree size, so rank lookups are O(log N).
+    private final OrderStatisticTree<ScoreEntry> sortedScores;
+
+    // Maps userId to their current ScoreEntry for O(1) lookup, keyed by the
+    // primitive id so no Long or map node is allocated per user
+    private final ConcurrentLongObjectMap<ScoreEntry> userScores;
+
+    public TreeLeaderboard() {
+        this(LeaderboardConfig.DEFAULT);
+    }
+
+    public TreeLeaderboard(LeaderboardConfig config) {
+        super(config);
+        this.sortedScores = new OrderStatisticTree<>();
+        this.userScores = new ConcurrentLongObjectMap<>();
+    }
+
+    @Override
+    protected ScoreEntry replaceEntry(ScoreEntry newEntry) {
+        ScoreEntry oldEntry = userScores.put(newEntry.userId(), newEntry);
+        if (oldEntry != null) {
+            sortedScores.remove(oldEntry);
+        }
+        sortedScores.add(newEntry);
+        return oldEntry;
+    }
+
+    @Override
+    protected boolean removeEntry(ScoreEntry entry) {
+        if (userScores.remove(entry.userId(), entry)) {
+            sortedScores.remove(entry);
+            return true;
+        }
+        return false;
+    }
+
+    // The concurrent map is always consistent on its own, so single-user
+    // lookups skip the leaderboard lock.
+    @Override
+    public ScoreEntry getUserScore(Long userId) {
+        return userScores.get(userId);
+    }
+
+    @Override
+    protected ScoreEntry findEntry(long userId) {
+        return userScores.get(userId);
+    }
+
+    @Override
+    protected int rankOfUser(long userId) {
+        ScoreEntry userEntry = userScores.get(userId);
+        if (userEntry == null) {
+            return -1; // User not found
+        }
+        return sortedScores.rankOf(userEntry);
+    }
+
+    @Override
+    protected ScoreEntry entryAtRank(int rank) {
+        return sortedScores.get(rank);
+    }
+
+    @Override
+    protected List<ScoreEntry> firstEntries(int k) {
+        return sortedScores.first(k);
+    }
+
+    @Override
+    protected int entryCount() {
+        return sortedScores.size();
+    }
+
+    @Override
+    protected void clearEntries() {
+        sortedScores.clear();
+        userScores.clear();
+    }
+
+    @Override
+    protected void visitEntries(EntryVisitor visitor) {
+        sortedScores.forEach(entry -> visitor.visit(entry.userId(), entry.score(), entry.timestamp()));
+    }
+
+    @Override
+    protected void loadSortedEntries(SortedEntries entries) {
+        List<ScoreEntry> sorted = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            ScoreEntry entry = new ScoreEntry(entries.userIdAt(i), entries.gameId(), entries.scoreAt(i),
+                    entries.timestampAt(i));
+            sorted.add(entry);
+            userScores.put(entry.userId(), entry);
+        }
+        sortedScores.buildFromSorted(sorted);
+    }
+}
@@ -0,0 +1,380 @@
+package com.ringgrank.model;
+
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Leaderboard of a calendar period that starts over at each period
+ * boundary, such as "today" or "this week".
+ *
+ * The running period's board and the board of the period closed before it
+ * are held in one immutable {@link State}. At the boundary the state is
+ * replaced by one with a fresh running board, whose previous board is the
+ * one that was running: expiring a whole period is a single reference
+ * swap. The swap happens on the first access after the boundary, so
+ * nothing needs to be scheduled. The closed period is served read-only
+ * through {@link #closedPeriod()}.
+ *
+ * A score belongs to the period its timestamp falls into, so a late score
+ * for the closed period still counts there, and recovery rebuilds the same
+ * boards from the log. Scores of older periods are not kept.
+ */
+public final class TumblingWindowLeaderboard implements Leaderboard {
+    /**
+     * @param previousStart     Start of the closed period in epoch millis.
+     * @param start             Start of the running period.
+     * @param end               Start of the next period.
+     * @param current           Board of the running period.
+     * @param previous          Board of the closed period.
+     * @param versionBase       Added to the running board's versions, so
+     *                          versions keep growing across periods.
+     * @param closedVersionBase Likewise for the closed board.
+     */
+    private record State(long previousStart, long start, long end, Leaderboard current, Leaderboard previous,
+            long versionBase, long closedVersionBase) {
+    }
+
+    private final long gameId;
+    private final LeaderboardConfig config;
+    private final CalendarPeriod period;
+    private final ZoneId zone;
+    private final Leaderboard closedPeriod = new ClosedPeriod();
+    private volatile State state;
+    // State as of beginCapture; its boards are not released while captured
+    private volatile State captured;
+
+    TumblingWindowLeaderboard(long gameId, LeaderboardConfig config, CalendarPeriod period, long nowMillis) {
+        this.gameId = gameId;
+        this.config = config;
+        this.period = period;
+        this.zone = config.calendarZone();
+        long start = period.startOf(nowMillis, zone);
+        this.state = new State(period.previousStart(start, zone), start, period.nextStart(start, zone),
+                config.newLeaderboard(gameId), config.newLeaderboard(gameId), 0, 0);
+    }
+
+    public CalendarPeriod getPeriod() {
+        return period;
+    }
+
+    /**
+     * Read-only view of the period closed before the running one.
+     */
+    public Leaderboard closedPeriod() {
+        return closedPeriod;
+    }
+
+    /**
+     * Start of the running period in epoch millis.
+     */
+    public long getPeriodStart() {
+        return roll(System.currentTimeMillis()).start();
+    }
+
+    // Swaps in a new running period once nowMillis has reached its end
+    private State roll(long nowMillis) {
+        State current = state;
+        if (nowMillis < current.end()) {
+            return current;
+        }
+        synchronized (this) {
+            current = state;
+            if (nowMillis < current.end()) {
+                return current;
+            }
+            long start = period.startOf(nowMillis, zone);
+            // The running board becomes the closed one, unless a whole
+            // period passed without any access
+            Leaderboard previous = start == current.end() ? current.current() : config.newLeaderboard(gameId);
+            if (previous != current.current()) {
+                releaseUnlessCaptured(current.current());
+            }
+            releaseUnlessCaptured(current.previous());
+            State next = new State(period.previousStart(start, zone), start, period.nextStart(start, zone),
+                    config.newLeaderboard(gameId), previous, current.versionBase() + current.current().getVersion() + 1,
+                    current.closedVersionBase() + current.previous().getVersion() + 1);
+            state = next;
+            return next;
+        }
+    }
+
+    /**
+     * Loads the boards of a snapshot taken during the period starting at
+     * periodStart, shifting them if that period has closed since. Boards of
+     * periods closed before the previous one are dropped.
+     */
+    public synchronized void restore(long periodStart, SortedEntries current, SortedEntries previous,
+            long nowMillis) {
+        State running = roll(nowMillis);
+        if (running.start() == periodStart) {
+            running.current().loadSorted(current);
+            running.previous().loadSorted(previous);
+        } else if (running.start() == period.nextStart(periodStart, zone)) {
+            running.previous().loadSorted(current);
+        }
+    }
+
+    /**
+     * Running board if periodStart is the running period, the closed board
+     * if it is the previous one, or null otherwise. For recovery, which
+     * fills these boards directly.
+     */
+    Leaderboard boardFor(long periodStart, long nowMillis) {
+        State running = roll(nowMillis);
+        if (running.start() == periodStart) {
+            return running.current();
+        }
+        return running.start() == period.nextStart(periodStart, zone) ? running.previous() : null;
+    }
+
+    /**
+     * Adds the entry to the running or the closed period, whichever its
+     * timestamp falls into.
+     */
+    @Override
+    public void addOrUpdateScore(ScoreEntry newEntry) {
+        State running = roll(System.currentTimeMillis());
+        long timestamp = newEntry.timestamp();
+        if (timestamp >= running.start() && timestamp < running.end()) {
+            running.current().addOrUpdateScore(newEntry);
+        } else if (timestamp >= running.previousStart() && timestamp < running.start()) {
+            running.previous().addOrUpdateScore(newEntry);
+        }
+    }
+
+    @Override
+    public void removeScore(ScoreEntry entryToRemove) {
+        roll(System.currentTimeMillis()).current().removeScore(entryToRemove);
+    }
+
+    @Override
+    public void removeScores(List<ScoreEntry> entriesToRemove) {
+        roll(System.currentTimeMillis()).current().removeScores(entriesToRemove);
+    }
+
+    @Override
+    public ScoreEntry getUserScore(Long userId) {
+        return running().getUserScore(userId);
+    }
+
+    @Override
+    public List<ScoreEntry> getTopK(int k) {
+        return running().getTopK(k);
+    }
+
+    @Override
+    public int getUserRank(Long userId) {
+        return running().getUserRank(userId);
+    }
+
+    @Override
+    public RankedEntry getRankedEntry(Long userId) {
+        return running().getRankedEntry(userId);
+    }
+
+    @Override
+    public ScoreEntry getEntryAtRank(int rank) {
+        return running().getEntryAtRank(rank);
+    }
+
+    @Override
+    public FenwickRankEngine getRankEngine() {
+        return running().getRankEngine();
+    }
+
+    @Override
+    public QuantileSketch.Estimate estimateRank(long score) {
+        return running().estimateRank(score);
+    }
+
+    @Override
+    public double getSketchAccuracy() {
+        return running().getSketchAccuracy();
+    }
+
+    @Override
+    public int getTotalPlayers() {
+        return running().getTotalPlayers();
+    }
+
+    @Override
+    public void clear() {
+        running().clear();
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        running().forEachEntry(visitor);
+    }
+
+    @Override
+    public void loadSorted(SortedEntries entries) {
+        running().loadSorted(entries);
+    }
+
+    /**
+     * Captures the running and the closed board together with the period
+     * they belong to, see {@link #getCapturedPeriodStart()}.
+     */
+    @Override
+    public synchronized void beginCapture() {
+        captured = roll(System.currentTimeMillis());
+        captured.current().beginCapture();
+        captured.previous().beginCapture();
+    }
+
+    @Override
+    public void forEachCapturedEntry(EntryVisitor visitor) {
+        captured.current().forEachCapturedEntry(visitor);
+    }
+
+    /**
+     * Visits the closed board's entries as of {@link #beginCapture()}.
+     */
+    public void forEachCapturedClosedEntry(EntryVisitor visitor) {
+        captured.previous().forEachCapturedEntry(visitor);
+    }
+
+    /**
+     * Start of the running period as of {@link #beginCapture()}.
+     */
+    public long getCapturedPeriodStart() {
+        return captured.start();
+    }
+
+    /**
+     * Covers both the running and the closed board.
+     */
+    @Override
+    public long getVersion() {
+        State running = roll(System.currentTimeMillis());
+        return running.versionBase() + running.current().getVersion() + running.closedVersionBase()
+                + running.previous().getVersion();
+    }
+
+    @Override
+    public long getTopKVersion(int k) {
+        State running = roll(System.currentTimeMillis());
+        return running.versionBase() + running.current().getTopKVersion(k);
+    }
+
+    @Override
+    public synchronized void release() {
+        state.current().release();
+        state.previous().release();
+    }
+
+    // A snapshot may still be reading a captured board; it is then left to
+    // the garbage collector
+    private void releaseUnlessCaptured(Leaderboard board) {
+        if (captured == null || (board != captured.current() && board != captured.previous())) {
+            board.release();
+        }
+    }
+
+    private Leaderboard running() {
+        return roll(System.currentTimeMillis()).current();
+    }
+
+    /**
+     * Read-only view of the closed period's board; only late scores of the
+     * closed period and the period boundary change it.
+     */
+    private final class ClosedPeriod implements Leaderboard {
+        private Leaderboard closed() {
+            return roll(System.currentTimeMillis()).previous();
+        }
+
+        @Override
+        public void addOrUpdateScore(ScoreEntry newEntry) {
+            throw new UnsupportedOperationException("Closed " + period.previousKey() + " leaderboard is read-only");
+        }
+
+        @Override
+        public void removeScore(ScoreEntry entryToRemove) {
+            throw new UnsupportedOperationException("Closed " + period.previousKey() + " leaderboard is read-only");
+        }
+
+        @Override
+        public ScoreEntry getUserScore(Long userId) {
+            return closed().getUserScore(userId);
+        }
+
+        @Override
+        public List<ScoreEntry> getTopK(int k) {
+            return closed().getTopK(k);
+        }
+
+        @Override
+        public int getUserRank(Long userId) {
+            return closed().getUserRank(userId);
+        }
+
+        @Override
+        public RankedEntry getRankedEntry(Long userId) {
+            return closed().getRankedEntry(userId);
+        }
+
+        @Override
+        public ScoreEntry getEntryAtRank(int rank) {
+            return closed().getEntryAtRank(rank);
+        }
+
+        @Override
+        public FenwickRankEngine getRankEngine() {
+            return closed().getRankEngine();
+        }
+
+        @Override
+        public QuantileSketch.Estimate estimateRank(long score) {
+            return closed().estimateRank(score);
+        }
+
+        @Override
+        public double getSketchAccuracy() {
+            return closed().getSketchAccuracy();
+        }
+
+        @Override
+        public int getTotalPlayers() {
+            return closed().getTotalPlayers();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("Closed " + period.previousKey() + " leaderboard is read-only");
+        }
+
+        @Override
+        public void forEachEntry(EntryVisitor visitor) {
+            closed().forEachEntry(visitor);
+        }
+
+        @Override
+        public void loadSorted(SortedEntries entries) {
+            throw new UnsupportedOperationException("Closed " + period.previousKey() + " leaderboard is read-only");
+        }
+
+        @Override
+        public void beginCapture() {
+            throw new UnsupportedOperationException("Captured through the running period's leaderboard");
+        }
+
+        @Override
+        public void forEachCapturedEntry(EntryVisitor visitor) {
+            throw new UnsupportedOperationException("Captured through the running period's leaderboard");
+        }
+
+        @Override
+        public long getVersion() {
+            State running = roll(System.currentTimeMillis());
+            return running.closedVersionBase() + running.previous().getVersion();
+        }
+
+        @Override
+        public long getTopKVersion(int k) {
+            State running = roll(System.currentTimeMillis());
+            return running.closedVersionBase() + running.previous().getTopKVersion(k);
+        }
+    }
+}
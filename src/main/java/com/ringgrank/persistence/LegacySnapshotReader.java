@@ -0,0 +1,151 @@
+package com.ringgrank.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.model.SortedEntries;
+
+/**
+ * Reads the Java-serialized snapshots of the first release: a game ID
+ * followed by a serialized GameLeaderboardSet, repeated until the end of
+ * the file. The model classes of the same names have changed shape since,
+ * so the stream is read into copies of the old field layouts and converted
+ * to {@link SnapshotReader.GameSection}s, which load like binary sections.
+ */
+public final class LegacySnapshotReader {
+    private static final String GAME_SET_CLASS = "com.ringgrank.model.GameLeaderboardSet";
+    private static final String LEADERBOARD_CLASS = "com.ringgrank.model.Leaderboard";
+
+    private LegacySnapshotReader() {
+    }
+
+    /**
+     * Hands every game of the snapshot to the handler, with its entries in
+     * rank order.
+     */
+    public static void read(Path path, SnapshotReader.SectionHandler handler) throws IOException {
+        try (LegacyObjectInputStream in = new LegacyObjectInputStream(Files.newInputStream(path))) {
+            while (true) {
+                long gameId;
+                try {
+                    gameId = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                handler.accept(toSection(gameId, (LegacyGameLeaderboardSet) in.readObject()));
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable Java-serialized snapshot " + path, e);
+        }
+    }
+
+    private static SnapshotReader.GameSection toSection(long gameId, LegacyGameLeaderboardSet gameSet) {
+        Map<String, Duration> windows = new LinkedHashMap<>(gameSet.windowDurations);
+        Map<String, SortedEntries> windowEntries = new LinkedHashMap<>();
+        gameSet.windowedLeaderboards.forEach((windowKey, leaderboard) -> {
+            if (windows.containsKey(windowKey)) {
+                windowEntries.put(windowKey, leaderboard.sortedEntries(gameId));
+            }
+        });
+        return new SnapshotReader.GameSection(gameId, windows, gameSet.allTimeLeaderboard.sortedEntries(gameId),
+                windowEntries, List.of(), SnapshotReader.LogRecords.EMPTY);
+    }
+
+    /**
+     * Reads the old GameLeaderboardSet and Leaderboard classes into the
+     * legacy layouts below.
+     */
+    private static final class LegacyObjectInputStream extends ObjectInputStream {
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            Class<?> legacy = legacyClass(descriptor.getName());
+            return legacy == null ? descriptor : ObjectStreamClass.lookup(legacy);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+            if (descriptor.getName().equals(LegacyGameLeaderboardSet.class.getName())) {
+                return LegacyGameLeaderboardSet.class;
+            }
+            if (descriptor.getName().equals(LegacyLeaderboard.class.getName())) {
+                return LegacyLeaderboard.class;
+            }
+            return super.resolveClass(descriptor);
+        }
+
+        private static Class<?> legacyClass(String name) {
+            return switch (name) {
+                case GAME_SET_CLASS -> LegacyGameLeaderboardSet.class;
+                case LEADERBOARD_CLASS -> LegacyLeaderboard.class;
+                default -> null;
+            };
+        }
+    }
+
+    // The serialized fields of the first release's GameLeaderboardSet
+    private static final class LegacyGameLeaderboardSet implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long gameId;
+        private LegacyLeaderboard allTimeLeaderboard;
+        private Map<String, LegacyLeaderboard> windowedLeaderboards;
+        private Map<String, Duration> windowDurations;
+    }
+
+    // The serialized fields of the first release's Leaderboard
+    private static final class LegacyLeaderboard implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private NavigableSet<ScoreEntry> sortedScores;
+        private Map<Long, ScoreEntry> userScores;
+
+        // Each user's current entry in today's rank order, which breaks ties
+        // by userId; userScores is the authoritative copy of both indexes
+        SortedEntries sortedEntries(long gameId) {
+            List<ScoreEntry> entries = new ArrayList<>(userScores.values());
+            Collections.sort(entries);
+            return new EntryList(gameId, entries);
+        }
+    }
+
+    private record EntryList(long gameId, List<ScoreEntry> entries) implements SortedEntries {
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public long userIdAt(int index) {
+            return entries.get(index).userId();
+        }
+
+        @Override
+        public long scoreAt(int index) {
+            return entries.get(index).score();
+        }
+
+        @Override
+        public long timestampAt(int index) {
+            return entries.get(index).timestamp();
+        }
+    }
+}
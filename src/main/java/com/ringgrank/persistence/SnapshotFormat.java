@@ -0,0 +1,57 @@
+package com.ringgrank.persistence;
+
+/**
+ * Binary snapshot layout.
+ *
+ * The file starts with a 32-byte header: magic (4), format version (2), two
+ * reserved bytes, the last WAL LSN the snapshot covers (8), creation time in
+ * epoch millis (8), the number of game sections (4) and a CRC32C of the
+ * preceding 28 bytes (4).
+ *
+ * Each game section has a 16-byte header: gameId (8), payload length (4) and
+ * a CRC32C of the payload (4). The payload starts with a codec byte. With
+ * {@link #CODEC_COLUMNS} the rest of the payload is the section body; with
+ * {@link #CODEC_DEFLATE} it is the body's length (4) followed by the body
+ * compressed with {@link java.util.zip.Deflater}.
+ *
+ * The body holds the window count, then per window the UTF-8 key length,
+ * key and duration in millis, then the all-time board followed by each
+ * window's board in the same order. A board is its entry count followed by
+ * three columns in rank order: scores as the first score and then the drop
+ * to each next one, timestamps and userIds as the difference to the previous
+ * entry. All numbers in the body are varints; signed values are zigzag
+ * encoded. Scores only fall in rank order and neighbouring entries tend to
+ * be close, so most values take one to four bytes instead of eight.
+ *
+ * The body ends with the calendar window count, then per calendar window
+ * the UTF-8 key length and key of its running period (e.g. "today"), the
+ * zigzag-encoded start of that period in epoch millis, the running board
+ * and the board of the period closed before it. Version 2 bodies end after
+ * the window boards.
+ *
+ * Version 4 bodies then hold the game's score log: its record count and its
+ * timestamps, scores and userIds as columns in log order, each value the
+ * zigzag-encoded difference to the previous record. Version 3 bodies end
+ * after the calendar windows.
+ *
+ * Version 1 files have no codec byte and store the window count (4), per
+ * window the key length (2), key and duration (8), and boards as an entry
+ * count (4) followed by 24-byte records of userId, score and timestamp; they
+ * are still readable.
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x5247534E; // "RGSN"
+    static final short VERSION = 4;
+    static final short VERSION_3 = 3;
+    static final short VERSION_2 = 2;
+    static final short VERSION_1 = 1;
+    static final int FILE_HEADER_BYTES = 32;
+    static final int SECTION_HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 24;
+
+    static final byte CODEC_COLUMNS = 0;
+    static final byte CODEC_DEFLATE = 1;
+
+    private SnapshotFormat() {
+    }
+}
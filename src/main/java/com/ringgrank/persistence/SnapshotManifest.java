@@ -0,0 +1,184 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Index of an incremental snapshot: for every game, the data file and byte
+ * range of its section. Data files use the regular snapshot format of
+ * {@link SnapshotWriter}; a snapshot only writes the games that changed
+ * since the previous one and references the older sections of the rest.
+ *
+ * Layout: magic (4), format version (2), two reserved bytes, covered WAL LSN
+ * (8), creation time (8), entry count (4), then per game: gameId (8), data
+ * file sequence number (8), section offset (8) and section length including
+ * its header (4). A CRC32C of everything before it ends the file.
+ *
+ * For a snapshot path of {@code ./data/snapshot/leaderboard}, the manifest is
+ * written to that path and data files are {@code leaderboard-<seq>.dat}
+ * next to it.
+ */
+public final class SnapshotManifest {
+    static final int MAGIC = 0x5247534D; // "RGSM"
+    static final short VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 28;
+    private static final String DATA_SUFFIX = ".dat";
+    private static final int SEQ_DIGITS = 20;
+
+    /**
+     * Location of one game's section.
+     */
+    public record SectionRef(long fileSeq, long offset, int length) {
+    }
+
+    private final long coveredLsn;
+    private final long createdAtMillis;
+    private final Map<Long, SectionRef> sections;
+
+    public SnapshotManifest(long coveredLsn, long createdAtMillis, Map<Long, SectionRef> sections) {
+        this.coveredLsn = coveredLsn;
+        this.createdAtMillis = createdAtMillis;
+        this.sections = Collections.unmodifiableMap(new HashMap<>(sections));
+    }
+
+    public long coveredLsn() {
+        return coveredLsn;
+    }
+
+    public long createdAtMillis() {
+        return createdAtMillis;
+    }
+
+    public Map<Long, SectionRef> sections() {
+        return sections;
+    }
+
+    /**
+     * Total bytes of the sections this manifest references.
+     */
+    public long liveBytes() {
+        long bytes = 0;
+        for (SectionRef ref : sections.values()) {
+            bytes += ref.length();
+        }
+        return bytes;
+    }
+
+    public static Path dataFilePath(Path manifestPath, long fileSeq) {
+        String seq = Long.toString(fileSeq);
+        return manifestPath.resolveSibling(manifestPath.getFileName() + "-" + "0".repeat(SEQ_DIGITS - seq.length())
+                + seq + DATA_SUFFIX);
+    }
+
+    /**
+     * Lists existing data files by sequence number, including orphans left by
+     * a snapshot that failed before its manifest was written.
+     */
+    public static Map<Long, Path> listDataFiles(Path manifestPath) throws IOException {
+        Path directory = manifestPath.toAbsolutePath().getParent();
+        String prefix = manifestPath.getFileName() + "-";
+        Map<Long, Path> files = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + DATA_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String seq = name.substring(prefix.length(), name.length() - DATA_SUFFIX.length());
+                if (seq.length() == SEQ_DIGITS && seq.chars().allMatch(Character::isDigit)) {
+                    files.put(Long.parseLong(seq), path);
+                }
+            }
+        }
+        return files;
+    }
+
+    public static boolean isManifest(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 4) {
+                return false;
+            }
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until the magic is complete
+            }
+            return magic.flip().getInt() == MAGIC;
+        }
+    }
+
+    public static SnapshotManifest read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_BYTES + 4 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot manifest: " + path);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot manifest version " + version + " in " + path);
+        }
+        buffer.getShort();
+        long coveredLsn = buffer.getLong();
+        long createdAt = buffer.getLong();
+        int count = buffer.getInt();
+        buffer.getInt(); // Reserved
+        int end = HEADER_BYTES + count * ENTRY_BYTES;
+        if (count < 0 || buffer.capacity() != end + 4) {
+            throw new IOException("Truncated snapshot manifest " + path);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, end);
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IOException("Checksum mismatch in snapshot manifest " + path);
+        }
+        Map<Long, SectionRef> sections = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            sections.put(buffer.getLong(), new SectionRef(buffer.getLong(), buffer.getLong(), buffer.getInt()));
+        }
+        return new SnapshotManifest(coveredLsn, createdAt, sections);
+    }
+
+    /**
+     * Writes the manifest to tempPath, fsyncs it and atomically moves it to
+     * path.
+     */
+    public void write(Path path, Path tempPath) throws IOException {
+        int end = HEADER_BYTES + sections.size() * ENTRY_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(end + 4);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putLong(coveredLsn);
+        buffer.putLong(createdAtMillis);
+        buffer.putInt(sections.size());
+        buffer.putInt(0); // Reserved
+        sections.forEach((gameId, ref) -> {
+            buffer.putLong(gameId);
+            buffer.putLong(ref.fileSeq());
+            buffer.putLong(ref.offset());
+            buffer.putInt(ref.length());
+        });
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, end);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
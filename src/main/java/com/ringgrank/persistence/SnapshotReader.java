@@ -0,0 +1,395 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.ringgrank.model.CalendarPeriod;
+import com.ringgrank.model.SortedEntries;
+
+/**
+ * Reads snapshots in the format described by {@link SnapshotFormat}.
+ * The file is memory-mapped and each game section is checksummed in place;
+ * its boards are handed out as {@link SortedEntries}, ready for
+ * {@link com.ringgrank.model.Leaderboard#loadSorted(SortedEntries)}. Columns
+ * are decoded from the page cache into one set of primitive arrays per
+ * board; version 1 records are read in place without copying.
+ */
+public final class SnapshotReader {
+    // Largest region mapped at once; bigger files are mapped in windows
+    private static final int MAP_WINDOW_BYTES = 1 << 30;
+
+    /**
+     * @param coveredLsn      Last WAL LSN contained in the snapshot.
+     * @param createdAtMillis When the snapshot was started.
+     * @param gameCount       Number of game sections.
+     */
+    public record Header(long coveredLsn, long createdAtMillis, int gameCount) {
+    }
+
+    /**
+     * One game's windows and boards. The entry views are only valid during
+     * the {@link SectionHandler} call.
+     */
+    public record GameSection(long gameId, Map<String, Duration> windows, SortedEntries allTimeEntries,
+            Map<String, SortedEntries> windowEntries, List<CalendarSection> calendarWindows, LogRecords scoreLog) {
+    }
+
+    /**
+     * The game's score log as parallel columns in log order.
+     */
+    public record LogRecords(long[] userIds, long[] scores, long[] timestamps) {
+        static final LogRecords EMPTY = new LogRecords(new long[0], new long[0], new long[0]);
+
+        public int size() {
+            return userIds.length;
+        }
+    }
+
+    /**
+     * A calendar window's boards as of the period starting at periodStart.
+     */
+    public record CalendarSection(CalendarPeriod period, long periodStart, SortedEntries currentEntries,
+            SortedEntries closedEntries) {
+    }
+
+    @FunctionalInterface
+    public interface SectionHandler {
+        void accept(GameSection section);
+    }
+
+    private SnapshotReader() {
+    }
+
+    /**
+     * Returns whether the file starts with the binary snapshot magic, as
+     * opposed to a legacy Java-serialized snapshot.
+     */
+    public static boolean isBinarySnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 4) {
+                return false;
+            }
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            readFully(channel, magic, path);
+            return magic.getInt() == SnapshotFormat.MAGIC;
+        }
+    }
+
+    /**
+     * Reads every game section, in file order.
+     *
+     * @throws IOException if the file is truncated or a checksum does not
+     *                     match.
+     */
+    public static Header read(Path path, SectionHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SectionReader reader = new SectionReader(channel, path);
+            Header header = reader.header();
+            long offset = SnapshotFormat.FILE_HEADER_BYTES;
+            for (int i = 0; i < header.gameCount(); i++) {
+                offset += reader.accept(offset, handler);
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Reads only the sections starting at the given offsets, as referenced by
+     * a {@link SnapshotManifest}.
+     *
+     * @throws IOException if the file is truncated or a checksum does not
+     *                     match.
+     */
+    public static void readSections(Path path, long[] offsets, SectionHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SectionReader reader = new SectionReader(channel, path);
+            reader.header();
+            for (long offset : offsets) {
+                reader.accept(offset, handler);
+            }
+        }
+    }
+
+    /**
+     * Checksums and decodes sections in place from a read-only mapping of
+     * the file. The mapping is replaced when a section lies outside it.
+     */
+    private static final class SectionReader {
+        private final FileChannel channel;
+        private final Path path;
+        private final long fileSize;
+        private final CRC32C crc = new CRC32C();
+        private MappedByteBuffer window;
+        private long windowStart;
+        private short version;
+
+        SectionReader(FileChannel channel, Path path) throws IOException {
+            this.channel = channel;
+            this.path = path;
+            this.fileSize = channel.size();
+        }
+
+        Header header() throws IOException {
+            ByteBuffer header = slice(0, SnapshotFormat.FILE_HEADER_BYTES);
+            if (header.getInt() != SnapshotFormat.MAGIC) {
+                throw new IOException("Not a binary snapshot: " + path);
+            }
+            version = header.getShort();
+            if (version != SnapshotFormat.VERSION && version != SnapshotFormat.VERSION_3
+                    && version != SnapshotFormat.VERSION_2 && version != SnapshotFormat.VERSION_1) {
+                throw new IOException("Unsupported snapshot format version " + version + " in " + path);
+            }
+            header.getShort();
+            long coveredLsn = header.getLong();
+            long createdAt = header.getLong();
+            int gameCount = header.getInt();
+            crc.reset();
+            crc.update(header.duplicate().flip());
+            if ((int) crc.getValue() != header.getInt()) {
+                throw new IOException("Checksum mismatch in snapshot header of " + path);
+            }
+            return new Header(coveredLsn, createdAt, gameCount);
+        }
+
+        /**
+         * Hands the section at offset to handler.
+         *
+         * @return The section length including its header.
+         */
+        long accept(long offset, SectionHandler handler) throws IOException {
+            ByteBuffer sectionHeader = slice(offset, SnapshotFormat.SECTION_HEADER_BYTES);
+            long gameId = sectionHeader.getLong();
+            int length = sectionHeader.getInt();
+            int storedCrc = sectionHeader.getInt();
+            if (length < 0) {
+                throw new IOException("Corrupt snapshot section for game " + gameId + " in " + path);
+            }
+            ByteBuffer payload = slice(offset + SnapshotFormat.SECTION_HEADER_BYTES, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != storedCrc) {
+                throw new IOException("Checksum mismatch in snapshot section for game " + gameId + " in " + path);
+            }
+            handler.accept(version == SnapshotFormat.VERSION_1 ? decodeSection(gameId, payload)
+                    : decodeColumns(gameId, payload, version, path));
+            return SnapshotFormat.SECTION_HEADER_BYTES + (long) length;
+        }
+
+        private ByteBuffer slice(long offset, int length) throws IOException {
+            if (offset < 0 || offset + length > fileSize) {
+                throw new IOException("Truncated snapshot " + path);
+            }
+            if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+                long mapBytes = Math.min(fileSize - offset, Math.max(length, MAP_WINDOW_BYTES));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapBytes);
+                windowStart = offset;
+            }
+            return window.slice((int) (offset - windowStart), length);
+        }
+    }
+
+    private static GameSection decodeSection(long gameId, ByteBuffer payload) {
+        int windowCount = payload.getInt();
+        Map<String, Duration> windows = new LinkedHashMap<>();
+        for (int i = 0; i < windowCount; i++) {
+            byte[] key = new byte[Short.toUnsignedInt(payload.getShort())];
+            payload.get(key);
+            windows.put(new String(key, StandardCharsets.UTF_8), Duration.ofMillis(payload.getLong()));
+        }
+        SortedEntries allTime = decodeBoard(gameId, payload);
+        Map<String, SortedEntries> windowEntries = new LinkedHashMap<>();
+        for (String windowKey : windows.keySet()) {
+            windowEntries.put(windowKey, decodeBoard(gameId, payload));
+        }
+        return new GameSection(gameId, windows, allTime, windowEntries, List.of(), LogRecords.EMPTY);
+    }
+
+    private static SortedEntries decodeBoard(long gameId, ByteBuffer payload) {
+        int count = payload.getInt();
+        SortedEntries entries = new BufferEntries(gameId, payload, payload.position(), count);
+        payload.position(payload.position() + count * SnapshotFormat.ENTRY_BYTES);
+        return entries;
+    }
+
+    private static GameSection decodeColumns(long gameId, ByteBuffer payload, short version, Path path)
+            throws IOException {
+        byte codec = payload.get();
+        ByteBuffer body = payload;
+        if (codec == SnapshotFormat.CODEC_DEFLATE) {
+            byte[] inflated = new byte[payload.getInt()];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(payload);
+                int length = 0;
+                while (length < inflated.length && !inflater.finished()) {
+                    int read = inflater.inflate(inflated, length, inflated.length - length);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += read;
+                }
+                if (length != inflated.length) {
+                    throw new IOException("Truncated compressed snapshot section for game " + gameId + " in " + path);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed snapshot section for game " + gameId + " in " + path, e);
+            } finally {
+                inflater.end();
+            }
+            body = ByteBuffer.wrap(inflated);
+        } else if (codec != SnapshotFormat.CODEC_COLUMNS) {
+            throw new IOException("Unknown snapshot section codec " + codec + " for game " + gameId + " in " + path);
+        }
+
+        int windowCount = (int) getVarLong(body);
+        Map<String, Duration> windows = new LinkedHashMap<>();
+        for (int i = 0; i < windowCount; i++) {
+            windows.put(getString(body), Duration.ofMillis(getVarLong(body)));
+        }
+        SortedEntries allTime = decodeColumnBoard(gameId, body);
+        Map<String, SortedEntries> windowEntries = new LinkedHashMap<>();
+        for (String windowKey : windows.keySet()) {
+            windowEntries.put(windowKey, decodeColumnBoard(gameId, body));
+        }
+        List<CalendarSection> calendarWindows = new ArrayList<>();
+        if (version >= SnapshotFormat.VERSION_3) {
+            int calendarCount = (int) getVarLong(body);
+            for (int i = 0; i < calendarCount; i++) {
+                String key = getString(body);
+                CalendarPeriod period;
+                try {
+                    period = CalendarPeriod.fromConfig(key);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown calendar window " + key + " for game " + gameId + " in " + path, e);
+                }
+                long periodStart = unZigZag(getVarLong(body));
+                calendarWindows.add(new CalendarSection(period, periodStart, decodeColumnBoard(gameId, body),
+                        decodeColumnBoard(gameId, body)));
+            }
+        }
+        LogRecords scoreLog = version >= SnapshotFormat.VERSION ? decodeLog(body) : LogRecords.EMPTY;
+        return new GameSection(gameId, windows, allTime, windowEntries, calendarWindows, scoreLog);
+    }
+
+    private static LogRecords decodeLog(ByteBuffer body) {
+        int count = (int) getVarLong(body);
+        long[] timestamps = getDifferences(body, count);
+        long[] scores = getDifferences(body, count);
+        long[] userIds = getDifferences(body, count);
+        return new LogRecords(userIds, scores, timestamps);
+    }
+
+    private static long[] getDifferences(ByteBuffer body, int count) {
+        long[] column = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unZigZag(getVarLong(body));
+            column[i] = previous;
+        }
+        return column;
+    }
+
+    private static String getString(ByteBuffer body) {
+        byte[] utf8 = new byte[(int) getVarLong(body)];
+        body.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static SortedEntries decodeColumnBoard(long gameId, ByteBuffer body) {
+        int count = (int) getVarLong(body);
+        long[] scores = new long[count];
+        if (count > 0) {
+            scores[0] = unZigZag(getVarLong(body));
+            for (int i = 1; i < count; i++) {
+                scores[i] = scores[i - 1] - getVarLong(body);
+            }
+        }
+        long[] timestamps = getDifferences(body, count);
+        long[] userIds = getDifferences(body, count);
+        return new ArrayEntries(gameId, userIds, scores, timestamps);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, Path path) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Truncated snapshot " + path);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Decoded columns of a version 2 or later board.
+     */
+    private record ArrayEntries(long gameId, long[] userIds, long[] scores, long[] timestamps)
+            implements SortedEntries {
+        @Override
+        public int size() {
+            return userIds.length;
+        }
+
+        @Override
+        public long userIdAt(int index) {
+            return userIds[index];
+        }
+
+        @Override
+        public long scoreAt(int index) {
+            return scores[index];
+        }
+
+        @Override
+        public long timestampAt(int index) {
+            return timestamps[index];
+        }
+    }
+
+    /**
+     * Fixed-width records read in place from a version 1 section.
+     */
+    private record BufferEntries(long gameId, ByteBuffer buffer, int offset, int size) implements SortedEntries {
+        @Override
+        public long userIdAt(int index) {
+            return buffer.getLong(offset + index * SnapshotFormat.ENTRY_BYTES);
+        }
+
+        @Override
+        public long scoreAt(int index) {
+            return buffer.getLong(offset + index * SnapshotFormat.ENTRY_BYTES + 8);
+        }
+
+        @Override
+        public long timestampAt(int index) {
+            return buffer.getLong(offset + index * SnapshotFormat.ENTRY_BYTES + 16);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+import com.ringgrank.model.GameLeaderboardSet;
+import com.ringgrank.model.Leaderboard;
+import com.ringgrank.model.ScoreLog;
+import com.ringgrank.model.TumblingWindowLeaderboard;
+
+/**
+ * Writes snapshots in the format described by {@link SnapshotFormat}.
+ * Each board is copied under its read lock into primitive columns, so no
+ * intermediate entry objects are created, and encoded as varint deltas,
+ * optionally deflated. Boards with an active capture are written as of the
+ * capture point.
+ *
+ * Sections are encoded on a pool of threads, a few games ahead of the one
+ * being written, and written in order by the calling thread.
+ */
+public final class SnapshotWriter {
+    private static final int INITIAL_SECTION_BYTES = 64 * 1024;
+    private static final int INITIAL_BOARD_ENTRIES = 1024;
+    // Encoded sections waiting to be written, per encoding thread
+    private static final int QUEUED_SECTIONS_PER_THREAD = 2;
+
+    /**
+     * Where a game's section landed in the file.
+     *
+     * @param offset Position of the section header.
+     * @param length Section length including its header.
+     */
+    public record WrittenSection(long gameId, long offset, int length) {
+    }
+
+    // A section ready to be written
+    private record EncodedSection(long gameId, byte[] payload, int crc) {
+    }
+
+    private SnapshotWriter() {
+    }
+
+    /**
+     * Writes and fsyncs a snapshot of the given games to path, encoding them
+     * on the calling thread without deflating them.
+     *
+     * @return The sections written, in file order.
+     */
+    public static List<WrittenSection> write(Path path, long coveredLsn, Iterable<GameLeaderboardSet> games)
+            throws IOException {
+        return write(path, coveredLsn, games, false, 1);
+    }
+
+    /**
+     * Writes and fsyncs a snapshot of the given games to path.
+     *
+     * @param deflate Whether to deflate each section's columns; a section is
+     *                stored uncompressed when that is not smaller.
+     * @param threads Threads encoding sections; 1 encodes on the calling
+     *                thread.
+     * @return The sections written, in file order.
+     */
+    public static List<WrittenSection> write(Path path, long coveredLsn, Iterable<GameLeaderboardSet> games,
+            boolean deflate, int threads) throws IOException {
+        long createdAt = System.currentTimeMillis();
+        ExecutorService pool = null;
+        if (threads > 1) {
+            pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "SnapshotEncoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ThreadLocal<SectionEncoder> encoders = ThreadLocal.withInitial(() -> new SectionEncoder(deflate));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(SnapshotFormat.FILE_HEADER_BYTES);
+            SectionSink sink = new SectionSink(channel);
+            if (pool == null) {
+                SectionEncoder encoder = encoders.get();
+                for (GameLeaderboardSet game : games) {
+                    sink.write(encoder.encode(game));
+                }
+            } else {
+                Deque<Future<EncodedSection>> queued = new ArrayDeque<>();
+                for (GameLeaderboardSet game : games) {
+                    queued.add(pool.submit(() -> encoders.get().encode(game)));
+                    if (queued.size() >= threads * QUEUED_SECTIONS_PER_THREAD) {
+                        sink.write(await(queued.poll()));
+                    }
+                }
+                while (!queued.isEmpty()) {
+                    sink.write(await(queued.poll()));
+                }
+            }
+
+            CRC32C crc = new CRC32C();
+            ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.FILE_HEADER_BYTES);
+            header.putInt(SnapshotFormat.MAGIC);
+            header.putShort(SnapshotFormat.VERSION);
+            header.putShort((short) 0);
+            header.putLong(coveredLsn);
+            header.putLong(createdAt);
+            header.putInt(sink.sections.size());
+            crc.update(header.array(), 0, header.position());
+            header.putInt((int) crc.getValue());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            return sink.sections;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private static EncodedSection await(Future<EncodedSection> section) throws IOException {
+        try {
+            return section.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing snapshot", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to encode snapshot section", e.getCause());
+        }
+    }
+
+    /**
+     * Appends sections to the file and records where they landed.
+     */
+    private static final class SectionSink {
+        private final FileChannel channel;
+        private final ByteBuffer sectionHeader = ByteBuffer.allocate(SnapshotFormat.SECTION_HEADER_BYTES);
+        private final List<WrittenSection> sections = new ArrayList<>();
+        private long offset = SnapshotFormat.FILE_HEADER_BYTES;
+
+        SectionSink(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(EncodedSection section) throws IOException {
+            sectionHeader.clear();
+            sectionHeader.putLong(section.gameId());
+            sectionHeader.putInt(section.payload().length);
+            sectionHeader.putInt(section.crc());
+            sectionHeader.flip();
+            ByteBuffer[] buffers = { sectionHeader, ByteBuffer.wrap(section.payload()) };
+            long remaining = SnapshotFormat.SECTION_HEADER_BYTES + (long) section.payload().length;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            int length = SnapshotFormat.SECTION_HEADER_BYTES + section.payload().length;
+            sections.add(new WrittenSection(section.gameId(), offset, length));
+            offset += length;
+        }
+    }
+
+    /**
+     * Encodes one game's payload at a time into reusable, growable buffers.
+     * Not thread-safe; each encoding thread has its own.
+     */
+    private static final class SectionEncoder implements Leaderboard.EntryVisitor {
+        private final Deflater deflater;
+        private final CRC32C crc = new CRC32C();
+        // Codec byte followed by the body
+        private byte[] bytes = new byte[INITIAL_SECTION_BYTES];
+        private int position;
+        private byte[] deflated = new byte[0];
+
+        // Columns of the board being visited
+        private long[] userIds = new long[INITIAL_BOARD_ENTRIES];
+        private long[] scores = new long[INITIAL_BOARD_ENTRIES];
+        private long[] timestamps = new long[INITIAL_BOARD_ENTRIES];
+        private int boardEntries;
+
+        SectionEncoder(boolean deflate) {
+            this.deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+        }
+
+        EncodedSection encode(GameLeaderboardSet game) {
+            position = 0;
+            putByte(SnapshotFormat.CODEC_COLUMNS);
+            List<Map.Entry<String, Duration>> windows = new ArrayList<>(game.getWindowDurations().entrySet());
+            putVarLong(windows.size());
+            for (Map.Entry<String, Duration> window : windows) {
+                putString(window.getKey());
+                putVarLong(window.getValue().toMillis());
+            }
+            encodeBoard(game.getLeaderboard(null));
+            for (Map.Entry<String, Duration> window : windows) {
+                encodeBoard(game.getLeaderboard(window.getKey()));
+            }
+            List<TumblingWindowLeaderboard> calendars = new ArrayList<>(game.getCalendarLeaderboards());
+            putVarLong(calendars.size());
+            for (TumblingWindowLeaderboard calendar : calendars) {
+                putString(calendar.getPeriod().currentKey());
+                putVarLong(zigZag(calendar.getCapturedPeriodStart()));
+                encodeBoard(calendar::forEachCapturedEntry);
+                encodeBoard(calendar::forEachCapturedClosedEntry);
+            }
+            ScoreLog scoreLog = game.getScoreLog();
+            encodeLog(scoreLog == null ? visitor -> {
+            } : scoreLog::forEachCapturedRecord);
+
+            byte[] payload = deflater != null ? deflate() : null;
+            if (payload == null) {
+                payload = Arrays.copyOf(bytes, position);
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            return new EncodedSection(game.getGameId(), payload, (int) crc.getValue());
+        }
+
+        // Returns the deflated payload, or null if it would not be smaller
+        private byte[] deflate() {
+            int bodyLength = position - 1;
+            int header = 1 + 4;
+            if (deflated.length < position) {
+                deflated = new byte[Math.max(position, deflated.length * 2)];
+            }
+            deflater.reset();
+            deflater.setInput(bytes, 1, bodyLength);
+            deflater.finish();
+            int length = header;
+            while (!deflater.finished() && length < position) {
+                length += deflater.deflate(deflated, length, position - length);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            ByteBuffer.wrap(deflated).put(SnapshotFormat.CODEC_DEFLATE).putInt(bodyLength);
+            return Arrays.copyOf(deflated, length);
+        }
+
+        private void encodeBoard(Leaderboard board) {
+            encodeBoard(board == null ? visitor -> {
+            } : board::forEachCapturedEntry);
+        }
+
+        // Log records are in arrival order, so scores are plain differences
+        private void encodeLog(Consumer<Leaderboard.EntryVisitor> capturedRecords) {
+            boardEntries = 0;
+            capturedRecords.accept(this);
+            putVarLong(boardEntries);
+            putDifferences(timestamps);
+            putDifferences(scores);
+            putDifferences(userIds);
+        }
+
+        private void putDifferences(long[] column) {
+            long previous = 0;
+            for (int i = 0; i < boardEntries; i++) {
+                putVarLong(zigZag(column[i] - previous));
+                previous = column[i];
+            }
+        }
+
+        private void encodeBoard(Consumer<Leaderboard.EntryVisitor> capturedEntries) {
+            boardEntries = 0;
+            capturedEntries.accept(this);
+            putVarLong(boardEntries);
+            if (boardEntries == 0) {
+                return;
+            }
+            // Scores never rise in rank order, so each drop is non-negative
+            putVarLong(zigZag(scores[0]));
+            for (int i = 1; i < boardEntries; i++) {
+                putVarLong(scores[i - 1] - scores[i]);
+            }
+            putDifferences(timestamps);
+            putDifferences(userIds);
+        }
+
+        @Override
+        public void visit(long userId, long score, long timestamp) {
+            if (boardEntries == userIds.length) {
+                int capacity = boardEntries * 2;
+                userIds = Arrays.copyOf(userIds, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            userIds[boardEntries] = userId;
+            scores[boardEntries] = score;
+            timestamps[boardEntries] = timestamp;
+            boardEntries++;
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, position, utf8.length);
+            position += utf8.length;
+        }
+
+        private void putByte(byte value) {
+            ensure(1);
+            bytes[position++] = value;
+        }
+
+        // Unsigned LEB128: seven bits per byte, low bits first
+        private void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        private void ensure(int count) {
+            if (bytes.length - position >= count) {
+                return;
+            }
+            long required = (long) position + count;
+            long capacity = Math.max(required, (long) bytes.length * 2);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                if (required > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Snapshot section exceeds 2 GB");
+                }
+                capacity = Integer.MAX_VALUE - 8;
+            }
+            bytes = Arrays.copyOf(bytes, (int) capacity);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ringgrank.model.ScoreEntry;
+
+/**
+ * Group-commit writer for the segmented write-ahead log.
+ *
+ * Callers encode their record into the batch that is currently open, which
+ * assigns it the next log sequence number (LSN), and block until that batch
+ * is on disk. A single appender thread keeps the segment's file channel open,
+ * swaps out the open batch, writes all of its buffers with one gathering
+ * write and then issues one fsync for the whole batch. Under load many
+ * records share each fsync, so durability costs one disk flush per batch
+ * rather than one per score.
+ *
+ * A new segment, named after the LSN of its first record, is started when
+ * the next batch would push the current one past the configured size.
+ * Batches never span segments.
+ *
+ * A batch whose write or fsync fails is cut off the segment again before
+ * the next batch is written, since replay stops at the first damaged
+ * record and would lose everything after it. If that cut fails too, the
+ * appender refuses all further records.
+ */
+public class WalAppender {
+    private static final Logger logger = LoggerFactory.getLogger(WalAppender.class);
+
+    private static final int MAX_CHUNK_BYTES = 64 * 1024;
+
+    private final Path basePath;
+    private final boolean fsync;
+    private final int maxBatchRecords;
+    private final long segmentBytes;
+    private final int chunkBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when records are added to the open batch
+    private final Condition hasWork = lock.newCondition();
+    // Signalled when the open batch is swapped out and has room again
+    private final Condition notFull = lock.newCondition();
+    // Signalled when a batch has been written
+    private final Condition durable = lock.newCondition();
+
+    // Held by the appender thread while writing, and while segments are
+    // deleted
+    private final ReentrantLock ioLock = new ReentrantLock();
+
+    private Batch openBatch;
+    // Next LSN to assign, guarded by lock
+    private long nextLsn;
+    private volatile long durableLsn;
+
+    private FileChannel channel;
+    private long activeSegmentFirstLsn;
+    private long activeSegmentBytes;
+
+    private Thread appenderThread;
+    private volatile boolean running;
+    // Set once the segment could not be restored after a failed write
+    private volatile IOException broken;
+
+    /**
+     * @param basePath        WAL path; segments are created next to it, see
+     *                        {@link WalSegments}.
+     * @param fsync           Whether each batch is forced to disk before its
+     *                        writers are released.
+     * @param maxBatchRecords Maximum records per batch; writers wait for the
+     *                        next batch once it is full.
+     * @param segmentBytes    Size after which a new segment is started.
+     */
+    public WalAppender(Path basePath, boolean fsync, int maxBatchRecords, long segmentBytes) {
+        this.basePath = basePath;
+        this.fsync = fsync;
+        this.maxBatchRecords = Math.max(1, maxBatchRecords);
+        this.segmentBytes = segmentBytes;
+        this.chunkBytes = (int) Math.min(MAX_CHUNK_BYTES,
+                (long) this.maxBatchRecords * WalFormat.SCORE_RECORD_BYTES);
+        this.openBatch = new Batch();
+    }
+
+    /**
+     * Starts a fresh segment and the appender thread.
+     *
+     * @param firstLsn LSN to assign to the first appended record; must be
+     *                 greater than any LSN already in the log.
+     */
+    public void start(long firstLsn) throws IOException {
+        nextLsn = firstLsn;
+        durableLsn = firstLsn - 1;
+        openSegment(firstLsn);
+        running = true;
+        appenderThread = new Thread(this::runAppender, "WalAppender");
+        appenderThread.setDaemon(true);
+        appenderThread.start();
+    }
+
+    /**
+     * Appends the entry and returns once the batch containing it has been
+     * written (and forced to disk if fsync is enabled).
+     *
+     * @return The LSN assigned to the entry.
+     * @throws RuntimeException if the WAL is closed or the write failed.
+     */
+    public long append(ScoreEntry entry) {
+        lock.lock();
+        try {
+            while (openBatch.records >= maxBatchRecords && running) {
+                notFull.awaitUninterruptibly();
+            }
+            if (!running) {
+                throw new RuntimeException("Failed to write to WAL: appender is closed");
+            }
+            if (broken != null) {
+                throw new RuntimeException("Failed to write to WAL: appender stopped after a failed write", broken);
+            }
+            Batch batch = openBatch;
+            long lsn = nextLsn++;
+            batch.encode(lsn, entry);
+            hasWork.signal();
+            while (!batch.done) {
+                durable.awaitUninterruptibly();
+            }
+            if (batch.failure != null) {
+                throw new RuntimeException("Failed to write to WAL", batch.failure);
+            }
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * LSN of the last record known to be written.
+     */
+    public long lastDurableLsn() {
+        return durableLsn;
+    }
+
+    /**
+     * Lists the segments before the one being written, which no longer
+     * change.
+     */
+    public List<WalSegments.Segment> sealedSegments() throws IOException {
+        ioLock.lock();
+        try {
+            List<WalSegments.Segment> sealed = new ArrayList<>();
+            for (WalSegments.Segment segment : WalSegments.list(basePath)) {
+                if (segment.firstLsn() >= activeSegmentFirstLsn) {
+                    break;
+                }
+                sealed.add(segment);
+            }
+            return sealed;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes segments whose records all have an LSN of at most coveredLsn,
+     * typically because a snapshot now contains them. The active segment is
+     * always kept.
+     *
+     * @return The number of segments deleted.
+     */
+    public int deleteSegmentsCoveredBy(long coveredLsn) throws IOException {
+        ioLock.lock();
+        try {
+            List<WalSegments.Segment> segments = WalSegments.list(basePath);
+            int deleted = 0;
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                WalSegments.Segment segment = segments.get(i);
+                long lastLsn = segments.get(i + 1).firstLsn() - 1;
+                if (segment.firstLsn() == activeSegmentFirstLsn || lastLsn > coveredLsn) {
+                    break;
+                }
+                Files.deleteIfExists(segment.path());
+                deleted++;
+            }
+            return deleted;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Writes any pending records, stops the appender thread and closes the
+     * current segment.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            hasWork.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (appenderThread != null) {
+            try {
+                appenderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close WAL segment for {}", basePath, e);
+        }
+    }
+
+    private void runAppender() {
+        while (true) {
+            Batch batch;
+            lock.lock();
+            try {
+                while (openBatch.records == 0 && running) {
+                    hasWork.awaitUninterruptibly();
+                }
+                if (openBatch.records == 0) {
+                    return; // Closed and drained
+                }
+                batch = openBatch;
+                openBatch = new Batch();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            // Batches encoded before the appender stopped fail unwritten
+            IOException failure = broken != null ? broken : write(batch);
+
+            lock.lock();
+            try {
+                batch.failure = failure;
+                batch.done = true;
+                if (failure == null) {
+                    durableLsn = batch.firstLsn + batch.records - 1;
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Returns the failure, or null once the batch is written
+    private IOException write(Batch batch) {
+        ioLock.lock();
+        try {
+            long batchBytes = (long) batch.records * WalFormat.SCORE_RECORD_BYTES;
+            if (activeSegmentBytes > WalFormat.FILE_HEADER_BYTES
+                    && activeSegmentBytes + batchBytes > segmentBytes) {
+                // The current segment stays open until its successor exists,
+                // so a failed rollover leaves the appender writing to it
+                FileChannel previous = channel;
+                openSegment(batch.firstLsn);
+                closeSealed(previous);
+            }
+            batch.writeTo(channel);
+            if (fsync) {
+                channel.force(false);
+            }
+            activeSegmentBytes += batchBytes;
+            return null;
+        } catch (IOException e) {
+            logger.error("Failed to write {} records to WAL {}", batch.records, basePath, e);
+            discardFailedWrite(e);
+            return e;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    // Cuts whatever part of a failed batch reached the segment, so the next
+    // batch follows the last intact one. Stops the appender if that fails.
+    private void discardFailedWrite(IOException failure) {
+        try {
+            channel.truncate(activeSegmentBytes);
+            channel.position(activeSegmentBytes);
+            channel.force(false);
+        } catch (IOException e) {
+            e.addSuppressed(failure);
+            broken = e;
+            logger.error("Failed to cut a failed write off WAL {}; refusing further records", basePath, e);
+        }
+    }
+
+    // Creates the segment and makes it the active one. A segment that could
+    // not be completed is deleted again, so replay never finds a header-less
+    // file after the last intact segment.
+    private void openSegment(long firstLsn) throws IOException {
+        Path path = WalSegments.pathFor(basePath, firstLsn);
+        FileChannel fileChannel = openChannel(path);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(WalFormat.FILE_HEADER_BYTES);
+            WalFormat.writeFileHeader(header, firstLsn);
+            header.flip();
+            while (header.hasRemaining()) {
+                fileChannel.write(header);
+            }
+            fileChannel.force(true);
+            // The new directory entry must be durable too, or a crash could
+            // lose the segment along with records already acknowledged
+            WalSegments.forceDirectory(basePath);
+        } catch (IOException e) {
+            try {
+                fileChannel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        channel = fileChannel;
+        activeSegmentFirstLsn = firstLsn;
+        activeSegmentBytes = WalFormat.FILE_HEADER_BYTES;
+    }
+
+    // Its records are on disk already, so failing to close it only leaks the
+    // channel
+    private void closeSealed(FileChannel sealed) {
+        try {
+            sealed.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close sealed WAL segment for {}", basePath, e);
+        }
+    }
+
+    // Opens a new, empty segment file for writing
+    FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Records encoded into a list of buffers, written together by one
+     * gathering write.
+     */
+    private final class Batch {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer current;
+        private long firstLsn;
+        private int records;
+        private boolean done;
+        private IOException failure;
+
+        void encode(long lsn, ScoreEntry entry) {
+            if (current == null || current.remaining() < WalFormat.SCORE_RECORD_BYTES) {
+                current = ByteBuffer.allocate(chunkBytes);
+                chunks.add(current);
+            }
+            if (records == 0) {
+                firstLsn = lsn;
+            }
+            WalFormat.encodeScore(current, lsn, entry, crc);
+            records++;
+        }
+
+        void writeTo(FileChannel channel) throws IOException {
+            ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+            long remaining = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = chunks.get(i).flip();
+                remaining += buffers[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+    }
+}
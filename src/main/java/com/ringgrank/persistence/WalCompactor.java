@@ -0,0 +1,260 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.util.IndexSort;
+import com.ringgrank.util.LongIntHashMap;
+
+/**
+ * Rewrites sealed WAL segments into a single segment that only keeps the
+ * records replay can still need.
+ *
+ * For each game and user that is the last record, which the all-time board
+ * keeps, and every older record with a later timestamp than all records
+ * after it, which a sliding window may still pick; everything else is
+ * superseded for every board. Records from a given time on can be kept
+ * regardless, for boards that need more than that, such as the closed
+ * period of a calendar window. Kept records retain their LSNs and log order,
+ * so the result is an ordinary segment and replaying it after any LSN
+ * builds the same leaderboards as replaying the originals.
+ *
+ * The compacted segment replaces the first input under its name and the
+ * other inputs are deleted afterwards. Until they are, the log holds some
+ * records twice; replay must therefore skip records at or below the highest
+ * LSN it has already applied.
+ */
+public final class WalCompactor {
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int WRITE_BUFFER_RECORDS = 4096;
+    private static final String TEMP_SUFFIX = ".compact";
+
+    /**
+     * @param segments   Number of segments compacted into one.
+     * @param recordsIn  Records read from them.
+     * @param recordsOut Records kept.
+     * @param bytesIn    Size of the segments before compaction.
+     * @param bytesOut   Size of the compacted segment.
+     */
+    public record Result(int segments, long recordsIn, long recordsOut, long bytesIn, long bytesOut) {
+    }
+
+    private WalCompactor() {
+    }
+
+    /**
+     * Whether compacting the given sealed segments would change anything:
+     * there is more than one, or a single one that was not compacted yet.
+     */
+    public static boolean needsCompaction(List<WalSegments.Segment> sealed) throws IOException {
+        return sealed.size() > 1 || (sealed.size() == 1 && !isCompacted(sealed.get(0).path()));
+    }
+
+    /**
+     * Compacts consecutive sealed segments, in LSN order, into one segment
+     * stored under the first segment's name.
+     *
+     * @param keepFromTimestamp Records with a timestamp at or after this are
+     *                          all kept; Long.MAX_VALUE to keep only what
+     *                          replay needs.
+     * @throws IOException If a segment cannot be read completely; nothing is
+     *                     changed then.
+     */
+    public static Result compact(List<WalSegments.Segment> sealed, long keepFromTimestamp) throws IOException {
+        if (sealed.isEmpty()) {
+            return new Result(0, 0, 0, 0, 0);
+        }
+        Fold fold = new Fold(keepFromTimestamp);
+        long recordsIn = 0;
+        long bytesIn = 0;
+        for (WalSegments.Segment segment : sealed) {
+            long size = Files.size(segment.path());
+            WalReader.Result result = WalReader.replay(segment.path(), 0, fold::add);
+            if (result.legacyFormat() || result.validBytes() < size) {
+                throw new IOException("WAL segment " + segment.path() + " is corrupt after offset "
+                        + result.validBytes() + "; not compacting it");
+            }
+            recordsIn += result.records();
+            bytesIn += size;
+        }
+
+        WalSegments.Segment first = sealed.get(0);
+        Path tempPath = first.path().resolveSibling(first.path().getFileName() + TEMP_SUFFIX);
+        long recordsOut;
+        try {
+            recordsOut = fold.write(tempPath, first.firstLsn());
+            Files.move(tempPath, first.path(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        for (int i = 1; i < sealed.size(); i++) {
+            Files.deleteIfExists(sealed.get(i).path());
+        }
+        return new Result(sealed.size(), recordsIn, recordsOut, bytesIn, Files.size(first.path()));
+    }
+
+    static boolean isCompacted(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(WalFormat.FILE_HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete
+            }
+            header.flip();
+            if (header.remaining() < WalFormat.FILE_HEADER_BYTES || header.getInt() != WalFormat.MAGIC
+                    || header.getShort() != WalFormat.VERSION) {
+                return false;
+            }
+            return (header.getShort() & WalFormat.FLAG_COMPACTED) != 0;
+        }
+    }
+
+    /**
+     * Per game and user chains of the records still needed, newest first, in
+     * parallel primitive arrays; freed nodes are linked through older.
+     * Records to keep regardless stay out of the chains, in their own list.
+     */
+    private static final class Fold {
+        private final long keepFromTimestamp;
+        private final Map<Long, LongIntHashMap> chainIndexes = new HashMap<>();
+        private int[] heads = new int[INITIAL_CAPACITY];
+        private int chainCount;
+
+        private long[] lsns = new long[INITIAL_CAPACITY];
+        private long[] gameIds = new long[INITIAL_CAPACITY];
+        private long[] userIds = new long[INITIAL_CAPACITY];
+        private long[] scores = new long[INITIAL_CAPACITY];
+        private long[] timestamps = new long[INITIAL_CAPACITY];
+        private int[] older = new int[INITIAL_CAPACITY];
+        private int nodeCount;
+        private int freeNode = NONE;
+        private int liveNodes;
+        private int[] pinned = new int[INITIAL_CAPACITY];
+        private int pinnedCount;
+
+        Fold(long keepFromTimestamp) {
+            this.keepFromTimestamp = keepFromTimestamp;
+        }
+
+        void add(long lsn, ScoreEntry entry) {
+            if (entry.timestamp() >= keepFromTimestamp) {
+                // Keeping it in addition to the chain's picks only keeps
+                // records replay would supersede anyway
+                int node = allocateNode();
+                setNode(node, lsn, entry);
+                older[node] = NONE;
+                if (pinnedCount == pinned.length) {
+                    pinned = Arrays.copyOf(pinned, pinnedCount * 2);
+                }
+                pinned[pinnedCount++] = node;
+                liveNodes++;
+                return;
+            }
+            LongIntHashMap users = chainIndexes.computeIfAbsent(entry.gameId(), gameId -> new LongIntHashMap());
+            int chain = users.get(entry.userId());
+            int next = NONE;
+            if (chain == LongIntHashMap.MISSING) {
+                chain = addChain();
+                users.put(entry.userId(), chain);
+            } else {
+                next = heads[chain];
+                while (next != NONE && timestamps[next] <= entry.timestamp()) {
+                    int superseded = next;
+                    next = older[superseded];
+                    older[superseded] = freeNode;
+                    freeNode = superseded;
+                    liveNodes--;
+                }
+            }
+            int node = allocateNode();
+            setNode(node, lsn, entry);
+            older[node] = next;
+            heads[chain] = node;
+            liveNodes++;
+        }
+
+        private void setNode(int node, long lsn, ScoreEntry entry) {
+            lsns[node] = lsn;
+            gameIds[node] = entry.gameId();
+            userIds[node] = entry.userId();
+            scores[node] = entry.score();
+            timestamps[node] = entry.timestamp();
+        }
+
+        // Writes the kept records in LSN order and returns their number
+        long write(Path path, long firstLsn) throws IOException {
+            int[] kept = new int[liveNodes];
+            int count = 0;
+            for (int chain = 0; chain < chainCount; chain++) {
+                for (int node = heads[chain]; node != NONE; node = older[node]) {
+                    kept[count++] = node;
+                }
+            }
+            System.arraycopy(pinned, 0, kept, count, pinnedCount);
+            count += pinnedCount;
+            IndexSort.sort(kept, (left, right) -> Long.compare(lsns[left], lsns[right]));
+
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_RECORDS * WalFormat.SCORE_RECORD_BYTES);
+            CRC32C crc = new CRC32C();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                WalFormat.writeFileHeader(buffer, firstLsn, WalFormat.FLAG_COMPACTED);
+                for (int node : kept) {
+                    if (buffer.remaining() < WalFormat.SCORE_RECORD_BYTES) {
+                        writeFully(channel, buffer);
+                    }
+                    WalFormat.encodeScore(buffer, lsns[node],
+                            new ScoreEntry(userIds[node], gameIds[node], scores[node], timestamps[node]), crc);
+                }
+                writeFully(channel, buffer);
+                channel.force(true);
+            }
+            return count;
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private int addChain() {
+            if (chainCount == heads.length) {
+                heads = Arrays.copyOf(heads, chainCount * 2);
+            }
+            return chainCount++;
+        }
+
+        private int allocateNode() {
+            if (freeNode != NONE) {
+                int node = freeNode;
+                freeNode = older[node];
+                return node;
+            }
+            if (nodeCount == lsns.length) {
+                int capacity = nodeCount * 2;
+                lsns = Arrays.copyOf(lsns, capacity);
+                gameIds = Arrays.copyOf(gameIds, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                older = Arrays.copyOf(older, capacity);
+            }
+            return nodeCount++;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ringgrank.persistence;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import com.ringgrank.model.ScoreEntry;
+
+/**
+ * Binary WAL layout.
+ *
+ * A segment starts with a 16-byte header: magic (4), format version (2),
+ * flags (2) and the LSN of the segment's first record (8). Records
+ * follow back to back, each with a 16-byte header: CRC32C (4) of everything
+ * after the CRC, payload length (2), record type (1), one reserved byte and
+ * the record's LSN (8). A score record has a fixed 32-byte payload:
+ * timestamp, gameId, userId and score as big-endian longs.
+ *
+ * A segment with {@link #FLAG_COMPACTED} was rewritten by
+ * {@link WalCompactor}; its records keep their LSNs but no longer form a
+ * contiguous range. Readers ignore the flags.
+ *
+ * Version 1 files (the single pre-segment WAL) have an 8-byte file header
+ * and 8-byte record headers without LSNs; they are still readable.
+ */
+final class WalFormat {
+    static final int MAGIC = 0x52475731; // "RGW1"
+    static final short VERSION = 2;
+    static final short VERSION_1 = 1;
+
+    static final short FLAG_COMPACTED = 1;
+
+    static final int FILE_HEADER_BYTES = 16;
+    static final int V1_FILE_HEADER_BYTES = 8;
+
+    static final int RECORD_HEADER_BYTES = 16;
+    static final int V1_RECORD_HEADER_BYTES = 8;
+
+    static final byte TYPE_SCORE = 1;
+    static final int SCORE_PAYLOAD_BYTES = 32;
+    static final int SCORE_RECORD_BYTES = RECORD_HEADER_BYTES + SCORE_PAYLOAD_BYTES;
+
+    private WalFormat() {
+    }
+
+    static void writeFileHeader(ByteBuffer buffer, long firstLsn) {
+        writeFileHeader(buffer, firstLsn, (short) 0);
+    }
+
+    static void writeFileHeader(ByteBuffer buffer, long firstLsn, short flags) {
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort(flags);
+        buffer.putLong(firstLsn);
+    }
+
+    /**
+     * Appends one score record at the buffer's position, which must have
+     * {@link #SCORE_RECORD_BYTES} remaining. The buffer must be heap-backed.
+     */
+    static void encodeScore(ByteBuffer buffer, long lsn, ScoreEntry entry, CRC32C crc) {
+        int start = buffer.position();
+        buffer.putInt(0); // CRC, filled in below
+        buffer.putShort((short) SCORE_PAYLOAD_BYTES);
+        buffer.put(TYPE_SCORE);
+        buffer.put((byte) 0);
+        buffer.putLong(lsn);
+        buffer.putLong(entry.timestamp());
+        buffer.putLong(entry.gameId());
+        buffer.putLong(entry.userId());
+        buffer.putLong(entry.score());
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + 4, SCORE_RECORD_BYTES - 4);
+        buffer.putInt(start, (int) crc.getValue());
+    }
+}
@@ -0,0 +1,177 @@
+package com.ringgrank.persistence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ringgrank.model.ScoreEntry;
+
+/**
+ * Replays WAL files in the binary format of {@link WalFormat}, or in the
+ * legacy CSV format for files written before it existed.
+ * Replay stops at the first torn or corrupt record; everything before it is
+ * applied and its end offset is reported so the writer can truncate the tail.
+ */
+public final class WalReader {
+    private static final Logger logger = LoggerFactory.getLogger(WalReader.class);
+
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    /**
+     * @param validBytes   Length of the intact prefix of the file.
+     * @param legacyFormat Whether the file was in the old CSV format.
+     * @param records      Number of records handed to the handler.
+     * @param lastLsn      LSN of the last intact record, or 0 if there is none
+     *                     or the file predates LSNs.
+     */
+    public record Result(long validBytes, boolean legacyFormat, long records, long lastLsn) {
+        static final Result EMPTY = new Result(0, false, 0, 0);
+    }
+
+    private WalReader() {
+    }
+
+    /**
+     * Replays every record of a file, including legacy files without LSNs.
+     */
+    public static Result replay(Path path, WalRecordHandler handler) throws IOException {
+        return replay(path, 0, handler);
+    }
+
+    /**
+     * Replays the records of a file whose LSN is greater than afterLsn.
+     * Records of legacy files have no LSN and are always replayed.
+     */
+    public static Result replay(Path path, long afterLsn, WalRecordHandler handler) throws IOException {
+        if (!Files.exists(path)) {
+            return Result.EMPTY;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < WalFormat.V1_FILE_HEADER_BYTES) {
+                // Nothing but a partial header: treat as an empty binary WAL
+                return Result.EMPTY;
+            }
+            ByteBuffer header = ByteBuffer.allocate(WalFormat.V1_FILE_HEADER_BYTES);
+            readFully(channel, header);
+            if (header.getInt() != WalFormat.MAGIC) {
+                return replayLegacy(path, handler);
+            }
+            short version = header.getShort();
+            if (version == WalFormat.VERSION_1) {
+                return replayBinary(path, channel, WalFormat.V1_FILE_HEADER_BYTES, WalFormat.V1_RECORD_HEADER_BYTES,
+                        afterLsn, handler);
+            }
+            if (version != WalFormat.VERSION) {
+                throw new IOException("Unsupported WAL format version " + version + " in " + path);
+            }
+            if (channel.size() < WalFormat.FILE_HEADER_BYTES) {
+                return Result.EMPTY;
+            }
+            // Skip the first-LSN field; every record carries its own LSN
+            channel.position(WalFormat.FILE_HEADER_BYTES);
+            return replayBinary(path, channel, WalFormat.FILE_HEADER_BYTES, WalFormat.RECORD_HEADER_BYTES,
+                    afterLsn, handler);
+        }
+    }
+
+    private static Result replayBinary(Path path, FileChannel channel, int fileHeaderBytes, int recordHeaderBytes,
+            long afterLsn, WalRecordHandler handler) throws IOException {
+        boolean hasLsn = recordHeaderBytes == WalFormat.RECORD_HEADER_BYTES;
+        int recordBytes = recordHeaderBytes + WalFormat.SCORE_PAYLOAD_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        CRC32C crc = new CRC32C();
+        long offset = fileHeaderBytes;
+        long records = 0;
+        long lastLsn = 0;
+        boolean eof = false;
+        buffer.flip();
+        while (true) {
+            if (buffer.remaining() < recordBytes && !eof) {
+                buffer.compact();
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                continue;
+            }
+            if (!buffer.hasRemaining()) {
+                break; // Clean end of file
+            }
+            if (buffer.remaining() < recordHeaderBytes) {
+                logger.warn("Torn WAL record header at offset {} in {}", offset, path);
+                break;
+            }
+            int start = buffer.position();
+            int storedCrc = buffer.getInt(start);
+            int length = Short.toUnsignedInt(buffer.getShort(start + 4));
+            byte type = buffer.get(start + 6);
+            if (type != WalFormat.TYPE_SCORE || length != WalFormat.SCORE_PAYLOAD_BYTES) {
+                logger.warn("Corrupt WAL record (type {}, length {}) at offset {} in {}", type, length, offset, path);
+                break;
+            }
+            if (buffer.remaining() < recordBytes) {
+                logger.warn("Torn WAL record at offset {} in {}", offset, path);
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.arrayOffset() + start + 4, recordBytes - 4);
+            if ((int) crc.getValue() != storedCrc) {
+                logger.warn("WAL record checksum mismatch at offset {} in {}", offset, path);
+                break;
+            }
+            long lsn = hasLsn ? buffer.getLong(start + 8) : 0;
+            if (!hasLsn || lsn > afterLsn) {
+                int payload = start + recordHeaderBytes;
+                long timestamp = buffer.getLong(payload);
+                long gameId = buffer.getLong(payload + 8);
+                long userId = buffer.getLong(payload + 16);
+                long score = buffer.getLong(payload + 24);
+                handler.accept(lsn, new ScoreEntry(userId, gameId, score, timestamp));
+                records++;
+            }
+            lastLsn = lsn;
+            buffer.position(start + recordBytes);
+            offset += recordBytes;
+        }
+        return new Result(offset, false, records, lastLsn);
+    }
+
+    // CSV lines of timestamp,gameId,userId,score
+    private static Result replayLegacy(Path path, WalRecordHandler handler) throws IOException {
+        long records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                ScoreEntry entry;
+                try {
+                    entry = new ScoreEntry(
+                            Long.parseLong(parts[2]), // userId
+                            Long.parseLong(parts[1]), // gameId
+                            Long.parseLong(parts[3]), // score
+                            Long.parseLong(parts[0]) // timestamp
+                    );
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    logger.warn("Stopping legacy WAL replay at malformed line {} in {}", records + 1, path);
+                    break;
+                }
+                handler.accept(0, entry);
+                records++;
+            }
+        }
+        return new Result(Files.size(path), true, records, 0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Keep reading until the buffer is full or the file ends
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,15 @@
+package com.ringgrank.persistence;
+
+import com.ringgrank.model.ScoreEntry;
+
+/**
+ * Receives records during WAL replay.
+ */
+@FunctionalInterface
+public interface WalRecordHandler {
+    /**
+     * @param lsn The record's log sequence number, or 0 for records from
+     *            legacy files that predate LSNs.
+     */
+    void accept(long lsn, ScoreEntry entry);
+}
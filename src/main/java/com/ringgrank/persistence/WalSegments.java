@@ -0,0 +1,88 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Naming and discovery of WAL segment files. For a WAL base path of
+ * {@code ./data/wal/scores}, segments are {@code scores-<first LSN>.wal} in
+ * the same directory, with the LSN zero-padded to 20 digits so that name
+ * order matches LSN order.
+ */
+public final class WalSegments {
+    private static final String SUFFIX = ".wal";
+    private static final int LSN_DIGITS = 20;
+
+    /**
+     * A segment file and the LSN of its first record.
+     */
+    public record Segment(Path path, long firstLsn) {
+    }
+
+    private WalSegments() {
+    }
+
+    static Path pathFor(Path basePath, long firstLsn) {
+        String lsn = Long.toString(firstLsn);
+        return basePath.resolveSibling(basePath.getFileName() + "-" + "0".repeat(LSN_DIGITS - lsn.length()) + lsn
+                + SUFFIX);
+    }
+
+    /**
+     * Lists the segments for the given base path in LSN order.
+     */
+    public static List<Segment> list(Path basePath) throws IOException {
+        Path directory = basePath.toAbsolutePath().getParent();
+        String prefix = basePath.getFileName() + "-";
+        List<Segment> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String lsn = name.substring(prefix.length(), name.length() - SUFFIX.length());
+                if (lsn.length() == LSN_DIGITS && lsn.chars().allMatch(Character::isDigit)) {
+                    segments.add(new Segment(path, Long.parseLong(lsn)));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(Segment::firstLsn));
+        return segments;
+    }
+
+    /**
+     * Forces the directory holding the segments to disk, so that newly
+     * created segments survive a crash. Platforms that cannot open a directory
+     * as a file, such as Windows, skip this.
+     */
+    static void forceDirectory(Path basePath) throws IOException {
+        Path directory = basePath.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Directories cannot be opened for reading here
+        }
+    }
+
+    /**
+     * Cuts a segment back to its intact prefix, dropping a torn or corrupt
+     * tail found during replay.
+     */
+    public static void truncate(Path segment, long validBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            if (channel.size() > validBytes) {
+                channel.truncate(validBytes);
+                channel.force(true);
+            }
+        }
+    }
+}
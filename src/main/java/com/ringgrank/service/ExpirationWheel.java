@@ -0,0 +1,316 @@
+package com.ringgrank.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ringgrank.model.ScoreEntry;
+
+/**
+ * Hierarchical timing wheel holding the expirations of window leaderboard
+ * entries.
+ *
+ * Time advances in ticks of tickMillis. Each level has 64 slots; a slot of
+ * level 0 spans one tick, a slot of level n spans 64^n ticks, so four levels
+ * cover 64^4 ticks (194 days with one-second ticks) and later expirations
+ * wait in the last level until they come into range. An expiration is filed
+ * in the lowest level whose range reaches it. Whenever a level completes a
+ * turn, the next slot of the level above is emptied into the levels below,
+ * so an entry moves at most once per level: scheduling is O(1), unlike the
+ * O(log n) of a heap. When a level 0 slot comes due, it is handed out whole.
+ *
+ * Slots store expirations as parallel primitive columns, so scheduling does
+ * not allocate an object per entry. Games are spread over independently
+ * locked stripes, each a complete wheel, so ingest threads rarely contend.
+ * The stripes are divided evenly among a number of workers, each advancing
+ * only its own, so a game is always expired by the same worker and a slow
+ * game delays only the games sharing its worker. An entry expires at most
+ * one tick late.
+ */
+public final class ExpirationWheel {
+    private static final int MIN_STRIPES = 16;
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Scheduled work that is not a single entry, such as a restored batch of
+     * entries or a bucket drop; handed to the handler as a whole.
+     */
+    public interface Task {
+        long gameId();
+
+        long expirationTime();
+    }
+
+    /**
+     * Receives the expirations that came due.
+     */
+    public interface ExpiryHandler {
+        /**
+         * Entries of one window leaderboard that came due in the same slot.
+         */
+        void expire(long gameId, String windowKey, List<ScoreEntry> entries);
+
+        void expire(Task task);
+    }
+
+    private final long tickMillis;
+    private final int workers;
+    // Worker w owns stripes w, w + workers, w + 2 * workers, ...
+    private final Stripe[] stripes;
+
+    public ExpirationWheel(long tickMillis, long nowMillis, int workers) {
+        this.tickMillis = tickMillis;
+        this.workers = workers;
+        this.stripes = new Stripe[workers * ((MIN_STRIPES + workers - 1) / workers)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(tickMillis, Math.floorDiv(nowMillis, tickMillis));
+        }
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    public void schedule(long gameId, String windowKey, long userId, long score, long timestamp,
+            long expirationMillis) {
+        Stripe stripe = stripeFor(gameId);
+        synchronized (stripe) {
+            stripe.add(gameId, windowKey, userId, score, timestamp, expirationMillis);
+        }
+    }
+
+    public void schedule(Task task) {
+        Stripe stripe = stripeFor(task.gameId());
+        synchronized (stripe) {
+            stripe.add(task);
+        }
+    }
+
+    /**
+     * Advances the stripes of one worker to nowMillis and hands the
+     * expirations that came due to handler, outside the stripe locks.
+     *
+     * @return The number of expirations handed out, counting a task as one.
+     */
+    public long advance(long nowMillis, int worker, ExpiryHandler handler) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        long expired = 0;
+        List<Bucket> due = new ArrayList<>();
+        for (int i = worker; i < stripes.length; i += workers) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                stripe.advance(targetTick, due);
+            }
+            for (Bucket bucket : due) {
+                expired += bucket.drainTo(handler);
+            }
+            due.clear();
+        }
+        return expired;
+    }
+
+    /**
+     * Milliseconds from nowMillis until the next tick starts.
+     */
+    public long millisUntilNextTick(long nowMillis) {
+        return tickMillis - Math.floorMod(nowMillis, tickMillis);
+    }
+
+    private Stripe stripeFor(long gameId) {
+        long h = gameId * 0x9E3779B97F4A7C15L;
+        return stripes[(int) Long.remainderUnsigned(h ^ (h >>> 32), stripes.length)];
+    }
+
+    /**
+     * One complete wheel; guarded by its own monitor.
+     */
+    private static final class Stripe {
+        private final long tickMillis;
+        private final Bucket[][] levels = new Bucket[LEVELS][SLOTS];
+        // Entries due at or before the current tick
+        private Bucket overdue = new Bucket();
+        // Last tick processed
+        private long currentTick;
+
+        Stripe(long tickMillis, long currentTick) {
+            this.tickMillis = tickMillis;
+            this.currentTick = currentTick;
+        }
+
+        void add(long gameId, String windowKey, long userId, long score, long timestamp, long expirationMillis) {
+            bucketFor(expirationMillis).add(gameId, windowKey, userId, score, timestamp, expirationMillis);
+        }
+
+        void add(Task task) {
+            bucketFor(task.expirationTime()).add(task);
+        }
+
+        private Bucket bucketFor(long expirationMillis) {
+            // First tick at whose start the expiration has passed
+            long dueTick = Math.floorDiv(expirationMillis, tickMillis)
+                    + (Math.floorMod(expirationMillis, tickMillis) == 0 ? 0 : 1);
+            long delta = dueTick - currentTick;
+            if (delta <= 0) {
+                return overdue;
+            }
+            for (int level = 0; level < LEVELS; level++) {
+                if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                    return slot(level, (int) ((dueTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            // Beyond the wheel: park in the top level's furthest slot; the
+            // entry is filed again when that slot is emptied
+            long parkTick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+            return slot(LEVELS - 1, (int) ((parkTick >>> (SLOT_BITS * (LEVELS - 1))) & SLOT_MASK));
+        }
+
+        void advance(long targetTick, List<Bucket> due) {
+            if (!overdue.isEmpty()) {
+                due.add(overdue);
+                overdue = new Bucket();
+            }
+            while (currentTick < targetTick) {
+                currentTick++;
+                // Empty the upper levels whose turn starts now, highest
+                // first, so their entries can cascade all the way down
+                int level = 1;
+                while (level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    level++;
+                }
+                for (int upper = level - 1; upper >= 1; upper--) {
+                    int index = (int) ((currentTick >>> (SLOT_BITS * upper)) & SLOT_MASK);
+                    Bucket bucket = levels[upper][index];
+                    if (bucket != null) {
+                        levels[upper][index] = null;
+                        bucket.refileTo(this);
+                    }
+                }
+                int index = (int) (currentTick & SLOT_MASK);
+                Bucket bucket = levels[0][index];
+                if (bucket != null) {
+                    levels[0][index] = null;
+                    due.add(bucket);
+                }
+                if (!overdue.isEmpty()) {
+                    due.add(overdue);
+                    overdue = new Bucket();
+                }
+            }
+        }
+
+        private Bucket slot(int level, int index) {
+            Bucket bucket = levels[level][index];
+            if (bucket == null) {
+                bucket = new Bucket();
+                levels[level][index] = bucket;
+            }
+            return bucket;
+        }
+    }
+
+    /**
+     * Expirations of one slot as a chain of column chunks, newest first;
+     * tasks are kept as objects. Chunks double in size up to a
+     * limit, so small slots stay small and large ones never copy entries.
+     */
+    private static final class Bucket {
+        private static final int FIRST_CHUNK_ENTRIES = 16;
+        private static final int MAX_CHUNK_ENTRIES = 4096;
+
+        private Chunk head;
+        private List<Task> tasks;
+
+        boolean isEmpty() {
+            return head == null && tasks == null;
+        }
+
+        void add(long gameId, String windowKey, long userId, long score, long timestamp, long expirationMillis) {
+            Chunk chunk = head;
+            if (chunk == null || chunk.size == chunk.gameIds.length) {
+                int capacity = chunk == null ? FIRST_CHUNK_ENTRIES : Math.min(chunk.gameIds.length * 2, MAX_CHUNK_ENTRIES);
+                chunk = new Chunk(capacity, head);
+                head = chunk;
+            }
+            int i = chunk.size++;
+            chunk.gameIds[i] = gameId;
+            chunk.windowKeys[i] = windowKey;
+            chunk.userIds[i] = userId;
+            chunk.scores[i] = score;
+            chunk.timestamps[i] = timestamp;
+            chunk.expirations[i] = expirationMillis;
+        }
+
+        void add(Task task) {
+            if (tasks == null) {
+                tasks = new ArrayList<>();
+            }
+            tasks.add(task);
+        }
+
+        // Files every entry again from the stripe's current tick
+        void refileTo(Stripe stripe) {
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+                for (int i = 0; i < chunk.size; i++) {
+                    stripe.add(chunk.gameIds[i], chunk.windowKeys[i], chunk.userIds[i], chunk.scores[i],
+                            chunk.timestamps[i], chunk.expirations[i]);
+                }
+            }
+            if (tasks != null) {
+                tasks.forEach(stripe::add);
+            }
+        }
+
+        // Hands out the entries grouped by leaderboard, then the tasks
+        long drainTo(ExpiryHandler handler) {
+            long drained = 0;
+            Map<BoardKey, List<ScoreEntry>> groups = new HashMap<>();
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+                for (int i = 0; i < chunk.size; i++) {
+                    groups.computeIfAbsent(new BoardKey(chunk.gameIds[i], chunk.windowKeys[i]),
+                            key -> new ArrayList<>())
+                            .add(new ScoreEntry(chunk.userIds[i], chunk.gameIds[i], chunk.scores[i],
+                                    chunk.timestamps[i]));
+                }
+                drained += chunk.size;
+            }
+            groups.forEach((key, entries) -> handler.expire(key.gameId(), key.windowKey(), entries));
+            if (tasks != null) {
+                tasks.forEach(handler::expire);
+                drained += tasks.size();
+            }
+            return drained;
+        }
+    }
+
+    private record BoardKey(long gameId, String windowKey) {
+    }
+
+    private static final class Chunk {
+        private final long[] gameIds;
+        private final String[] windowKeys;
+        private final long[] userIds;
+        private final long[] scores;
+        private final long[] timestamps;
+        private final long[] expirations;
+        private final Chunk next;
+        private int size;
+
+        Chunk(int capacity, Chunk next) {
+            this.gameIds = new long[capacity];
+            this.windowKeys = new String[capacity];
+            this.userIds = new long[capacity];
+            this.scores = new long[capacity];
+            this.timestamps = new long[capacity];
+            this.expirations = new long[capacity];
+            this.next = next;
+        }
+    }
+}
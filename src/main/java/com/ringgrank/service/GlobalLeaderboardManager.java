@@ -1,28 +1,26 @@
 package com.ringgrank.service;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.EOFException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,9 +28,22 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import com.ringgrank.model.BucketedWindowLeaderboard;
+import com.ringgrank.model.CalendarPeriod;
 import com.ringgrank.model.GameLeaderboardSet;
 import com.ringgrank.model.Leaderboard;
+import com.ringgrank.model.LeaderboardConfig;
 import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.model.StorageEngine;
+import com.ringgrank.persistence.LegacySnapshotReader;
+import com.ringgrank.persistence.SnapshotManifest;
+import com.ringgrank.persistence.SnapshotReader;
+import com.ringgrank.persistence.SnapshotWriter;
+import com.ringgrank.persistence.WalAppender;
+import com.ringgrank.persistence.WalCompactor;
+import com.ringgrank.persistence.WalReader;
+import com.ringgrank.persistence.WalSegments;
+import com.ringgrank.util.ConcurrentLongObjectMap;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -44,144 +55,395 @@ import jakarta.annotation.PreDestroy;
 @Component
 public class GlobalLeaderboardManager {
     private final Logger logger = LoggerFactory.getLogger(GlobalLeaderboardManager.class);
-    private final ConcurrentHashMap<Long, GameLeaderboardSet> gameLeaderboards = new ConcurrentHashMap<>();
-    private final Map<Long, Lock> gameCreationLocks = new ConcurrentHashMap<>();
+    private final ConcurrentLongObjectMap<GameLeaderboardSet> gameLeaderboards = new ConcurrentLongObjectMap<>();
 
+    // Base path of the WAL; segments are written next to it
     @Value("${leaderboard.wal.path:./data/wal/scores}")
     private String walFilePathString;
     private Path walFilePath;
+    // Single-file WALs from before segments (binary, CSV, and the archive),
+    // kept until a snapshot covers them
     private Path archivedWalFilePath;
+    private Path legacyWalFilePath;
+
+    @Value("${leaderboard.wal.segment-bytes:67108864}") // Default: 64 MB
+    private long walSegmentBytes;
+
+    // fsync every group commit so acknowledged scores survive a crash
+    @Value("${leaderboard.wal.fsync:true}")
+    private boolean walFsync;
+
+    @Value("${leaderboard.wal.max-batch:4096}")
+    private int walMaxBatch;
+
+    private WalAppender walAppender;
+
+    // Fold sealed segments into per-user latest records this often; 0
+    // disables compaction
+    @Value("${leaderboard.wal.compaction.interval:300000}") // Default: 5 minutes
+    private long walCompactionInterval;
+    // Held while segments are rewritten or deleted
+    private final Object walFilesLock = new Object();
+    private Thread walCompactorThread;
 
     @Value("${leaderboard.snapshot.path:./data/snapshot/leaderboard}")
     private String snapshotFilePathString;
     private Path snapshotFilePath;
     private Path tempSnapshotFilePath;
+    // Last WAL LSN contained in the loaded snapshot
+    private long snapshotLsn;
 
     @Value("${leaderboard.snapshot.interval:3600000}") // Default: 1 hour
     private long snapshotInterval;
 
-    private final DelayQueue<ExpiringScore> expiringScores = new DelayQueue<>();
+    // Only rewrite games that changed since the previous snapshot
+    @Value("${leaderboard.snapshot.incremental:true}")
+    private boolean incrementalSnapshots;
+
+    // Rewrite every game this often so old data files can be deleted
+    @Value("${leaderboard.snapshot.full-every:24}")
+    private int fullSnapshotEvery;
+
+    // Deflate snapshot sections on top of their delta-encoded columns
+    @Value("${leaderboard.snapshot.deflate:false}")
+    private boolean snapshotDeflate;
+
+    // Threads encoding snapshot sections; 0 uses one per processor
+    @Value("${leaderboard.snapshot.threads:0}")
+    private int snapshotThreads;
+
+    // Last manifest written or loaded, null before the first one; guarded by
+    // this. Game versions are those of the sections it references; a
+    // missing version makes the game count as changed.
+    private SnapshotManifest snapshotManifest;
+    private final Map<Long, Long> snapshotGameVersions = new ConcurrentHashMap<>();
+    private long nextSnapshotFileSeq = 1;
+    private int snapshotsSinceFull;
+
+    @Value("${leaderboard.rank-engine.enabled:false}")
+    private boolean rankEngineEnabled;
+
+    @Value("${leaderboard.rank-engine.min-score:0}")
+    private long rankEngineMinScore;
+
+    @Value("${leaderboard.rank-engine.max-score:1000000}")
+    private long rankEngineMaxScore;
+
+    @Value("${leaderboard.rank-engine.max-buckets:4096}")
+    private int rankEngineMaxBuckets;
+
+    @Value("${leaderboard.sketch.accuracy:0.01}")
+    private double sketchAccuracy;
+
+    @Value("${leaderboard.sketch.max-bins:1024}")
+    private int sketchMaxBins;
+
+    @Value("${leaderboard.storage.engine:tree}")
+    private String storageEngine;
+
+    // Per-game overrides, e.g. "42:compact,77:compact"
+    @Value("${leaderboard.storage.game-engines:}")
+    private String gameStorageEngines;
+
+    @Value("${leaderboard.offheap.slab-records:65536}")
+    private int offHeapSlabRecords;
+
+    @Value("${leaderboard.offheap.max-entries:10000000}")
+    private int offHeapMaxEntries;
+
+    // Sliding windows expire whole buckets of this length; 0 expires every
+    // entry individually
+    @Value("${leaderboard.window.bucket-ms:0}")
+    private long windowBucketMillis;
+
+    // Tumbling calendar windows per game, e.g. "today,week,month"; each is
+    // also queryable for its closed period ("yesterday", ...)
+    @Value("${leaderboard.window.calendar:}")
+    private String calendarWindows;
+
+    // Time zone whose midnight starts calendar periods
+    @Value("${leaderboard.window.timezone:UTC}")
+    private String calendarTimeZone;
+
+    // Keep a time-indexed log of each game's scores this long, answering
+    // sliding windows of any duration up to it; 0 only serves configured
+    // windows
+    @Value("${leaderboard.window.log-retention-ms:0}")
+    private long windowLogRetentionMillis;
+
+    // Queries of a window within the idle time after which it is kept live
+    // instead of being built from the log per query
+    @Value("${leaderboard.window.materialize-after:3}")
+    private int windowMaterializeQueries;
+
+    // Live windows built from the log are dropped after this long without
+    // a query
+    @Value("${leaderboard.window.idle-ms:600000}") // Default: 10 minutes
+    private long windowIdleMillis;
+
+    // Threads for loading snapshot sections and applying WAL records at
+    // startup; 0 uses one per available processor
+    @Value("${leaderboard.recovery.threads:0}")
+    private int recoveryThreads;
+
+    // Fast start: read only the snapshot manifest at startup and load each
+    // game on its first read or write
+    @Value("${leaderboard.recovery.lazy:false}")
+    private boolean lazyRecovery;
+
+    // Games in the snapshot that lazy recovery has not loaded yet
+    private final ConcurrentLongObjectMap<PendingGame> pendingGames = new ConcurrentLongObjectMap<>();
+    // WAL records of loaded games, folded during replay
+    private final ConcurrentLongObjectMap<ReplayFold> replayFolds = new ConcurrentLongObjectMap<>();
+
+    private LeaderboardConfig leaderboardConfig = LeaderboardConfig.DEFAULT;
+    private final Map<Long, LeaderboardConfig> gameConfigs = new HashMap<>();
+
+    // Read-held by recordScore from WAL append to in-memory apply; write-held
+    // briefly by createSnapshot to take a consistent cut and by dropGame
+    private final ReadWriteLock snapshotGate = new ReentrantReadWriteLock();
+
+    // Window entries waiting to expire, advanced by the expiration workers
+    @Value("${leaderboard.expiry.tick-ms:1000}") // Default: 1 second
+    private long expiryTickMillis;
+    // Expiration worker threads, each owning the games of its share of the
+    // wheel; 0 uses one per available processor
+    @Value("${leaderboard.expiry.workers:0}")
+    private int expiryWorkers;
+    private ExpirationWheel expirationWheel;
     private volatile boolean isRunning = true;
-    private Thread expirationProcessorThread;
+    private final List<Thread> expirationProcessorThreads = new ArrayList<>();
 
     @PostConstruct
     public void initialize() {
         logger.info("Initializing GlobalLeaderboardManager");
         this.walFilePath = Paths.get(walFilePathString);
         this.archivedWalFilePath = Paths.get(walFilePathString + ".archive"); // Define archived WAL path
+        this.legacyWalFilePath = Paths.get(walFilePathString + ".csv");
         this.snapshotFilePath = Paths.get(snapshotFilePathString);
         this.tempSnapshotFilePath = Paths.get(snapshotFilePathString + ".tmp");
+        this.leaderboardConfig = new LeaderboardConfig(StorageEngine.fromConfig(storageEngine),
+                rankEngineEnabled, rankEngineMinScore, rankEngineMaxScore, rankEngineMaxBuckets,
+                sketchAccuracy, sketchMaxBins, offHeapSlabRecords, offHeapMaxEntries, windowBucketMillis,
+                parseCalendarWindows(), ZoneId.of(calendarTimeZone), windowLogRetentionMillis,
+                windowMaterializeQueries, windowIdleMillis);
+        parseGameStorageEngines();
+        int workers = expiryWorkers > 0 ? expiryWorkers : Runtime.getRuntime().availableProcessors();
+        this.expirationWheel = new ExpirationWheel(expiryTickMillis, System.currentTimeMillis(), workers);
         // Create necessary directories
         try {
             Files.createDirectories(walFilePath.getParent());
             Files.createDirectories(snapshotFilePath.getParent());
+            // Skip past orphans of a snapshot that failed before its manifest
+            for (long fileSeq : SnapshotManifest.listDataFiles(snapshotFilePath).keySet()) {
+                nextSnapshotFileSeq = Math.max(nextSnapshotFileSeq, fileSeq + 1);
+            }
         } catch (IOException e) {
             throw new RuntimeException("Failed to create data directories", e);
         }
 
-        // Load data from snapshot and WAL
-        long lastTimestamp = loadFromSnapshot(snapshotFilePath);
-        replayWALFile(walFilePath, lastTimestamp);
+        // Load data from snapshot and WAL. Legacy files have no LSNs and are
+        // filtered by the snapshot's time instead.
+        int threads = recoveryThreads > 0 ? recoveryThreads : Runtime.getRuntime().availableProcessors();
+        long startNanos = System.nanoTime();
+        long lastTimestamp = loadFromSnapshot(snapshotFilePath, threads);
+        long snapshotNanos = System.nanoTime() - startNanos;
+        PartitionedReplay replay = new PartitionedReplay(threads, this::applyReplayed);
+        replayWALFile(legacyWalFilePath, 0, lastTimestamp, replay);
+        replayWALFile(walFilePath, 0, lastTimestamp, replay);
+        long lastLsn = replayWALSegments(snapshotLsn, replay);
+        replay.finish();
+        applyReplayFolds(threads);
+        long walNanos = System.nanoTime() - startNanos - snapshotNanos;
+        logger.info("Recovered {} games ({} not loaded yet) on {} threads: snapshot in {} ms, "
+                + "{} WAL records in {} ms ({} records/s)",
+                gameLeaderboards.size(), pendingGames.size(), threads, TimeUnit.NANOSECONDS.toMillis(snapshotNanos), replay.submitted(),
+                TimeUnit.NANOSECONDS.toMillis(walNanos), replay.submitted() * 1_000_000_000L / Math.max(1, walNanos));
+
+        walAppender = new WalAppender(walFilePath, walFsync, walMaxBatch, walSegmentBytes);
+        try {
+            walAppender.start(lastLsn + 1);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open WAL", e);
+        }
+
+        for (int worker = 0; worker < expirationWheel.workers(); worker++) {
+            int assigned = worker;
+            Thread thread = new Thread(() -> processExpiringScores(assigned), "ScoreExpirationProcessor-" + worker);
+            thread.setDaemon(true);
+            thread.start();
+            expirationProcessorThreads.add(thread);
+        }
 
-        expirationProcessorThread = new Thread(this::processExpiringScores, "ScoreExpirationProcessor");
-        expirationProcessorThread.setDaemon(true);
-        expirationProcessorThread.start();
+        if (walCompactionInterval > 0) {
+            walCompactorThread = new Thread(this::compactWALPeriodically, "WalCompactor");
+            walCompactorThread.setDaemon(true);
+            walCompactorThread.setPriority(Thread.MIN_PRIORITY);
+            walCompactorThread.start();
+        }
     }
 
     @PreDestroy
     public void shutdown() {
         isRunning = false;
-        if (expirationProcessorThread != null) {
-            expirationProcessorThread.interrupt(); // Interrupt the expiration processor thread
+        expirationProcessorThreads.forEach(Thread::interrupt);
+        for (Thread thread : expirationProcessorThreads) {
             try {
-                expirationProcessorThread.join(5000); // Wait for it to finish
+                thread.join(5000); // Wait for it to finish
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (walCompactorThread != null) {
+            walCompactorThread.interrupt();
+            try {
+                walCompactorThread.join(5000);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
         createSnapshot();
+        walAppender.close();
     }
 
     public void recordScore(ScoreEntry scoreEntry) {
-        // 1. Write to WAL first for durability
-        writeToWAL(scoreEntry);
-
-        // 2. Update in-memory structures
-        GameLeaderboardSet gameSet = gameLeaderboards.get(scoreEntry.gameId());
-        if (gameSet == null) {
-            Lock lock = gameCreationLocks.computeIfAbsent(
-                    scoreEntry.gameId(),
-                    k -> new ReentrantLock());
-            lock.lock();
+        // Shared with other writers; only a snapshot's cut takes it
+        // exclusively, so every record is either fully before or fully after
+        // the cut
+        snapshotGate.readLock().lock();
+        try {
+            // computeIfAbsent creates the game set at most once under its stripe lock
+            materialize(scoreEntry.gameId());
+            GameLeaderboardSet gameSet = gameLeaderboards.computeIfAbsent(scoreEntry.gameId(),
+                    id -> new GameLeaderboardSet(id, configFor(id), expirationWheel));
+            // A player the game has no room for is refused before reaching
+            // the WAL, which replay could not apply either
+            gameSet.reserveEntry(scoreEntry.userId());
+
+            // 1. Write to WAL first for durability
             try {
-                gameSet = gameLeaderboards.computeIfAbsent(scoreEntry.gameId(),
-                        id -> new GameLeaderboardSet(id, expiringScores));
-                gameSet.addScore(scoreEntry);
-            } finally {
-                lock.unlock();
+                writeToWAL(scoreEntry);
+            } catch (RuntimeException e) {
+                gameSet.cancelReservation(scoreEntry.userId());
+                throw e;
             }
+
+            // 2. Update in-memory structures
+            gameSet.addScore(scoreEntry);
+        } finally {
+            snapshotGate.readLock().unlock();
         }
-        gameSet.addScore(scoreEntry);
     }
 
-    private void writeToWAL(ScoreEntry entry) {
-        String entryString = String.format("%d,%d,%d,%d%n",
-                entry.timestamp(),
-                entry.gameId(),
-                entry.userId(),
-                entry.score());
-        try (FileOutputStream fos = new FileOutputStream(this.walFilePath.toFile(), true);
-                FileChannel channel = fos.getChannel();
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
-
-            writer.write(entryString);
-            writer.flush();
-            /*
-             * A trade-off has to be made between durability and performance.
-             * 
-             * channel.force(true) will force the OS to flush the file to disk,
-             * but it is slow. But still I have chosen not to use it because the performance
-             * gain is significant.
-             * 
-             * writer.flush() is faster, but the OS may not flush the file to disk
-             * immediately.
-             * 
-             * I have chosen to use writer.flush() because the performance gain is
-             * significant.
-             * 
-             * If you want to use channel.force(true), you can uncomment the line.
-             * 
-             */
-            // channel.force(true);
+    private List<CalendarPeriod> parseCalendarWindows() {
+        List<CalendarPeriod> periods = new ArrayList<>();
+        for (String key : calendarWindows.split(",")) {
+            if (!key.isBlank()) {
+                periods.add(CalendarPeriod.fromConfig(key));
+            }
+        }
+        return List.copyOf(periods);
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to write to WAL", e);
+    private void parseGameStorageEngines() {
+        for (String mapping : gameStorageEngines.split(",")) {
+            if (mapping.isBlank()) {
+                continue;
+            }
+            String[] parts = mapping.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(
+                        "Invalid leaderboard.storage.game-engines entry '" + mapping + "', expected gameId:engine");
+            }
+            long gameId = Long.parseLong(parts[0].trim());
+            gameConfigs.put(gameId, leaderboardConfig.withStorageEngine(StorageEngine.fromConfig(parts[1])));
         }
     }
 
+    private LeaderboardConfig configFor(long gameId) {
+        return gameConfigs.getOrDefault(gameId, leaderboardConfig);
+    }
+
+    private void writeToWAL(ScoreEntry entry) {
+        // Blocks until the group commit containing this record is durable
+        walAppender.append(entry);
+    }
+
     @Scheduled(fixedDelayString = "${leaderboard.snapshot.interval:3600000}")
-    public void createSnapshot() {
-        logger.info("Creating snapshot");
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                Files.newOutputStream(tempSnapshotFilePath, StandardOpenOption.CREATE))) {
-            for (Map.Entry<Long, GameLeaderboardSet> entry : gameLeaderboards.entrySet()) {
-                oos.writeLong(entry.getKey());
-                oos.writeObject(entry.getValue());
-            }
-            // Atomic move to ensure consistency
-            Files.move(tempSnapshotFilePath, snapshotFilePath,
-                    StandardCopyOption.ATOMIC_MOVE,
-                    StandardCopyOption.REPLACE_EXISTING);
-
-            logger.info("Moving WAL {} to archive", walFilePath);
-            if (!Files.exists(walFilePath)) {
-                Files.createFile(walFilePath);
-            }
-            Files.move(walFilePath, archivedWalFilePath,
-                    StandardCopyOption.REPLACE_EXISTING,
-                    StandardCopyOption.ATOMIC_MOVE);
-
-            logger.info("Snapshot created");
+    public synchronized void createSnapshot() {
+        boolean full = snapshotManifest == null || !incrementalSnapshots
+                || snapshotsSinceFull + 1 >= fullSnapshotEvery || isMostlyGarbage(snapshotManifest);
+        logger.info("Creating {} snapshot", full ? "full" : "incremental");
+        // Games not loaded yet keep their section unless they have WAL
+        // records to apply or everything is rewritten. Only recovery adds
+        // pending records, so none appear after this.
+        for (PendingGame pending : pendingGames.values()) {
+            if (full || !pending.records.isEmpty()) {
+                materialize(pending.gameId);
+            }
+        }
+        // Take the cut: with the gate held exclusively no record is between
+        // its WAL append and its apply, so the state contains exactly the
+        // records up to coveredLsn. Changed games then keep pre-images of
+        // whatever changes while they are being written; unchanged games keep
+        // their previous section, which already matches the cut.
+        long coveredLsn;
+        long createdAt;
+        List<GameLeaderboardSet> dirtyGames = new ArrayList<>();
+        Map<Long, Long> gameVersions = new HashMap<>();
+        Map<Long, SnapshotManifest.SectionRef> sections = new HashMap<>();
+        snapshotGate.writeLock().lock();
+        try {
+            coveredLsn = walAppender.lastDurableLsn();
+            createdAt = System.currentTimeMillis();
+            for (GameLeaderboardSet game : gameLeaderboards.values()) {
+                // Read before the capture starts, so an expiration racing
+                // with it can only make the game look changed next time
+                long version = game.getVersion();
+                gameVersions.put(game.getGameId(), version);
+                SnapshotManifest.SectionRef previous = full ? null : snapshotManifest.sections().get(game.getGameId());
+                Long previousVersion = snapshotGameVersions.get(game.getGameId());
+                if (previous != null && previousVersion != null && previousVersion == version) {
+                    sections.put(game.getGameId(), previous);
+                } else {
+                    game.beginCapture();
+                    dirtyGames.add(game);
+                }
+            }
+            pendingGames.forEach((gameId, pending) -> sections.put(gameId, pending.section));
+        } finally {
+            snapshotGate.writeLock().unlock();
+        }
+        try {
+            if (!dirtyGames.isEmpty()) {
+                long fileSeq = nextSnapshotFileSeq++;
+                List<SnapshotWriter.WrittenSection> written = SnapshotWriter.write(
+                        SnapshotManifest.dataFilePath(snapshotFilePath, fileSeq), coveredLsn, dirtyGames,
+                        snapshotDeflate, snapshotThreads > 0 ? snapshotThreads : Runtime.getRuntime().availableProcessors());
+                for (SnapshotWriter.WrittenSection section : written) {
+                    sections.put(section.gameId(),
+                            new SnapshotManifest.SectionRef(fileSeq, section.offset(), section.length()));
+                }
+            }
+            SnapshotManifest manifest = new SnapshotManifest(coveredLsn, createdAt, sections);
+            manifest.write(snapshotFilePath, tempSnapshotFilePath);
+            snapshotManifest = manifest;
+            snapshotGameVersions.clear();
+            snapshotGameVersions.putAll(gameVersions);
+            snapshotsSinceFull = full ? 0 : snapshotsSinceFull + 1;
+
+            int deletedFiles = deleteUnreferencedSnapshotFiles(manifest);
+            int deletedSegments;
+            synchronized (walFilesLock) {
+                deletedSegments = walAppender.deleteSegmentsCoveredBy(coveredLsn);
+            }
+            Files.deleteIfExists(walFilePath);
+            Files.deleteIfExists(archivedWalFilePath);
+            Files.deleteIfExists(legacyWalFilePath);
+
+            logger.info("Snapshot at LSN {} rewrote {} of {} games, deleted {} data files and {} WAL segments",
+                    coveredLsn, dirtyGames.size(), sections.size(), deletedFiles, deletedSegments);
         } catch (IOException e) {
             logger.error("Failed to create snapshot", e);
             throw new RuntimeException("Failed to create snapshot", e);
@@ -193,112 +455,490 @@ public class GlobalLeaderboardManager {
         }
     }
 
-    private long loadFromSnapshot(Path path) {
+    // Whether less than half of the bytes in the referenced data files are
+    // still referenced
+    private boolean isMostlyGarbage(SnapshotManifest manifest) {
+        Set<Long> fileSeqs = new HashSet<>();
+        manifest.sections().values().forEach(ref -> fileSeqs.add(ref.fileSeq()));
+        long totalBytes = 0;
+        try {
+            for (long fileSeq : fileSeqs) {
+                totalBytes += Files.size(SnapshotManifest.dataFilePath(snapshotFilePath, fileSeq));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to size snapshot data files, taking a full snapshot", e);
+            return true;
+        }
+        return manifest.liveBytes() * 2 < totalBytes;
+    }
+
+    private int deleteUnreferencedSnapshotFiles(SnapshotManifest manifest) throws IOException {
+        Set<Long> referenced = new HashSet<>();
+        manifest.sections().values().forEach(ref -> referenced.add(ref.fileSeq()));
+        int deleted = 0;
+        for (Map.Entry<Long, Path> file : SnapshotManifest.listDataFiles(snapshotFilePath).entrySet()) {
+            if (!referenced.contains(file.getKey()) && Files.deleteIfExists(file.getValue())) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private long loadFromSnapshot(Path path, int threads) {
         if (!Files.exists(path)) {
             return 0;
         }
-        FileTime snapshotFileTime = FileTime.fromMillis(0);
-        try (ObjectInputStream ois = new ObjectInputStream(
-                Files.newInputStream(path))) {
-            snapshotFileTime = Files.getLastModifiedTime(path);
-            while (true) {
-                try {
-                    long gameId = ois.readLong();
-                    GameLeaderboardSet gameSet = (GameLeaderboardSet) ois.readObject();
-                    gameSet.setExpiringScoresQueueRef(expiringScores);
-                    gameLeaderboards.put(gameId, gameSet);
-                    logger.info("Game Set: {} with {} leaderboards", gameId,
-                            gameSet.getLeaderboard(null).getTotalPlayers());
-                } catch (EOFException e) {
-                    break;
-                }
+        try {
+            if (SnapshotManifest.isManifest(path)) {
+                return loadFromManifest(path, threads);
+            }
+            // A single-file snapshot; the first snapshot taken is then full
+            if (!SnapshotReader.isBinarySnapshot(path)) {
+                return loadLegacySnapshot(path);
             }
-        } catch (IOException | ClassNotFoundException e) {
+            SnapshotReader.Header header = SnapshotReader.read(path,
+                    section -> gameLeaderboards.put(section.gameId(), restoreGame(section)));
+            snapshotLsn = header.coveredLsn();
+            logger.info("Game Set: {}, snapshot LSN {}", gameLeaderboards.size(), snapshotLsn);
+            return header.createdAtMillis();
+        } catch (IOException e) {
             throw new RuntimeException("Failed to load snapshot", e);
         }
-        logger.info("Game Set: {}", gameLeaderboards.size());
-        return snapshotFileTime.toMillis();
     }
 
-    private void replayWALFile(Path path, long fromTimestamp) {
-        if (!Files.exists(path)) {
-            return;
+    private long loadFromManifest(Path path, int threads) throws IOException {
+        SnapshotManifest manifest = SnapshotManifest.read(path);
+        snapshotManifest = manifest;
+        snapshotLsn = manifest.coveredLsn();
+        if (lazyRecovery) {
+            manifest.sections().forEach((gameId, section) -> pendingGames.put(gameId,
+                    new PendingGame(gameId, section, configFor(gameId))));
+            logger.info("Game Set: {} to load on first use, snapshot LSN {}", pendingGames.size(), snapshotLsn);
+            return manifest.createdAtMillis();
         }
+        // Split the sections, in file order, into runs of about equal size
+        // and load the runs in parallel
+        List<SnapshotManifest.SectionRef> refs = new ArrayList<>(manifest.sections().values());
+        refs.sort(Comparator.comparingLong(SnapshotManifest.SectionRef::fileSeq)
+                .thenComparingLong(SnapshotManifest.SectionRef::offset));
+        long runBytes = Math.max(1, manifest.liveBytes() / (threads * 4L));
+        AtomicInteger loaded = new AtomicInteger();
+        int progressStep = Math.max(1, refs.size() / 10);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int runStart = 0;
+        long bytes = 0;
+        for (int i = 0; i < refs.size(); i++) {
+            bytes += refs.get(i).length();
+            boolean lastInFile = i + 1 == refs.size() || refs.get(i + 1).fileSeq() != refs.get(i).fileSeq();
+            if (bytes >= runBytes || lastInFile) {
+                Path dataFile = SnapshotManifest.dataFilePath(path, refs.get(i).fileSeq());
+                long[] offsets = refs.subList(runStart, i + 1).stream()
+                        .mapToLong(SnapshotManifest.SectionRef::offset).toArray();
+                tasks.add(() -> {
+                    SnapshotReader.readSections(dataFile, offsets, section -> {
+                        gameLeaderboards.put(section.gameId(), restoreGame(section));
+                        int count = loaded.incrementAndGet();
+                        if (count % progressStep == 0) {
+                            logger.info("Loaded {}/{} snapshot sections", count, refs.size());
+                        }
+                    });
+                    return null;
+                });
+                runStart = i + 1;
+                bytes = 0;
+            }
+        }
+        runInParallel(tasks, threads);
+        logger.info("Game Set: {} ({} MB) in {} tasks, snapshot LSN {}", gameLeaderboards.size(),
+                manifest.liveBytes() >> 20, tasks.size(), snapshotLsn);
+        return manifest.createdAtMillis();
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(path)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                long timestamp = Long.parseLong(parts[0]);
-                if (timestamp < fromTimestamp) {
-                    continue;
+    private static void runInParallel(List<Callable<Void>> tasks, int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during recovery", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Recovery task failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Called concurrently while loading a manifest
+    private GameLeaderboardSet restoreGame(SnapshotReader.GameSection section) {
+        long gameId = section.gameId();
+        GameLeaderboardSet gameSet = new GameLeaderboardSet(gameId, configFor(gameId), expirationWheel);
+        section.windows().forEach(gameSet::configureWindow);
+        gameSet.getLeaderboard(null).loadSorted(section.allTimeEntries());
+        long nowMillis = System.currentTimeMillis();
+        section.windowEntries().forEach((windowKey, entries) -> gameSet.restoreWindow(windowKey, entries, nowMillis));
+        section.calendarWindows().forEach(calendar -> gameSet.restoreCalendarWindow(calendar.period(),
+                calendar.periodStart(), calendar.currentEntries(), calendar.closedEntries(), nowMillis));
+        SnapshotReader.LogRecords scoreLog = section.scoreLog();
+        gameSet.appendToScoreLog(scoreLog.userIds(), scoreLog.scores(), scoreLog.timestamps(), scoreLog.size());
+        // Unchanged until WAL replay touches it
+        snapshotGameVersions.put(gameId, gameSet.getVersion());
+        logger.info("Game Set: {} with {} leaderboards", gameId, gameSet.getLeaderboard(null).getTotalPlayers());
+        return gameSet;
+    }
+
+    // Java-serialized snapshots of the first release, which have no LSN;
+    // the WAL after them is filtered by the snapshot file's time. The first
+    // snapshot taken replaces them with the binary format.
+    private long loadLegacySnapshot(Path path) throws IOException {
+        long snapshotMillis = Files.getLastModifiedTime(path).toMillis();
+        LegacySnapshotReader.read(path, section -> gameLeaderboards.put(section.gameId(), restoreGame(section)));
+        logger.info("Game Set: {} from Java-serialized snapshot {}", gameLeaderboards.size(), path);
+        return snapshotMillis;
+    }
+
+    /**
+     * Replays the WAL segments holding records after the given LSN and
+     * returns the highest LSN found in the log. Records at or below the
+     * highest LSN replayed so far are skipped too: a compaction interrupted
+     * before deleting its inputs leaves them behind the compacted segment
+     * that already holds what they still matter for.
+     */
+    private long replayWALSegments(long afterLsn, PartitionedReplay replay) {
+        long lastLsn = afterLsn;
+        try {
+            List<WalSegments.Segment> segments = WalSegments.list(walFilePath);
+            for (int i = 0; i < segments.size(); i++) {
+                WalSegments.Segment segment = segments.get(i);
+                boolean lastSegment = i == segments.size() - 1;
+                if (!lastSegment && segments.get(i + 1).firstLsn() - 1 <= lastLsn) {
+                    continue; // Fully covered by the snapshot or an earlier segment
                 }
-                ScoreEntry entry = new ScoreEntry(
-                        Long.parseLong(parts[2]), // userId
-                        Long.parseLong(parts[1]), // gameId
-                        Long.parseLong(parts[3]), // score
-                        timestamp // timestamp
-                );
-                // Skip WAL writing when replaying
-                GameLeaderboardSet gameSet = gameLeaderboards.get(entry.gameId());
-                if (gameSet == null) {
-                    gameSet = new GameLeaderboardSet(entry.gameId(), expiringScores);
-                    gameLeaderboards.put(entry.gameId(), gameSet);
+                WalReader.Result result = replayWALFile(segment.path(), lastLsn, 0, replay);
+                lastLsn = Math.max(lastLsn, Math.max(result.lastLsn(), segment.firstLsn() - 1));
+                if (result.validBytes() < Files.size(segment.path())) {
+                    if (lastSegment) {
+                        // Torn tail from a crash mid-write
+                        WalSegments.truncate(segment.path(), result.validBytes());
+                    } else {
+                        logger.error("WAL segment {} is corrupt after offset {}; continuing with the next segment",
+                                segment.path(), result.validBytes());
+                    }
                 }
-                gameSet.addScore(entry);
             }
         } catch (IOException e) {
             throw new RuntimeException("Failed to replay WAL", e);
         }
+        return lastLsn;
     }
 
-    private void processExpiringScores() {
+    private void compactWALPeriodically() {
         while (isRunning) {
             try {
-                ExpiringScore expired = expiringScores.take();
-                GameLeaderboardSet gameSet = gameLeaderboards.get(expired.gameId());
-                Leaderboard leaderboard = gameSet.getLeaderboard(expired.windowKey());
-                leaderboard.removeScore(expired.scoreEntry());
+                Thread.sleep(walCompactionInterval);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             }
+            compactWAL();
         }
     }
 
-    public GameLeaderboardSet getGameLeaderboardSet(Long gameId) {
-        return gameLeaderboards.get(gameId);
+    /**
+     * Rewrites the sealed WAL segments into one that keeps only the records
+     * replay still needs, so the log stays proportional to the number of
+     * users rather than submissions between snapshots. Runs on a
+     * low-priority background thread; the segment being written is never
+     * touched.
+     */
+    public void compactWAL() {
+        synchronized (walFilesLock) {
+            try {
+                List<WalSegments.Segment> sealed = walAppender.sealedSegments();
+                if (!WalCompactor.needsCompaction(sealed)) {
+                    return;
+                }
+                long startNanos = System.nanoTime();
+                WalCompactor.Result result = WalCompactor.compact(sealed,
+                        calendarRecordsFrom(System.currentTimeMillis()));
+                logger.info("Compacted {} WAL segments from {} records ({} bytes) to {} records ({} bytes) in {} ms",
+                        result.segments(), result.recordsIn(), result.bytesIn(), result.recordsOut(),
+                        result.bytesOut(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            } catch (IOException e) {
+                if (isRunning) {
+                    logger.error("Failed to compact WAL", e);
+                }
+            }
+        }
     }
 
-    public static class ExpiringScore implements Delayed {
-        private final ScoreEntry scoreEntry;
-        private final long gameId;
-        private final String windowKey;
-        private final long expirationTime;
+    // Earliest timestamp a calendar window's running or closed period can
+    // include from nowMillis on; the WAL keeps such records uncompacted
+    private long calendarRecordsFrom(long nowMillis) {
+        long from = Long.MAX_VALUE;
+        for (LeaderboardConfig config : allConfigs()) {
+            for (CalendarPeriod period : config.calendarPeriods()) {
+                long runningStart = period.startOf(nowMillis, config.calendarZone());
+                from = Math.min(from, period.previousStart(runningStart, config.calendarZone()));
+            }
+        }
+        return from;
+    }
 
-        public ExpiringScore(ScoreEntry entry, long gameId, String windowKey, long expirationTime) {
-            this.scoreEntry = entry;
-            this.gameId = gameId;
-            this.windowKey = windowKey;
-            this.expirationTime = expirationTime;
+    private List<LeaderboardConfig> allConfigs() {
+        List<LeaderboardConfig> configs = new ArrayList<>(gameConfigs.values());
+        configs.add(leaderboardConfig);
+        return configs;
+    }
+
+    private WalReader.Result replayWALFile(Path path, long afterLsn, long fromTimestamp, PartitionedReplay replay) {
+        try {
+            WalReader.Result result = WalReader.replay(path, afterLsn, (lsn, entry) -> {
+                if (lsn > 0 || entry.timestamp() >= fromTimestamp) {
+                    replay.submit(entry);
+                }
+            });
+            if (result.records() > 0) {
+                logger.info("Replayed {} records from WAL {}", result.records(), path);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to replay WAL", e);
+        }
+    }
+
+    // Skips WAL writing when replaying. Records are folded per game and
+    // applied once replay is done, or once the game is loaded if lazy
+    // recovery has not loaded it yet. Each game's records arrive on one
+    // replay thread.
+    private void applyReplayed(ScoreEntry entry) {
+        PendingGame pending = pendingGames.get(entry.gameId());
+        if (pending != null) {
+            pending.records.add(entry);
+            return;
         }
+        replayFolds.computeIfAbsent(entry.gameId(),
+                id -> new ReplayFold(id, configFor(id), System.currentTimeMillis())).add(entry);
+    }
 
+    // Rebuilds the leaderboards of every replayed game in parallel
+    private void applyReplayFolds(int threads) {
+        long nowMillis = System.currentTimeMillis();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        long[] totals = new long[2];
+        replayFolds.forEach((gameId, fold) -> {
+            totals[0] += fold.records();
+            totals[1] += fold.users();
+            tasks.add(() -> {
+                fold.applyTo(gameLeaderboards.computeIfAbsent(gameId,
+                        id -> new GameLeaderboardSet(id, configFor(id), expirationWheel)), nowMillis);
+                return null;
+            });
+        });
+        try {
+            runInParallel(tasks, threads);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to apply replayed WAL records", e);
+        }
+        replayFolds.clear();
+        if (!tasks.isEmpty()) {
+            logger.info("Folded {} WAL records into {} entries across {} games", totals[0], totals[1], tasks.size());
+        }
+    }
+
+    /**
+     * Loads a game that lazy recovery has not loaded yet from its snapshot
+     * section and applies the WAL records replayed for it. The game is only
+     * published once complete; concurrent callers wait for it.
+     */
+    private void materialize(long gameId) {
+        PendingGame pending = pendingGames.get(gameId);
+        if (pending == null) {
+            return;
+        }
+        synchronized (pending) {
+            if (pending.dropped || pendingGames.get(gameId) != pending) {
+                return;
+            }
+            long startNanos = System.nanoTime();
+            GameLeaderboardSet[] gameSet = new GameLeaderboardSet[1];
+            try {
+                SnapshotReader.readSections(SnapshotManifest.dataFilePath(snapshotFilePath, pending.section.fileSeq()),
+                        new long[] { pending.section.offset() }, section -> gameSet[0] = restoreGame(section));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load game " + gameId + " from snapshot", e);
+            }
+            pending.records.applyTo(gameSet[0], System.currentTimeMillis());
+            gameLeaderboards.put(gameId, gameSet[0]);
+            pendingGames.remove(gameId);
+            logger.info("Loaded game {} on first use with {} WAL records in {} ms", gameId, pending.records.records(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    // Wakes at every tick of the expiration wheel and removes the entries
+    // of the worker's slots that came due
+    private void processExpiringScores(int worker) {
+        ExpiryRemover remover = new ExpiryRemover();
+        while (isRunning) {
+            try {
+                Thread.sleep(expirationWheel.millisUntilNextTick(System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            expirationWheel.advance(System.currentTimeMillis(), worker, remover);
+        }
+    }
+
+    private final class ExpiryRemover implements ExpirationWheel.ExpiryHandler {
         @Override
-        public long getDelay(TimeUnit unit) {
-            return unit.convert(expirationTime - System.currentTimeMillis(),
-                    TimeUnit.MILLISECONDS);
+        public void expire(long gameId, String windowKey, List<ScoreEntry> entries) {
+            Leaderboard leaderboard = windowLeaderboard(gameId, windowKey);
+            if (leaderboard != null) {
+                leaderboard.removeScores(entries);
+            }
         }
 
         @Override
-        public int compareTo(Delayed other) {
-            return Long.compare(expirationTime,
-                    ((ExpiringScore) other).expirationTime);
+        public void expire(ExpirationWheel.Task task) {
+            if (task instanceof ExpiringBatch batch) {
+                Leaderboard leaderboard = windowLeaderboard(batch.gameId(), batch.windowKey());
+                if (leaderboard == null) {
+                    return;
+                }
+                ExpiringBatch rest = batch.expireDue(leaderboard, System.currentTimeMillis());
+                if (rest != null) {
+                    expirationWheel.schedule(rest);
+                }
+            } else if (task instanceof BucketDrop drop
+                    && windowLeaderboard(drop.gameId(), drop.windowKey()) instanceof BucketedWindowLeaderboard buckets) {
+                buckets.dropExpiredBuckets(System.currentTimeMillis());
+            }
+        }
+
+        // Null if the game was dropped
+        private Leaderboard windowLeaderboard(long gameId, String windowKey) {
+            GameLeaderboardSet gameSet = gameLeaderboards.get(gameId);
+            return gameSet == null ? null : gameSet.getLeaderboard(windowKey);
         }
+    }
 
-        public ScoreEntry scoreEntry() {
-            return scoreEntry;
+    /**
+     * Drops the windows built from score logs that went idle, see
+     * {@link GameLeaderboardSet#dropIdleWindows(long)}.
+     */
+    @Scheduled(fixedDelayString = "${leaderboard.window.idle-ms:600000}")
+    public void dropIdleWindows() {
+        if (windowLogRetentionMillis <= 0) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        int dropped = 0;
+        for (GameLeaderboardSet gameSet : gameLeaderboards.values()) {
+            dropped += gameSet.dropIdleWindows(nowMillis);
+        }
+        if (dropped > 0) {
+            logger.info("Dropped {} idle windows built from score logs", dropped);
+        }
+    }
+
+    /**
+     * Removes a game and all its leaderboards, releasing any off-heap memory
+     * they hold, then takes a snapshot without it so its scores are not
+     * recovered after a restart. Waits for a running snapshot, which may
+     * still be reading the game's leaderboards.
+     *
+     * @return false if the game did not exist
+     */
+    public synchronized boolean dropGame(long gameId) {
+        boolean dropped = false;
+        // Held exclusively so no writer is between reserving its entry and
+        // applying it to the board being released; records after this land
+        // in a fresh game
+        snapshotGate.writeLock().lock();
+        try {
+            PendingGame pending = pendingGames.get(gameId);
+            if (pending != null) {
+                synchronized (pending) {
+                    pending.dropped = true;
+                    pendingGames.remove(gameId);
+                }
+                dropped = true;
+            }
+            GameLeaderboardSet gameSet = gameLeaderboards.remove(gameId);
+            // A game recreated under the same ID starts its versions over
+            snapshotGameVersions.remove(gameId);
+            if (gameSet != null) {
+                gameSet.release();
+                dropped = true;
+            }
+        } finally {
+            snapshotGate.writeLock().unlock();
+        }
+        if (dropped) {
+            logger.info("Dropped game {}", gameId);
+            createSnapshot();
         }
+        return dropped;
+    }
+
+    public GameLeaderboardSet getGameLeaderboardSet(Long gameId) {
+        materialize(gameId);
+        return gameLeaderboards.get(gameId);
+    }
+
+    // A snapshot game that lazy recovery has not loaded yet
+    private static final class PendingGame {
+        final long gameId;
+        final SnapshotManifest.SectionRef section;
+        // WAL records after the snapshot
+        final ReplayFold records;
+        boolean dropped;
 
+        PendingGame(long gameId, SnapshotManifest.SectionRef section, LeaderboardConfig config) {
+            this.gameId = gameId;
+            this.section = section;
+            this.records = new ReplayFold(gameId, config, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Expirations of a window leaderboard restored from a snapshot, in
+     * expiry order. The expiration wheel holds one batch per leaderboard for
+     * its earliest expiry instead of one entry per score; draining it
+     * removes every due entry and schedules the remainder.
+     */
+    public static final class ExpiringBatch implements ExpirationWheel.Task {
+        private final long gameId;
+        private final String windowKey;
+        private final long windowMillis;
+        private final long[] userIds;
+        private final long[] scores;
+        private final long[] timestamps;
+        private final int next;
+
+        public ExpiringBatch(long gameId, String windowKey, long windowMillis, long[] userIds, long[] scores,
+                long[] timestamps) {
+            this(gameId, windowKey, windowMillis, userIds, scores, timestamps, 0);
+        }
+
+        private ExpiringBatch(long gameId, String windowKey, long windowMillis, long[] userIds, long[] scores,
+                long[] timestamps, int next) {
+            this.gameId = gameId;
+            this.windowKey = windowKey;
+            this.windowMillis = windowMillis;
+            this.userIds = userIds;
+            this.scores = scores;
+            this.timestamps = timestamps;
+            this.next = next;
+        }
+
+        @Override
         public long gameId() {
             return gameId;
         }
@@ -306,5 +946,35 @@ public class GlobalLeaderboardManager {
         public String windowKey() {
             return windowKey;
         }
+
+        @Override
+        public long expirationTime() {
+            return timestamps[next] + windowMillis;
+        }
+
+        /**
+         * Removes the entries due by nowMillis that are still current.
+         *
+         * @return The batch of the remaining entries, or null if none remain.
+         */
+        ExpiringBatch expireDue(Leaderboard leaderboard, long nowMillis) {
+            int i = next;
+            List<ScoreEntry> due = new ArrayList<>();
+            while (i < timestamps.length && timestamps[i] + windowMillis <= nowMillis) {
+                due.add(new ScoreEntry(userIds[i], gameId(), scores[i], timestamps[i]));
+                i++;
+            }
+            leaderboard.removeScores(due);
+            return i < timestamps.length
+                    ? new ExpiringBatch(gameId(), windowKey(), windowMillis, userIds, scores, timestamps, i)
+                    : null;
+        }
+    }
+
+    /**
+     * Drop of the expired buckets of a {@link BucketedWindowLeaderboard},
+     * scheduled once per bucket for the time the bucket leaves the window.
+     */
+    public record BucketDrop(long gameId, String windowKey, long expirationTime) implements ExpirationWheel.Task {
     }
 }
\ No newline at end of file
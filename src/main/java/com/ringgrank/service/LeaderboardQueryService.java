@@ -1,23 +1,50 @@
 package com.ringgrank.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.ringgrank.dto.ApproximateUserRankResponse;
 import com.ringgrank.dto.LeaderboardEntryResponse;
 import com.ringgrank.dto.UserRankResponse;
 import com.ringgrank.exception.GameNotFoundException;
 import com.ringgrank.exception.UserNotFoundInLeaderboardException;
+import com.ringgrank.model.FenwickRankEngine;
 import com.ringgrank.model.GameLeaderboardSet;
 import com.ringgrank.model.Leaderboard;
+import com.ringgrank.model.QuantileSketch;
 import com.ringgrank.model.ScoreEntry;
 
 @Service
 public class LeaderboardQueryService {
     private final GlobalLeaderboardManager leaderboardManager;
 
+    // Most entries kept in the top-K cache; each holds up to 1024 responses
+    static final int TOP_K_CACHE_ENTRIES = 4096;
+
+    // Top-K responses by (game, window, limit rounded up to its top-K version
+    // bucket), least recently used first. An entry is reused while the
+    // board's top-K version is unchanged, so writes far below the requested
+    // ranks do not force a rebuild.
+    private final Map<TopKCacheKey, CachedTopK> topKCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TopKCacheKey, CachedTopK> eldest) {
+                    return size() > TOP_K_CACHE_ENTRIES;
+                }
+            });
+
+    private record TopKCacheKey(long gameId, String window, int limit) {
+    }
+
+    private record CachedTopK(Leaderboard leaderboard, long version, List<LeaderboardEntryResponse> responses) {
+    }
+
     @Autowired
     public LeaderboardQueryService(GlobalLeaderboardManager leaderboardManager) {
         this.leaderboardManager = leaderboardManager;
@@ -25,12 +52,23 @@ public class LeaderboardQueryService {
 
     public List<LeaderboardEntryResponse> getTopKLeaders(long gameId, int limit, String window) {
         GameLeaderboardSet gameSet = getGameLeaderboardSet(gameId);
-        Leaderboard leaderboard = gameSet.getLeaderboard(window);
+        Leaderboard leaderboard = gameSet.queryLeaderboard(window, System.currentTimeMillis());
+
+        // All limits of one version bucket share an entry of the bucket's size
+        int cachedLimit = cachedLimit(limit);
+        TopKCacheKey key = new TopKCacheKey(gameId, window == null ? "" : window.trim(), cachedLimit);
+        // Read the version before the entries: a write racing with the rebuild
+        // leaves a stale version behind, which only costs one extra rebuild
+        long version = leaderboard.getTopKVersion(cachedLimit);
+        CachedTopK cached = topKCache.get(key);
+        if (cached != null && cached.leaderboard() == leaderboard && cached.version() == version) {
+            return firstResponses(cached.responses(), limit);
+        }
 
-        List<ScoreEntry> topK = leaderboard.getTopK(limit);
+        List<ScoreEntry> topK = leaderboard.getTopK(cachedLimit);
         int rank = 1;
 
-        List<LeaderboardEntryResponse> responses = new ArrayList<>();
+        List<LeaderboardEntryResponse> responses = new ArrayList<>(topK.size());
         for (ScoreEntry entry : topK) {
             responses.add(new LeaderboardEntryResponse(
                     entry.userId(),
@@ -39,12 +77,74 @@ public class LeaderboardQueryService {
                     rank));
             rank++;
         }
-        return responses;
+        List<LeaderboardEntryResponse> result = List.copyOf(responses);
+        // Boards built for this query only would be kept alive by the cache,
+        // and so would a board its window no longer uses
+        if (gameSet.getLeaderboard(window) == leaderboard) {
+            topKCache.put(key, new CachedTopK(leaderboard, version, result));
+        } else {
+            topKCache.remove(key);
+        }
+        return firstResponses(result, limit);
+    }
+
+    // Smallest power of two not below limit, for limits with their own
+    // top-K version bucket
+    static int cachedLimit(int limit) {
+        if (limit <= 1 || limit > 1024) {
+            return limit;
+        }
+        return Integer.highestOneBit(limit - 1) << 1;
+    }
+
+    private static List<LeaderboardEntryResponse> firstResponses(List<LeaderboardEntryResponse> responses,
+            int limit) {
+        return responses.size() <= limit ? responses : responses.subList(0, limit);
+    }
+
+    int topKCacheSize() {
+        return topKCache.size();
+    }
+
+    /**
+     * Drops a game with all its leaderboards, see
+     * {@link GlobalLeaderboardManager#dropGame(long)}.
+     */
+    public void dropGame(long gameId) {
+        if (!leaderboardManager.dropGame(gameId)) {
+            throw new GameNotFoundException("Game " + gameId + " not found");
+        }
+        synchronized (topKCache) {
+            topKCache.keySet().removeIf(key -> key.gameId() == gameId);
+        }
     }
 
     public UserRankResponse getUserRank(long gameId, long userId, String window) {
         GameLeaderboardSet gameSet = getGameLeaderboardSet(gameId);
-        Leaderboard leaderboard = gameSet.getLeaderboard(window);
+        Leaderboard leaderboard = gameSet.queryLeaderboard(window, System.currentTimeMillis());
+
+        // O(log N) lookup in the leaderboard's order-statistic index; the
+        // entry and rank come from the same state
+        Leaderboard.RankedEntry ranked = leaderboard.getRankedEntry(userId);
+        if (ranked == null) {
+            throw new UserNotFoundInLeaderboardException(
+                    "User " + userId + " not found in leaderboard for game " + gameId);
+        }
+        ScoreEntry userScore = ranked.entry();
+
+        double percentile = calculatePercentile(leaderboard, userScore.score(), ranked.rank());
+
+        return new UserRankResponse(
+                userId,
+                ranked.rank(),
+                userScore.score(),
+                percentile,
+                userScore.timestamp());
+    }
+
+    public ApproximateUserRankResponse getApproximateUserRank(long gameId, long userId, String window) {
+        GameLeaderboardSet gameSet = getGameLeaderboardSet(gameId);
+        Leaderboard leaderboard = gameSet.queryLeaderboard(window, System.currentTimeMillis());
 
         ScoreEntry userScore = leaderboard.getUserScore(userId);
         if (userScore == null) {
@@ -52,15 +152,19 @@ public class LeaderboardQueryService {
                     "User " + userId + " not found in leaderboard for game " + gameId);
         }
 
-        int rank = leaderboard.getUserRank(userId);
-        int totalPlayers = leaderboard.getTotalPlayers();
-        double percentile = calculatePercentile(rank, totalPlayers);
+        QuantileSketch.Estimate estimate = leaderboard.estimateRank(userScore.score());
+        long totalPlayers = Math.max(estimate.total(), 1);
+        double percentile = ((totalPlayers - estimate.rank() + 1) * 100.0) / totalPlayers;
+        double percentileError = (estimate.rankError() * 100.0) / totalPlayers;
 
-        return new UserRankResponse(
+        return new ApproximateUserRankResponse(
                 userId,
-                rank,
+                estimate.rank(),
+                estimate.rankError(),
                 userScore.score(),
                 percentile,
+                percentileError,
+                leaderboard.getSketchAccuracy(),
                 userScore.timestamp());
     }
 
@@ -72,9 +176,16 @@ public class LeaderboardQueryService {
         return gameSet;
     }
 
-    private double calculatePercentile(int rank, int totalPlayers) {
+    // With the rank engine, the share of players not strictly above the
+    // score: tied players share the percentile of the best of them, and
+    // log-linear buckets interpolate it. Without it, from the exact rank, so
+    // ties keep their tie-break order.
+    private double calculatePercentile(Leaderboard leaderboard, long score, int rank) {
+        FenwickRankEngine rankEngine = leaderboard.getRankEngine();
+        long totalPlayers = rankEngine != null ? rankEngine.getTotalCount() : leaderboard.getTotalPlayers();
         if (totalPlayers == 0)
             return 0.0;
-        return ((totalPlayers - rank + 1) * 100.0) / totalPlayers;
+        long playersAbove = rankEngine != null ? Math.min(rankEngine.countAbove(score), totalPlayers - 1) : rank - 1;
+        return ((totalPlayers - playersAbove) * 100.0) / totalPlayers;
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.ringgrank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import com.ringgrank.model.ScoreEntry;
+
+/**
+ * Applies replayed WAL records on a fixed set of worker threads during
+ * recovery. Records are routed by gameId, so each game's records are applied
+ * by one worker in log order while different games are applied in parallel.
+ * With a single partition records are applied on the calling thread.
+ */
+final class PartitionedReplay {
+    private static final int BATCH_RECORDS = 1024;
+    private static final int QUEUED_BATCHES = 8;
+    private static final ScoreEntry[] END = new ScoreEntry[0];
+
+    private final Consumer<ScoreEntry> apply;
+    private final int partitions;
+    private final List<BlockingQueue<ScoreEntry[]>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScoreEntry[][] batches;
+    private final int[] batchSizes;
+    private volatile Throwable failure;
+    private long submitted;
+
+    PartitionedReplay(int partitions, Consumer<ScoreEntry> apply) {
+        this.apply = apply;
+        this.partitions = Math.max(1, partitions);
+        this.batches = new ScoreEntry[this.partitions][];
+        this.batchSizes = new int[this.partitions];
+        if (this.partitions == 1) {
+            return;
+        }
+        for (int i = 0; i < this.partitions; i++) {
+            BlockingQueue<ScoreEntry[]> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+            queues.add(queue);
+            batches[i] = new ScoreEntry[BATCH_RECORDS];
+            Thread worker = new Thread(() -> applyBatches(queue), "WalReplay-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    int partitions() {
+        return partitions;
+    }
+
+    long submitted() {
+        return submitted;
+    }
+
+    void submit(ScoreEntry entry) {
+        submitted++;
+        if (partitions == 1) {
+            apply.accept(entry);
+            return;
+        }
+        int partition = (int) Math.floorMod(mix(entry.gameId()), (long) partitions);
+        batches[partition][batchSizes[partition]++] = entry;
+        if (batchSizes[partition] == BATCH_RECORDS) {
+            enqueue(partition, batches[partition]);
+            batches[partition] = new ScoreEntry[BATCH_RECORDS];
+            batchSizes[partition] = 0;
+        }
+    }
+
+    /**
+     * Hands over the partial batches, waits until every record has been
+     * applied and rethrows the first failure of a worker.
+     */
+    void finish() {
+        for (int i = 0; i < queues.size(); i++) {
+            if (batchSizes[i] > 0) {
+                ScoreEntry[] batch = new ScoreEntry[batchSizes[i]];
+                System.arraycopy(batches[i], 0, batch, 0, batchSizes[i]);
+                enqueue(i, batch);
+                batchSizes[i] = 0;
+            }
+            enqueue(i, END);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while replaying WAL", e);
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException("Failed to apply WAL record", failure);
+        }
+    }
+
+    private void enqueue(int partition, ScoreEntry[] batch) {
+        try {
+            queues.get(partition).put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while replaying WAL", e);
+        }
+    }
+
+    private void applyBatches(BlockingQueue<ScoreEntry[]> queue) {
+        try {
+            while (true) {
+                ScoreEntry[] batch = queue.take();
+                if (batch == END) {
+                    return;
+                }
+                // Keep draining after a failure so the reader never blocks
+                if (failure == null) {
+                    try {
+                        for (ScoreEntry entry : batch) {
+                            apply.accept(entry);
+                        }
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Spreads sequential game IDs over the partitions
+    private static long mix(long gameId) {
+        long h = gameId * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
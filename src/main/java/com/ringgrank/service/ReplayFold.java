@@ -0,0 +1,287 @@
+package com.ringgrank.service;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.ringgrank.model.CalendarPeriod;
+import com.ringgrank.model.GameLeaderboardSet;
+import com.ringgrank.model.LeaderboardConfig;
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.model.SortedEntries;
+import com.ringgrank.util.IndexSort;
+import com.ringgrank.util.LongIntHashMap;
+
+/**
+ * Folds one game's replayed WAL records into the final entry of each user,
+ * so recovery rebuilds every leaderboard once instead of applying each
+ * record.
+ *
+ * The all-time board keeps a user's last record. A window keeps the user's
+ * last record that was inside the window, which depends on the window's
+ * start. Each user therefore keeps a chain, newest first, of the last record
+ * and every older record with a later timestamp than all records after it;
+ * other records can never be a window's pick. Timestamps usually grow with
+ * the log, so chains rarely hold more than one record.
+ *
+ * A calendar window keeps the user's last record within its running period
+ * and within the period closed before it; older periods are gone. These
+ * picks are kept per user alongside the chain, for the periods as of when
+ * the fold was created.
+ *
+ * A game's score log gets the chains, which hold every record a window can
+ * pick.
+ *
+ * Records of one game must be added from one thread, in log order.
+ */
+final class ReplayFold {
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    // Timestamp of an empty calendar pick
+    private static final long NO_RECORD = Long.MIN_VALUE;
+
+    private final long gameId;
+    // userId -> index into users and heads
+    private final LongIntHashMap userIndexes = new LongIntHashMap();
+    private long[] users = new long[INITIAL_CAPACITY];
+    private int[] heads = new int[INITIAL_CAPACITY];
+    private int userCount;
+
+    // Chain nodes; freed nodes are linked through older
+    private long[] scores = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] older = new int[INITIAL_CAPACITY];
+    private int nodeCount;
+    private int freeNode = NONE;
+    private long records;
+
+    // Per calendar period: start of the closed period, of the running one
+    // and of the next one
+    private final CalendarPeriod[] periods;
+    private final long[] closedStarts;
+    private final long[] runningStarts;
+    private final long[] runningEnds;
+    // Picks per user index, closed period at 2 * period, running at
+    // 2 * period + 1
+    private final long[][] pickScores;
+    private final long[][] pickTimestamps;
+
+    ReplayFold(long gameId, LeaderboardConfig config, long nowMillis) {
+        this.gameId = gameId;
+        List<CalendarPeriod> calendarPeriods = config.calendarPeriods();
+        ZoneId zone = config.calendarZone();
+        this.periods = calendarPeriods.toArray(new CalendarPeriod[0]);
+        this.closedStarts = new long[periods.length];
+        this.runningStarts = new long[periods.length];
+        this.runningEnds = new long[periods.length];
+        for (int p = 0; p < periods.length; p++) {
+            runningStarts[p] = periods[p].startOf(nowMillis, zone);
+            closedStarts[p] = periods[p].previousStart(runningStarts[p], zone);
+            runningEnds[p] = periods[p].nextStart(runningStarts[p], zone);
+        }
+        this.pickScores = new long[periods.length * 2][INITIAL_CAPACITY];
+        this.pickTimestamps = new long[periods.length * 2][INITIAL_CAPACITY];
+        for (long[] timestamps : pickTimestamps) {
+            Arrays.fill(timestamps, NO_RECORD);
+        }
+    }
+
+    long records() {
+        return records;
+    }
+
+    int users() {
+        return userCount;
+    }
+
+    boolean isEmpty() {
+        return records == 0;
+    }
+
+    void add(ScoreEntry entry) {
+        records++;
+        int user = userIndexes.get(entry.userId());
+        int chain = NONE;
+        if (user == LongIntHashMap.MISSING) {
+            user = addUser(entry.userId());
+        } else {
+            // Drop records the new one supersedes for every window
+            chain = heads[user];
+            while (chain != NONE && timestamps[chain] <= entry.timestamp()) {
+                int next = older[chain];
+                older[chain] = freeNode;
+                freeNode = chain;
+                chain = next;
+            }
+        }
+        int node = allocateNode();
+        scores[node] = entry.score();
+        timestamps[node] = entry.timestamp();
+        older[node] = chain;
+        heads[user] = node;
+
+        for (int p = 0; p < periods.length; p++) {
+            long timestamp = entry.timestamp();
+            if (timestamp >= closedStarts[p] && timestamp < runningEnds[p]) {
+                int pick = timestamp < runningStarts[p] ? 2 * p : 2 * p + 1;
+                pickScores[pick][user] = entry.score();
+                pickTimestamps[pick][user] = timestamp;
+            }
+        }
+    }
+
+    /**
+     * Applies the folded entries to gameSet, whose windows are evaluated at
+     * nowMillis like scores applied one by one at that time.
+     */
+    void applyTo(GameLeaderboardSet gameSet, long nowMillis) {
+        if (userCount == 0) {
+            return;
+        }
+        gameSet.mergeReplayed(null, sortedEntries(Arrays.copyOf(heads, userCount), Arrays.copyOf(users, userCount)));
+        if (gameSet.getScoreLog() != null) {
+            appendChainsTo(gameSet);
+        }
+        for (Map.Entry<String, Duration> window : gameSet.getWindowDurations().entrySet()) {
+            long windowStart = nowMillis - window.getValue().toMillis();
+            int[] picks = new int[userCount];
+            long[] pickUsers = new long[userCount];
+            int pickCount = 0;
+            for (int user = 0; user < userCount; user++) {
+                int node = heads[user];
+                while (node != NONE && timestamps[node] <= windowStart) {
+                    node = older[node];
+                }
+                if (node != NONE) {
+                    picks[pickCount] = node;
+                    pickUsers[pickCount++] = users[user];
+                }
+            }
+            gameSet.mergeReplayed(window.getKey(),
+                    sortedEntries(Arrays.copyOf(picks, pickCount), Arrays.copyOf(pickUsers, pickCount)));
+        }
+        for (int p = 0; p < periods.length; p++) {
+            gameSet.mergeReplayedCalendar(periods[p], closedStarts[p], calendarPicks(2 * p), nowMillis);
+            gameSet.mergeReplayedCalendar(periods[p], runningStarts[p], calendarPicks(2 * p + 1), nowMillis);
+        }
+    }
+
+    // Appends each user's chain to the score log, oldest record first. Users
+    // follow in the order of their first record; the log's picks only
+    // depend on the order of each user's own records.
+    private void appendChainsTo(GameLeaderboardSet gameSet) {
+        long[] logUsers = new long[nodeCount];
+        long[] logScores = new long[nodeCount];
+        long[] logTimestamps = new long[nodeCount];
+        int count = 0;
+        int[] chain = new int[INITIAL_CAPACITY];
+        for (int user = 0; user < userCount; user++) {
+            int length = 0;
+            for (int node = heads[user]; node != NONE; node = older[node]) {
+                if (length == chain.length) {
+                    chain = Arrays.copyOf(chain, length * 2);
+                }
+                chain[length++] = node;
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                logUsers[count] = users[user];
+                logScores[count] = scores[chain[i]];
+                logTimestamps[count] = timestamps[chain[i]];
+                count++;
+            }
+        }
+        gameSet.appendToScoreLog(logUsers, logScores, logTimestamps, count);
+    }
+
+    // Rank-ordered view of the users' picks for one calendar period
+    private SortedEntries calendarPicks(int pick) {
+        int[] pickUserIndexes = new int[userCount];
+        long[] pickUsers = new long[userCount];
+        int pickCount = 0;
+        for (int user = 0; user < userCount; user++) {
+            if (pickTimestamps[pick][user] != NO_RECORD) {
+                pickUserIndexes[pickCount] = user;
+                pickUsers[pickCount++] = users[user];
+            }
+        }
+        return sortedEntries(Arrays.copyOf(pickUserIndexes, pickCount), Arrays.copyOf(pickUsers, pickCount),
+                pickScores[pick], pickTimestamps[pick]);
+    }
+
+    private int addUser(long userId) {
+        if (userCount == users.length) {
+            users = Arrays.copyOf(users, userCount * 2);
+            heads = Arrays.copyOf(heads, userCount * 2);
+        }
+        if (periods.length > 0 && userCount == pickScores[0].length) {
+            for (int pick = 0; pick < pickScores.length; pick++) {
+                pickScores[pick] = Arrays.copyOf(pickScores[pick], userCount * 2);
+                pickTimestamps[pick] = Arrays.copyOf(pickTimestamps[pick], userCount * 2);
+                Arrays.fill(pickTimestamps[pick], userCount, userCount * 2, NO_RECORD);
+            }
+        }
+        users[userCount] = userId;
+        userIndexes.put(userId, userCount);
+        return userCount++;
+    }
+
+    private int allocateNode() {
+        if (freeNode != NONE) {
+            int node = freeNode;
+            freeNode = older[node];
+            return node;
+        }
+        if (nodeCount == scores.length) {
+            int capacity = nodeCount * 2;
+            scores = Arrays.copyOf(scores, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            older = Arrays.copyOf(older, capacity);
+        }
+        return nodeCount++;
+    }
+
+    // Rank-ordered view of the given nodes and their users
+    private SortedEntries sortedEntries(int[] nodes, long[] nodeUsers) {
+        return sortedEntries(nodes, nodeUsers, scores, timestamps);
+    }
+
+    // Rank-ordered view of the given indexes into scores and timestamps
+    private SortedEntries sortedEntries(int[] nodes, long[] nodeUsers, long[] scores, long[] timestamps) {
+        int[] order = IndexSort.sortedIndexes(nodes.length, (left, right) -> {
+            int byScore = Long.compare(scores[nodes[right]], scores[nodes[left]]);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byTimestamp = Long.compare(timestamps[nodes[left]], timestamps[nodes[right]]);
+            return byTimestamp != 0 ? byTimestamp : Long.compare(nodeUsers[left], nodeUsers[right]);
+        });
+        return new SortedEntries() {
+            @Override
+            public long gameId() {
+                return gameId;
+            }
+
+            @Override
+            public int size() {
+                return order.length;
+            }
+
+            @Override
+            public long userIdAt(int index) {
+                return nodeUsers[order[index]];
+            }
+
+            @Override
+            public long scoreAt(int index) {
+                return scores[nodes[order[index]]];
+            }
+
+            @Override
+            public long timestampAt(int index) {
+                return timestamps[nodes[order[index]]];
+            }
+        };
+    }
+}
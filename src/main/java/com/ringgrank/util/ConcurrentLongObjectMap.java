@@ -0,0 +1,382 @@
+package com.ringgrank.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent hash map from primitive long keys to non-null values.
+ *
+ * Keys and values live in flat parallel arrays with linear probing, so an
+ * entry costs one long and one reference slot instead of a boxed Long plus a
+ * ConcurrentHashMap node. The table is split into lock stripes. Each stripe
+ * is guarded by a StampedLock: writers take it exclusively, while readers
+ * probe optimistically and only fall back to the read lock if a writer raced
+ * them. Deletion uses backward shifting, so no tombstones pile up.
+ */
+public class ConcurrentLongObjectMap<V> {
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int MIN_STRIPE_CAPACITY = 8;
+    // Resize a stripe once it is more than 3/4 full
+    private static final int LOAD_FACTOR_PERCENT = 75;
+
+    private Stripe<V>[] stripes;
+    private int stripeShift;
+
+    /**
+     * Receives each key/value pair of the map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final class Stripe<V> {
+        final StampedLock lock = new StampedLock();
+        long[] keys;
+        // A null value marks an empty slot, so key 0 needs no special case
+        Object[] values;
+        int size;
+
+        Stripe(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    public ConcurrentLongObjectMap() {
+        this(DEFAULT_STRIPES, 0);
+    }
+
+    /**
+     * @param stripes         Number of lock stripes, rounded up to a power of two.
+     * @param expectedEntries Expected number of entries, used to presize the table.
+     */
+    public ConcurrentLongObjectMap(int stripes, int expectedEntries) {
+        init(stripes, expectedEntries);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void init(int stripeCount, int expectedEntries) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        this.stripes = (Stripe<V>[]) new Stripe<?>[count];
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(count);
+        int perStripe = (int) Math.min(1 << 30, (long) expectedEntries * 100 / LOAD_FACTOR_PERCENT / count + 1);
+        int capacity = Math.max(MIN_STRIPE_CAPACITY, Integer.highestOneBit(perStripe - 1) << 1);
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe<>(capacity);
+        }
+    }
+
+    public V get(long key) {
+        long hash = mix(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            V value = find(stripe.keys, stripe.values, key, hash);
+            if (stripe.lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = stripe.lock.readLock();
+        try {
+            return find(stripe.keys, stripe.values, key, hash);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @return the previous value, or null if there was none.
+     */
+    public V put(long key, V value) {
+        requireValue(value);
+        long hash = mix(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return insert(stripe, key, hash, value, true);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Associates the value with the key unless a value is already present.
+     *
+     * @return the existing value, or null if the value was added.
+     */
+    public V putIfAbsent(long key, V value) {
+        requireValue(value);
+        long hash = mix(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            return insert(stripe, key, hash, value, false);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the value for the key, creating it with the mapping function if
+     * absent. The function runs at most once per key while holding the key's
+     * stripe lock, so it must be short and must not touch this map.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        long hash = mix(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            existing = find(stripe.keys, stripe.values, key, hash);
+            if (existing != null) {
+                return existing;
+            }
+            V created = mappingFunction.apply(key);
+            requireValue(created);
+            insert(stripe, key, hash, created, false);
+            return created;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @return the removed value, or null if the key was absent.
+     */
+    public V remove(long key) {
+        long hash = mix(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            int slot = slotOf(stripe.keys, stripe.values, key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            V removed = (V) stripe.values[slot];
+            delete(stripe, slot);
+            return removed;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key only if it is currently mapped to a value equal to the
+     * given one.
+     *
+     * @return true if the entry was removed.
+     */
+    public boolean remove(long key, Object value) {
+        long hash = mix(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            int slot = slotOf(stripe.keys, stripe.values, key, hash);
+            if (slot < 0 || !stripe.values[slot].equals(value)) {
+                return false;
+            }
+            delete(stripe, slot);
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Stripe<V> stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.keys = new long[MIN_STRIPE_CAPACITY];
+                stripe.values = new Object[MIN_STRIPE_CAPACITY];
+                stripe.size = 0;
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry. Each stripe is read under its read lock, so the view of
+     * a stripe is consistent but the map as a whole is weakly consistent, like
+     * ConcurrentHashMap iteration. The action must not modify this map.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Stripe<V> stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                long[] keys = stripe.keys;
+                Object[] values = stripe.values;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        action.accept(keys[i], (V) values[i]);
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot list of the values.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    private Stripe<V> stripeFor(long hash) {
+        return stripes[(int) (hash >>> stripeShift)];
+    }
+
+    // Returns null if absent. Safe to call from an optimistic read: the arrays
+    // are read through the given references and probing is bounded.
+    @SuppressWarnings("unchecked")
+    private V find(long[] keys, Object[] values, long key, long hash) {
+        int mask = values.length - 1;
+        if (keys.length != values.length) {
+            return null; // Torn read during a resize; caller will validate and retry
+        }
+        int slot = (int) hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            Object value = values[slot];
+            if (value == null) {
+                return null;
+            }
+            if (keys[slot] == key) {
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private int slotOf(long[] keys, Object[] values, long key, long hash) {
+        int mask = values.length - 1;
+        int slot = (int) hash & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(Stripe<V> stripe, long key, long hash, V value, boolean replace) {
+        int mask = stripe.values.length - 1;
+        int slot = (int) hash & mask;
+        while (stripe.values[slot] != null) {
+            if (stripe.keys[slot] == key) {
+                V previous = (V) stripe.values[slot];
+                if (replace) {
+                    stripe.values[slot] = value;
+                }
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        stripe.keys[slot] = key;
+        stripe.values[slot] = value;
+        stripe.size++;
+        if (stripe.size * 100L > (long) stripe.values.length * LOAD_FACTOR_PERCENT) {
+            resize(stripe, stripe.values.length << 1);
+        }
+        return null;
+    }
+
+    // Backward-shift deletion: pull later entries of the probe run into the gap
+    // so lookups never need tombstones.
+    private void delete(Stripe<V> stripe, int slot) {
+        long[] keys = stripe.keys;
+        Object[] values = stripe.values;
+        int mask = values.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = (int) mix(keys[next]) & mask;
+            // Move the entry if its home slot is not in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        keys[gap] = 0;
+        stripe.size--;
+    }
+
+    private void resize(Stripe<V> stripe, int capacity) {
+        long[] oldKeys = stripe.keys;
+        Object[] oldValues = stripe.values;
+        long[] keys = new long[capacity];
+        Object[] values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = (int) mix(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+        stripe.keys = keys;
+        stripe.values = values;
+    }
+
+    private static void requireValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+    }
+
+    // MurmurHash3 finalizer: spreads sequential ids across stripes and slots
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,60 @@
+package com.ringgrank.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocation and explicit release of direct (off-heap) ByteBuffers.
+ * The JDK normally frees direct memory only once the buffer object is garbage
+ * collected. {@link #free(ByteBuffer)} releases it immediately through
+ * sun.misc.Unsafe.invokeCleaner, which the jdk.unsupported module exports. If
+ * that is unavailable the buffer is left to the garbage collector.
+ */
+public final class DirectBuffers {
+    private static final Logger logger = LoggerFactory.getLogger(DirectBuffers.class);
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Explicit release of direct buffers unavailable, relying on GC", e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectBuffers() {
+    }
+
+    public static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes);
+    }
+
+    /**
+     * Releases the buffer's native memory. The buffer must not be used
+     * afterwards.
+     */
+    public static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Failed to release direct buffer", e);
+        }
+    }
+}
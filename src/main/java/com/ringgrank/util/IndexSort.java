@@ -0,0 +1,75 @@
+package com.ringgrank.util;
+
+/**
+ * Sorts an array of int indexes by a caller-supplied order, typically over
+ * parallel primitive arrays, without boxing. The sort is a stable merge sort
+ * using one scratch array of the same length.
+ */
+public final class IndexSort {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    @FunctionalInterface
+    public interface IndexComparator {
+        int compare(int left, int right);
+    }
+
+    private IndexSort() {
+    }
+
+    /**
+     * Returns the indexes 0 to n - 1 sorted by comparator.
+     */
+    public static int[] sortedIndexes(int n, IndexComparator comparator) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        sort(indexes, comparator);
+        return indexes;
+    }
+
+    public static void sort(int[] indexes, IndexComparator comparator) {
+        if (indexes.length < 2) {
+            return;
+        }
+        int[] scratch = indexes.clone();
+        mergeSort(scratch, indexes, 0, indexes.length, comparator);
+    }
+
+    // Sorts source[from, to) into target[from, to); both hold the same
+    // values on entry
+    private static void mergeSort(int[] source, int[] target, int from, int to, IndexComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(target, from, to, comparator);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(target, source, from, mid, comparator);
+        mergeSort(target, source, mid, to, comparator);
+        if (comparator.compare(source[mid - 1], source[mid]) <= 0) {
+            System.arraycopy(source, from, target, from, to - from);
+            return;
+        }
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && comparator.compare(source[left], source[right]) <= 0)) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(int[] indexes, int from, int to, IndexComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int index = indexes[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(indexes[j], index) > 0) {
+                indexes[j + 1] = indexes[j];
+                j--;
+            }
+            indexes[j + 1] = index;
+        }
+    }
+}
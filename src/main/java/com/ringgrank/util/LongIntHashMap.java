@@ -0,0 +1,159 @@
+package com.ringgrank.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to non-negative int
+ * values, with linear probing and backward-shift deletion.
+ * An entry costs one long and one int slot, with no per-entry objects.
+ * This class is not thread-safe; callers must provide their own locking.
+ */
+public class LongIntHashMap {
+    /** Returned by {@link #get(long)} when the key is absent. */
+    public static final int MISSING = -1;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int LOAD_FACTOR_PERCENT = 75;
+
+    private long[] keys;
+    // MISSING marks an empty slot
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap() {
+        this(0);
+    }
+
+    public LongIntHashMap(int expectedEntries) {
+        allocate(capacityFor(expectedEntries));
+    }
+
+    public int get(long key) {
+        int mask = values.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (values[slot] != MISSING) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @return the previous value, or {@link #MISSING}.
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must be non-negative");
+        }
+        int mask = values.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (values[slot] != MISSING) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 100L > (long) values.length * LOAD_FACTOR_PERCENT) {
+            rehash(values.length << 1);
+        }
+        return MISSING;
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @return the removed value, or {@link #MISSING}.
+     */
+    public int remove(long key) {
+        int mask = values.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (values[slot] != MISSING) {
+            if (keys[slot] == key) {
+                int removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private void shiftBack(int slot) {
+        int mask = values.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != MISSING) {
+            int home = (int) mix(keys[next]) & mask;
+            // Move the entry if its home slot is not in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = MISSING;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != MISSING) {
+                int slot = (int) mix(oldKeys[i]) & mask;
+                while (values[slot] != MISSING) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    private static int capacityFor(int expectedEntries) {
+        long needed = (long) expectedEntries * 100 / LOAD_FACTOR_PERCENT + 1;
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,164 @@
+package com.ringgrank.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash map from long keys to non-negative int values, stored
+ * in a single direct ByteBuffer outside the Java heap. Each slot is 12 bytes:
+ * the key followed by value + 1, so the zeroed memory of a fresh buffer reads
+ * as empty. Uses linear probing with backward-shift deletion.
+ * This class is not thread-safe; callers must provide their own locking.
+ * Call {@link #release()} to free the native memory.
+ */
+public class OffHeapLongIntMap {
+    /** Returned by {@link #get(long)} when the key is absent. */
+    public static final int MISSING = -1;
+
+    private static final int SLOT_BYTES = 12;
+    private static final int MIN_CAPACITY = 1024;
+    // Largest power-of-two slot count that fits in one buffer
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final int LOAD_FACTOR_PERCENT = 70;
+
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+
+    public OffHeapLongIntMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int get(long key) {
+        int mask = capacity - 1;
+        int slot = (int) mix(key) & mask;
+        int stored;
+        while ((stored = storedValue(slot)) != 0) {
+            if (keyAt(slot) == key) {
+                return stored - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must be non-negative");
+        }
+        int mask = capacity - 1;
+        int slot = (int) mix(key) & mask;
+        while (storedValue(slot) != 0) {
+            if (keyAt(slot) == key) {
+                table.putInt(slot * SLOT_BYTES + 8, value + 1);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        write(slot, key, value + 1);
+        size++;
+        if (size * 100L > (long) capacity * LOAD_FACTOR_PERCENT) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException("Off-heap index is full");
+            }
+            rehash(capacity << 1);
+        }
+    }
+
+    public void remove(long key) {
+        int mask = capacity - 1;
+        int slot = (int) mix(key) & mask;
+        while (storedValue(slot) != 0) {
+            if (keyAt(slot) == key) {
+                shiftBack(slot);
+                size--;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long allocatedBytes() {
+        return table == null ? 0 : (long) capacity * SLOT_BYTES;
+    }
+
+    public void clear() {
+        release();
+        allocate(MIN_CAPACITY);
+    }
+
+    public void release() {
+        DirectBuffers.free(table);
+        table = null;
+        capacity = 0;
+        size = 0;
+    }
+
+    private void shiftBack(int slot) {
+        int mask = capacity - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (storedValue(next) != 0) {
+            long key = keyAt(next);
+            int home = (int) mix(key) & mask;
+            // Move the entry if its home slot is not in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                write(gap, key, storedValue(next));
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        write(gap, 0, 0);
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer oldTable = table;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int stored = oldTable.getInt(i * SLOT_BYTES + 8);
+            if (stored != 0) {
+                long key = oldTable.getLong(i * SLOT_BYTES);
+                int slot = (int) mix(key) & mask;
+                while (storedValue(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                write(slot, key, stored);
+            }
+        }
+        DirectBuffers.free(oldTable);
+    }
+
+    private void allocate(int newCapacity) {
+        table = DirectBuffers.allocate(newCapacity * SLOT_BYTES);
+        capacity = newCapacity;
+    }
+
+    private long keyAt(int slot) {
+        return table.getLong(slot * SLOT_BYTES);
+    }
+
+    private int storedValue(int slot) {
+        return table.getInt(slot * SLOT_BYTES + 8);
+    }
+
+    private void write(int slot, long key, int stored) {
+        table.putLong(slot * SLOT_BYTES, key);
+        table.putInt(slot * SLOT_BYTES + 8, stored);
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,76 @@
+package com.ringgrank.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.util.ConcurrentLongObjectMap;
+
+/**
+ * Measures the heap cost per entry of the userId index used by Leaderboard:
+ * ConcurrentHashMap<Long, ScoreEntry> versus ConcurrentLongObjectMap.
+ * The ScoreEntry values are allocated up front and shared by both runs, so
+ * only the index overhead is counted.
+ *
+ * Run with a fixed heap for stable numbers, e.g.
+ * java -Xms2g -Xmx2g -cp build/classes/java/main:build/classes/java/test
+ * com.ringgrank.benchmark.UserIndexMemoryBenchmark [users]
+ */
+public class UserIndexMemoryBenchmark {
+    private static final int DEFAULT_USERS = 1_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USERS;
+        ScoreEntry[] entries = new ScoreEntry[users];
+        for (int i = 0; i < users; i++) {
+            entries[i] = new ScoreEntry(1_000_000L + i, 1, i % 100_000, 1_700_000_000_000L + i);
+        }
+
+        long chmBytes = measureConcurrentHashMap(entries);
+        long primitiveBytes = measureConcurrentLongObjectMap(entries);
+
+        System.out.printf("Users: %,d%n", users);
+        System.out.printf("ConcurrentHashMap<Long, ScoreEntry>: %,d bytes (%.1f bytes/entry)%n",
+                chmBytes, (double) chmBytes / users);
+        System.out.printf("ConcurrentLongObjectMap<ScoreEntry>: %,d bytes (%.1f bytes/entry)%n",
+                primitiveBytes, (double) primitiveBytes / users);
+        System.out.printf("Saved: %,d bytes (%.1f bytes/entry)%n",
+                chmBytes - primitiveBytes, (double) (chmBytes - primitiveBytes) / users);
+    }
+
+    private static long measureConcurrentHashMap(ScoreEntry[] entries) throws InterruptedException {
+        long before = usedHeap();
+        ConcurrentHashMap<Long, ScoreEntry> index = new ConcurrentHashMap<>();
+        for (ScoreEntry entry : entries) {
+            index.put(entry.userId(), entry);
+        }
+        long after = usedHeap();
+        keepAlive(index.size());
+        return after - before;
+    }
+
+    private static long measureConcurrentLongObjectMap(ScoreEntry[] entries) throws InterruptedException {
+        long before = usedHeap();
+        ConcurrentLongObjectMap<ScoreEntry> index = new ConcurrentLongObjectMap<>();
+        for (ScoreEntry entry : entries) {
+            index.put(entry.userId(), entry);
+        }
+        long after = usedHeap();
+        keepAlive(index.size());
+        return after - before;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void keepAlive(int size) {
+        if (size < 0) {
+            System.out.println(size);
+        }
+    }
+}
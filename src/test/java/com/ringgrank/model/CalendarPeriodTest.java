@@ -0,0 +1,50 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class CalendarPeriodTest {
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static long millis(String dateTime) {
+        return ZonedDateTime.parse(dateTime).toInstant().toEpochMilli();
+    }
+
+    @Test
+    void periodsStartAtMidnightInTheZone() {
+        long time = millis("2026-10-15T01:30:00+02:00[Europe/Berlin]");
+        assertEquals(millis("2026-10-15T00:00:00+02:00[Europe/Berlin]"), CalendarPeriod.DAY.startOf(time, BERLIN));
+        // The 15th is a Thursday; weeks start on Monday
+        assertEquals(millis("2026-10-12T00:00:00+02:00[Europe/Berlin]"), CalendarPeriod.WEEK.startOf(time, BERLIN));
+        assertEquals(millis("2026-10-01T00:00:00+02:00[Europe/Berlin]"), CalendarPeriod.MONTH.startOf(time, BERLIN));
+        // Still the 14th in UTC
+        assertEquals(millis("2026-10-14T00:00:00Z"), CalendarPeriod.DAY.startOf(time, ZoneId.of("UTC")));
+    }
+
+    @Test
+    void boundariesFollowDaylightSavingTime() {
+        // Clocks went forward on 29 March 2026, so that day had 23 hours
+        long dayStart = millis("2026-03-29T00:00:00+01:00[Europe/Berlin]");
+        long nextStart = CalendarPeriod.DAY.nextStart(dayStart, BERLIN);
+        assertEquals(millis("2026-03-30T00:00:00+02:00[Europe/Berlin]"), nextStart);
+        assertEquals(23 * 3_600_000L, nextStart - dayStart);
+        assertEquals(dayStart, CalendarPeriod.DAY.previousStart(nextStart, BERLIN));
+        assertEquals(millis("2026-04-01T00:00:00+02:00[Europe/Berlin]"),
+                CalendarPeriod.MONTH.nextStart(millis("2026-03-01T00:00:00+01:00[Europe/Berlin]"), BERLIN));
+        assertEquals(millis("2026-02-23T00:00:00+01:00[Europe/Berlin]"),
+                CalendarPeriod.WEEK.previousStart(millis("2026-03-02T00:00:00+01:00[Europe/Berlin]"), BERLIN));
+    }
+
+    @Test
+    void parsesRunningPeriodKeys() {
+        assertEquals(CalendarPeriod.DAY, CalendarPeriod.fromConfig(" Today "));
+        assertEquals(CalendarPeriod.WEEK, CalendarPeriod.fromConfig("week"));
+        assertEquals(CalendarPeriod.MONTH, CalendarPeriod.fromConfig("month"));
+        assertThrows(IllegalArgumentException.class, () -> CalendarPeriod.fromConfig("yesterday"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FenwickRankEngineTest {
+
+    @Test
+    void exactBucketsCountPlayersAbove() {
+        FenwickRankEngine engine = new FenwickRankEngine(0, 1_000, 4096);
+        assertTrue(engine.isExact());
+        long[] scores = randomScores(2_000, 1_000, 1);
+        for (long score : scores) {
+            engine.add(score);
+        }
+        for (long score = 0; score <= 1_000; score += 7) {
+            assertEquals(countAbove(scores, score), engine.countAbove(score), "score " + score);
+        }
+        assertEquals(scores.length, engine.getTotalCount());
+    }
+
+    @Test
+    void logBucketsStayWithinTheirBucket() {
+        // Four precision bits fit the budget, so a bucket is at most 1/8 of
+        // its scores wide
+        FenwickRankEngine engine = new FenwickRankEngine(0, 1_000_000_000L, 256);
+        assertFalse(engine.isExact());
+        assertTrue(engine.getBucketCount() <= 256);
+        long[] scores = randomScores(5_000, 1_000_000_000L, 2);
+        for (long score : scores) {
+            engine.add(score);
+        }
+        for (int i = 0; i < scores.length; i += 50) {
+            long score = scores[i];
+            long sameBucket = Arrays.stream(scores)
+                    .filter(other -> Math.abs(other - score) <= score / 8 + 1).count();
+            long error = Math.abs(engine.countAbove(score) - countAbove(scores, score));
+            assertTrue(error <= sameBucket, "score " + score + ": error " + error + ", bucket " + sameBucket);
+        }
+    }
+
+    @Test
+    void removeAndClearUndoAdds() {
+        FenwickRankEngine engine = new FenwickRankEngine(0, 100, 4096);
+        engine.add(10);
+        engine.add(20);
+        engine.add(30);
+        engine.remove(20);
+        assertEquals(2, engine.getTotalCount());
+        assertEquals(1, engine.countAbove(10));
+        assertEquals(1, engine.countAbove(20));
+        engine.clear();
+        assertEquals(0, engine.getTotalCount());
+        assertEquals(0, engine.countAbove(0));
+    }
+
+    @Test
+    void scoresOutsideTheRangeAreClamped() {
+        FenwickRankEngine engine = new FenwickRankEngine(10, 20, 4096);
+        engine.add(5);
+        engine.add(50);
+        engine.add(15);
+        assertEquals(2, engine.countAbove(10));
+        assertEquals(0, engine.countAbove(20));
+        assertEquals(0, engine.countAbove(1_000));
+    }
+
+    private static long countAbove(long[] scores, long score) {
+        return Arrays.stream(scores).filter(other -> other > score).count();
+    }
+
+    private static long[] randomScores(int count, long bound, long seed) {
+        Random random = new Random(seed);
+        long[] scores = new long[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = Math.floorMod(random.nextLong(), bound + 1);
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.ringgrank.exception.LeaderboardCapacityExceededException;
+
+class OffHeapLeaderboardTest {
+    private static final long GAME_ID = 3;
+
+    private static OffHeapLeaderboard board(int maxEntries) {
+        return new OffHeapLeaderboard(GAME_ID, LeaderboardConfig.DEFAULT, 4, maxEntries);
+    }
+
+    private static ScoreEntry entry(long userId, long score) {
+        return new ScoreEntry(userId, GAME_ID, score, 1_000 + userId);
+    }
+
+    @Test
+    void ranksAcrossSlabs() {
+        OffHeapLeaderboard board = board(100);
+        for (long userId = 1; userId <= 50; userId++) {
+            board.addOrUpdateScore(entry(userId, userId * 10));
+        }
+        board.addOrUpdateScore(entry(1, 1_000));
+        assertEquals(50, board.getTotalPlayers());
+        assertEquals(1, board.getUserRank(1L));
+        assertEquals(2, board.getUserRank(50L));
+        assertEquals(entry(49, 490), board.getEntryAtRank(3));
+        board.release();
+    }
+
+    @Test
+    void reservationsCountTowardsCapacity() {
+        OffHeapLeaderboard board = board(2);
+        board.addOrUpdateScore(entry(1, 10));
+        board.reserveEntry(2);
+        assertThrows(LeaderboardCapacityExceededException.class, () -> board.reserveEntry(3));
+        // Users with an entry or a reservation always have room
+        board.reserveEntry(1);
+        board.reserveEntry(2);
+
+        board.addOrUpdateScore(entry(2, 20));
+        board.cancelReservation(2);
+        assertThrows(LeaderboardCapacityExceededException.class, () -> board.reserveEntry(3));
+        board.release();
+    }
+
+    @Test
+    void cancelledReservationFreesRoom() {
+        OffHeapLeaderboard board = board(1);
+        board.reserveEntry(1);
+        assertThrows(LeaderboardCapacityExceededException.class, () -> board.reserveEntry(2));
+        board.cancelReservation(1);
+        board.reserveEntry(2);
+        board.addOrUpdateScore(entry(2, 5));
+        assertEquals(1, board.getTotalPlayers());
+        board.release();
+    }
+
+    @Test
+    void releasedBoardReadsEmptyAndRefusesWrites() {
+        OffHeapLeaderboard board = board(10);
+        for (long userId = 1; userId <= 6; userId++) {
+            board.addOrUpdateScore(entry(userId, userId));
+        }
+        board.release();
+        assertEquals(0, board.getTotalPlayers());
+        assertEquals(List.of(), board.getTopK(3));
+        assertEquals(-1, board.getUserRank(6L));
+        assertNull(board.getEntryAtRank(1));
+        assertEquals(0, board.allocatedBytes());
+        assertThrows(IllegalStateException.class, () -> board.addOrUpdateScore(entry(7, 7)));
+        assertThrows(IllegalStateException.class, () -> board.reserveEntry(7));
+    }
+
+    @Test
+    void loadSortedSkipsEntriesBeyondCapacity() {
+        OffHeapLeaderboard source = board(10);
+        for (long userId = 1; userId <= 5; userId++) {
+            source.addOrUpdateScore(entry(userId, userId));
+        }
+        SortedEntriesBuilder sorted = new SortedEntriesBuilder(GAME_ID);
+        source.forEachEntry(sorted::add);
+
+        OffHeapLeaderboard board = board(3);
+        board.loadSorted(sorted);
+        assertEquals(3, board.getTotalPlayers());
+        assertEquals(1, board.getUserRank(5L));
+        assertNull(board.getUserScore(2L));
+        // The sketch only counts the loaded entries
+        assertEquals(3, board.estimateRank(3).total());
+        source.release();
+        board.release();
+    }
+}
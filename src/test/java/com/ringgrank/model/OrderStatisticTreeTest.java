@@ -0,0 +1,78 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class OrderStatisticTreeTest {
+
+    @Test
+    void ranksMatchASortedSet() {
+        OrderStatisticTree<ScoreEntry> tree = new OrderStatisticTree<>();
+        TreeSet<ScoreEntry> expected = new TreeSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            // Few scores and timestamps, so the tie-breaks decide most comparisons
+            ScoreEntry entry = new ScoreEntry(random.nextInt(500), 1, random.nextInt(20), random.nextInt(5));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(entry), tree.remove(entry));
+            } else {
+                assertEquals(expected.add(entry), tree.add(entry));
+            }
+        }
+        assertRanks(expected, tree);
+    }
+
+    @Test
+    void absentElementsAndRanksOutOfRange() {
+        OrderStatisticTree<ScoreEntry> tree = new OrderStatisticTree<>();
+        ScoreEntry entry = new ScoreEntry(1, 1, 10, 100);
+        assertEquals(-1, tree.rankOf(entry));
+        assertFalse(tree.remove(entry));
+        tree.add(entry);
+        assertFalse(tree.add(entry));
+        assertNull(tree.get(0));
+        assertNull(tree.get(2));
+        assertEquals(List.of(), tree.first(0));
+        tree.clear();
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    void buildFromSortedThenUpdate() {
+        TreeSet<ScoreEntry> expected = new TreeSet<>();
+        for (long userId = 1; userId <= 1_000; userId++) {
+            expected.add(new ScoreEntry(userId, 1, userId % 97, userId % 13));
+        }
+        OrderStatisticTree<ScoreEntry> tree = new OrderStatisticTree<>();
+        tree.buildFromSorted(new ArrayList<>(expected));
+        assertRanks(expected, tree);
+        for (long userId = 1; userId <= 1_000; userId += 3) {
+            ScoreEntry entry = new ScoreEntry(userId, 1, userId % 97, userId % 13);
+            expected.remove(entry);
+            tree.remove(entry);
+        }
+        assertRanks(expected, tree);
+    }
+
+    private static void assertRanks(TreeSet<ScoreEntry> expected, OrderStatisticTree<ScoreEntry> tree) {
+        assertEquals(expected.size(), tree.size());
+        List<ScoreEntry> inOrder = new ArrayList<>(expected);
+        for (int i = 0; i < inOrder.size(); i++) {
+            assertEquals(i + 1, tree.rankOf(inOrder.get(i)));
+            assertEquals(inOrder.get(i), tree.get(i + 1));
+        }
+        assertEquals(inOrder.subList(0, Math.min(10, inOrder.size())), tree.first(10));
+        List<ScoreEntry> visited = new ArrayList<>();
+        tree.forEach(visited::add);
+        assertEquals(inOrder, visited);
+    }
+}
@@ -0,0 +1,95 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTest {
+
+    @Test
+    void trueRankIsWithinTheErrorBound() {
+        long[] scores = randomScores(20_000, 1_000_000, 1);
+        assertRanksWithinBound(sketchOf(0.01, 1024, scores), scores);
+    }
+
+    @Test
+    void boundHoldsAfterLowBinsAreFolded() {
+        // 16 bins cannot cover the range, so the bottom of the board shares a bin
+        long[] scores = randomScores(5_000, 1_000_000_000L, 2);
+        assertRanksWithinBound(sketchOf(0.01, 16, scores), scores);
+    }
+
+    @Test
+    void scoresAtOrBelowZeroShareTheLowestRanks() {
+        QuantileSketch sketch = sketchOf(0.01, 1024, new long[] { 100, 50, 0, -5, -10 });
+        QuantileSketch.Estimate estimate = sketch.estimateRank(-5);
+        assertEquals(5, estimate.total());
+        assertTrue(Math.abs(estimate.rank() - 3) <= estimate.rankError());
+        assertTrue(Math.abs(estimate.rank() - 5) <= estimate.rankError());
+        assertEquals(1, sketch.estimateRank(100).rank());
+    }
+
+    @Test
+    void removeUndoesAdd() {
+        long[] scores = randomScores(1_000, 10_000, 3);
+        QuantileSketch sketch = sketchOf(0.02, 1024, scores);
+        for (int i = 0; i < scores.length / 2; i++) {
+            sketch.remove(scores[i]);
+        }
+        assertRanksWithinBound(sketch, Arrays.copyOfRange(scores, scores.length / 2, scores.length));
+    }
+
+    @Test
+    void mergeAddsCounts() {
+        long[] scores = randomScores(4_000, 100_000, 4);
+        QuantileSketch left = new QuantileSketch(0.01, 1024);
+        QuantileSketch right = new QuantileSketch(0.01, 1024);
+        for (int i = 0; i < scores.length; i++) {
+            (i % 2 == 0 ? left : right).add(scores[i]);
+        }
+        left.merge(right);
+        assertEquals(scores.length, left.getTotalCount());
+        assertRanksWithinBound(left, scores);
+    }
+
+    @Test
+    void mergeRejectsDifferentAccuracy() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new QuantileSketch(0.01, 1024).merge(new QuantileSketch(0.02, 1024)));
+    }
+
+    private static QuantileSketch sketchOf(double accuracy, int maxBins, long[] scores) {
+        QuantileSketch sketch = new QuantileSketch(accuracy, maxBins);
+        for (long score : scores) {
+            sketch.add(score);
+        }
+        return sketch;
+    }
+
+    // Ranks are checked against the sketch holding exactly these scores
+    private static void assertRanksWithinBound(QuantileSketch sketch, long[] scores) {
+        long[] descending = Arrays.stream(scores).boxed().sorted((a, b) -> Long.compare(b, a))
+                .mapToLong(Long::longValue).toArray();
+        for (int i = 0; i < descending.length; i++) {
+            QuantileSketch.Estimate estimate = sketch.estimateRank(descending[i]);
+            long trueRank = i + 1;
+            assertTrue(Math.abs(estimate.rank() - trueRank) <= estimate.rankError(),
+                    "score " + descending[i] + ": true rank " + trueRank + ", estimate " + estimate);
+            assertEquals(scores.length, estimate.total());
+        }
+    }
+
+    private static long[] randomScores(int count, long bound, long seed) {
+        Random random = new Random(seed);
+        long[] scores = new long[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = 1 + Math.floorMod(random.nextLong(), bound);
+        }
+        return scores;
+    }
+}
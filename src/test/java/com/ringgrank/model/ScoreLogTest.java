@@ -0,0 +1,98 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ScoreLogTest {
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    // Compaction reads the clock, so records are timed relative to it
+    private final long now = System.currentTimeMillis();
+
+    // userId:score in rank order
+    private static String describe(SortedEntries entries) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            text.append(i == 0 ? "" : " ").append(entries.userIdAt(i)).append(':').append(entries.scoreAt(i));
+        }
+        return text.toString();
+    }
+
+    @Test
+    void windowHoldsEachUsersLastRecordInRankOrder() {
+        ScoreLog log = new ScoreLog(1, HOUR_MILLIS);
+        log.append(1, 30, now - 300);
+        log.append(2, 20, now - 200);
+        log.append(3, 20, now - 250);
+        // Last submitted wins, even with a lower score
+        log.append(1, 10, now - 100);
+        assertEquals("3:20 2:20 1:10", describe(log.window(now - 1000)));
+        // Records at the start of the window are outside it
+        assertEquals("2:20 1:10", describe(log.window(now - 250)));
+        assertEquals("", describe(log.window(now)));
+    }
+
+    @Test
+    void windowFindsRecordsArrivingOutOfOrder() {
+        ScoreLog log = new ScoreLog(1, HOUR_MILLIS);
+        log.append(1, 5, now - 100);
+        log.append(2, 6, now - 1000);
+        log.append(3, 7, now - 50);
+        log.append(4, 8, now - 2000);
+        log.append(5, 9, now - 400);
+        assertEquals("5:9 3:7 1:5", describe(log.window(now - 500)));
+        // A user's late record older than the window hides nothing newer
+        log.append(3, 70, now - 600);
+        assertEquals("5:9 3:7 1:5", describe(log.window(now - 500)));
+        assertEquals("3:70 5:9 2:6 1:5", describe(log.window(now - 1500)));
+    }
+
+    @Test
+    void compactionDropsExpiredAndSupersededRecords() {
+        ScoreLog log = new ScoreLog(1, HOUR_MILLIS);
+        for (int user = 100; user < 110; user++) {
+            log.append(user, user, now - 2 * HOUR_MILLIS);
+        }
+        // Ten users submitting in time order, so only each one's last counts.
+        // The log is full after the first 1014 of them.
+        for (int i = 0; i < 1100; i++) {
+            log.append(i % 10, i, now - 1100 + i);
+        }
+        assertEquals(10 + 1100 - 1014, log.size());
+        assertEquals("9:1099 8:1098 7:1097 6:1096 5:1095 4:1094 3:1093 2:1092 1:1091 0:1090",
+                describe(log.window(now - 3 * HOUR_MILLIS)));
+        assertEquals("9:1099 8:1098", describe(log.window(now - 3)));
+    }
+
+    @Test
+    void compactionKeepsRecordsAnOlderWindowStillNeeds() {
+        ScoreLog log = new ScoreLog(1, HOUR_MILLIS);
+        // Newer first: the later, older record is what a window ending
+        // before the newer one picks
+        log.append(1, 50, now - 10);
+        for (int i = 0; i < 1024; i++) {
+            log.append(1, i, now - 2000 + i);
+        }
+        assertTrue(log.size() < 1024);
+        assertEquals("1:1023", describe(log.window(now - 20_000)));
+        assertEquals("1:50", describe(log.window(now - 500)));
+    }
+
+    @Test
+    void captureSeesRecordsAsOfItsStart() {
+        ScoreLog log = new ScoreLog(1, HOUR_MILLIS);
+        log.appendAll(new long[] { 1, 2, 1 }, new long[] { 10, 20, 30 }, new long[] { now - 3, now - 2, now - 1 }, 2);
+        log.beginCapture();
+        // Enough to compact the columns the capture holds
+        for (int i = 0; i < 1100; i++) {
+            log.append(3, i, now);
+        }
+        StringBuilder captured = new StringBuilder();
+        log.forEachCapturedRecord((userId, score, timestamp) -> captured.append(userId).append(':')
+                .append(score).append('@').append(now - timestamp).append(' '));
+        assertEquals("1:10@3 2:20@2 ", captured.toString());
+        assertEquals("3:1099 2:20 1:10", describe(log.window(now - HOUR_MILLIS)));
+    }
+}
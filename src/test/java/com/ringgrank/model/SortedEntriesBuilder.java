@@ -0,0 +1,46 @@
+package com.ringgrank.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SortedEntries filled one entry at a time, for tests.
+ */
+final class SortedEntriesBuilder implements SortedEntries {
+    private final long gameId;
+    private final List<long[]> entries = new ArrayList<>();
+
+    SortedEntriesBuilder(long gameId) {
+        this.gameId = gameId;
+    }
+
+    SortedEntriesBuilder add(long userId, long score, long timestamp) {
+        entries.add(new long[] { userId, score, timestamp });
+        return this;
+    }
+
+    @Override
+    public long gameId() {
+        return gameId;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public long userIdAt(int index) {
+        return entries.get(index)[0];
+    }
+
+    @Override
+    public long scoreAt(int index) {
+        return entries.get(index)[1];
+    }
+
+    @Override
+    public long timestampAt(int index) {
+        return entries.get(index)[2];
+    }
+}
@@ -0,0 +1,84 @@
+package com.ringgrank.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TumblingWindowLeaderboardTest {
+    private static final long GAME_ID = 4;
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final long now = System.currentTimeMillis();
+    private final long today = CalendarPeriod.DAY.startOf(now, ZoneOffset.UTC);
+    private final long yesterday = today - DAY_MILLIS;
+
+    private static TumblingWindowLeaderboard board(long createdAtMillis) {
+        return new TumblingWindowLeaderboard(GAME_ID, LeaderboardConfig.DEFAULT, CalendarPeriod.DAY, createdAtMillis);
+    }
+
+    private static ScoreEntry entry(long userId, long score, long timestamp) {
+        return new ScoreEntry(userId, GAME_ID, score, timestamp);
+    }
+
+    private static List<Long> ranking(Leaderboard leaderboard) {
+        return leaderboard.getTopK(10).stream().map(ScoreEntry::userId).toList();
+    }
+
+    @Test
+    void runningPeriodClosesAtTheBoundary() {
+        // Created yesterday; filled as recovery would, before the clock is read
+        TumblingWindowLeaderboard board = board(yesterday + 1);
+        board.boardFor(yesterday, yesterday + 1).addOrUpdateScore(entry(1, 10, yesterday + 1));
+
+        assertEquals(today, board.getPeriodStart());
+        assertEquals(List.of(), ranking(board));
+        assertEquals(List.of(1L), ranking(board.closedPeriod()));
+        long version = board.getVersion();
+        long closedVersion = board.closedPeriod().getVersion();
+        board.addOrUpdateScore(entry(2, 5, today + 1));
+        assertTrue(board.getVersion() > version);
+        assertEquals(closedVersion, board.closedPeriod().getVersion());
+    }
+
+    @Test
+    void scoresGoToThePeriodOfTheirTimestamp() {
+        TumblingWindowLeaderboard board = board(now);
+        board.addOrUpdateScore(entry(1, 10, today + 1));
+        // A late score for yesterday still counts there; older ones are dropped
+        board.addOrUpdateScore(entry(2, 20, yesterday + 1));
+        board.addOrUpdateScore(entry(3, 30, yesterday - 1));
+        assertEquals(List.of(1L), ranking(board));
+        assertEquals(List.of(2L), ranking(board.closedPeriod()));
+        assertNull(board.getUserScore(3L));
+        assertNull(board.closedPeriod().getUserScore(3L));
+    }
+
+    @Test
+    void restoreShiftsBoardsOfAClosedPeriod() {
+        SortedEntriesBuilder running = new SortedEntriesBuilder(GAME_ID).add(1, 10, yesterday + 1);
+        SortedEntriesBuilder closed = new SortedEntriesBuilder(GAME_ID).add(2, 20, yesterday - 1);
+
+        // Taken today: both boards are restored as they were
+        TumblingWindowLeaderboard sameDay = board(now);
+        sameDay.restore(today, new SortedEntriesBuilder(GAME_ID).add(3, 30, today + 1), running, now);
+        assertEquals(List.of(3L), ranking(sameDay));
+        assertEquals(List.of(1L), ranking(sameDay.closedPeriod()));
+
+        // Taken yesterday: its running board is now the closed one, and the
+        // day before is dropped
+        TumblingWindowLeaderboard nextDay = board(now);
+        nextDay.restore(yesterday, running, closed, now);
+        assertEquals(List.of(), ranking(nextDay));
+        assertEquals(List.of(1L), ranking(nextDay.closedPeriod()));
+
+        // Taken before that: nothing is left to restore
+        TumblingWindowLeaderboard later = board(now);
+        later.restore(yesterday - DAY_MILLIS, running, closed, now);
+        assertEquals(List.of(), ranking(later.closedPeriod()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.ringgrank.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * FileChannel that fails on request: a failing gathering write first
+ * writes part of its bytes, like a write cut short by a full disk.
+ */
+final class FaultyFileChannel extends FileChannel {
+    private final FileChannel delegate;
+    volatile boolean failNextWrite;
+    volatile boolean failTruncate;
+    volatile boolean failForce;
+
+    FaultyFileChannel(FileChannel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+        if (failNextWrite) {
+            failNextWrite = false;
+            ByteBuffer first = sources[offset];
+            ByteBuffer part = first.duplicate();
+            part.limit(part.position() + part.remaining() / 2);
+            delegate.write(part);
+            throw new IOException("No space left on device");
+        }
+        return delegate.write(sources, offset, length);
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        if (failTruncate) {
+            throw new IOException("Input/output error");
+        }
+        delegate.truncate(size);
+        return this;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        return delegate.write(source);
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        return delegate.read(destination);
+    }
+
+    @Override
+    public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+        return delegate.read(destinations, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return delegate.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        delegate.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return delegate.size();
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        if (failForce) {
+            throw new IOException("Input/output error");
+        }
+        delegate.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return delegate.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+        return delegate.transferFrom(source, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer destination, long position) throws IOException {
+        return delegate.read(destination, position);
+    }
+
+    @Override
+    public int write(ByteBuffer source, long position) throws IOException {
+        return delegate.write(source, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return delegate.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return delegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return delegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,73 @@
+package com.ringgrank.persistence;
+
+import static com.ringgrank.persistence.SnapshotWriterTest.describe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LegacySnapshotReaderTest {
+    // Written by the first release's GlobalLeaderboardManager.createSnapshot.
+    // Game 1: users 1-5 scored 100-500 in October 2025, then user 3 scored
+    // 500 again, tying user 5 at a later time; user 6 scored 250 with a
+    // timestamp in 2100, so it is still inside the 24h window. Game 2: users
+    // 10 and 11 scored 40 and 70 in October 2025.
+    static Path baselineSnapshot() throws URISyntaxException {
+        return Path.of(LegacySnapshotReaderTest.class.getResource("/baseline/snapshot/leaderboard").toURI());
+    }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void convertsBaselineSnapshot() throws Exception {
+        Map<Long, String> allTime = new TreeMap<>();
+        Map<Long, String> windows = new TreeMap<>();
+        LegacySnapshotReader.read(baselineSnapshot(), section -> {
+            allTime.put(section.gameId(), describe(section.allTimeEntries()));
+            assertEquals(Map.of("24h", Duration.ofHours(24)), section.windows());
+            windows.put(section.gameId(), describe(section.windowEntries().get("24h")));
+            assertEquals(0, section.scoreLog().size());
+            assertEquals(List.of(), section.calendarWindows());
+        });
+        assertEquals(Map.of(
+                1L, "5:500@1760000000005 3:500@1760000000010 4:400@1760000000004 6:250@4102444800006 "
+                        + "2:200@1760000000002 1:100@1760000000001",
+                2L, "11:70@1760000000002 10:40@1760000000001"), allTime);
+        assertEquals(Map.of(1L, "6:250@4102444800006", 2L, ""), windows);
+    }
+
+    @Test
+    void emptyFileHasNoGames() throws IOException {
+        Path empty = dir.resolve("leaderboard");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(empty))) {
+            out.flush();
+        }
+        List<Long> games = new ArrayList<>();
+        LegacySnapshotReader.read(empty, section -> games.add(section.gameId()));
+        assertEquals(List.of(), games);
+    }
+
+    @Test
+    void rejectsOtherSerializedObjects() throws IOException {
+        Path other = dir.resolve("leaderboard");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(other))) {
+            out.writeLong(1);
+            out.writeObject("not a game");
+        }
+        assertThrows(IOException.class, () -> LegacySnapshotReader.read(other, section -> {
+        }));
+    }
+}
@@ -0,0 +1,107 @@
+package com.ringgrank.persistence;
+
+import static com.ringgrank.persistence.SnapshotWriterTest.describe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ringgrank.model.GameLeaderboardSet;
+import com.ringgrank.model.LeaderboardConfig;
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.service.ExpirationWheel;
+
+class SnapshotReaderTest {
+    @TempDir
+    Path dir;
+
+    // Games 1 to 3, game g holding users 1 to 10 * g
+    private List<SnapshotWriter.WrittenSection> writeGames(Path path) throws IOException {
+        long now = System.currentTimeMillis();
+        List<GameLeaderboardSet> games = new ArrayList<>();
+        for (long gameId = 1; gameId <= 3; gameId++) {
+            GameLeaderboardSet game = new GameLeaderboardSet(gameId, LeaderboardConfig.DEFAULT,
+                    new ExpirationWheel(1000, now, 1));
+            for (long userId = 1; userId <= 10 * gameId; userId++) {
+                game.addScore(new ScoreEntry(userId, gameId, userId, now));
+            }
+            game.beginCapture();
+            games.add(game);
+        }
+        return SnapshotWriter.write(path, 9, games);
+    }
+
+    @Test
+    void readsReferencedSectionsInAnyOrder() throws IOException {
+        Path path = dir.resolve("leaderboard-1.dat");
+        List<SnapshotWriter.WrittenSection> written = writeGames(path);
+        List<String> read = new ArrayList<>();
+        // The second offset lies before the mapping made for the first
+        SnapshotReader.readSections(path, new long[] { written.get(2).offset(), written.get(0).offset() },
+                section -> read.add(section.gameId() + ":" + section.allTimeEntries().size()));
+        assertEquals(List.of("3:30", "1:10"), read);
+    }
+
+    @Test
+    void truncatedFileFails() throws IOException {
+        Path path = dir.resolve("leaderboard");
+        writeGames(path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 10));
+        List<Long> games = new ArrayList<>();
+        assertThrows(IOException.class, () -> SnapshotReader.read(path, section -> games.add(section.gameId())));
+        // Sections before the damage were still handed out
+        assertEquals(List.of(1L, 2L), games);
+    }
+
+    @Test
+    void damagedHeaderFails() throws IOException {
+        Path path = dir.resolve("leaderboard");
+        writeGames(path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[8] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> SnapshotReader.read(path, section -> {
+        }));
+    }
+
+    @Test
+    void readsVersion1Records() throws IOException {
+        byte[] key = "24h".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(4 + 2 + key.length + 8 + 4 + 2 * SnapshotFormat.ENTRY_BYTES + 4);
+        payload.putInt(1).putShort((short) key.length).put(key).putLong(Duration.ofHours(24).toMillis());
+        payload.putInt(2).putLong(7).putLong(90).putLong(1_001).putLong(8).putLong(40).putLong(1_002);
+        payload.putInt(0);
+        CRC32C crc = new CRC32C();
+        ByteBuffer file = ByteBuffer.allocate(SnapshotFormat.FILE_HEADER_BYTES + SnapshotFormat.SECTION_HEADER_BYTES
+                + payload.capacity());
+        file.putInt(SnapshotFormat.MAGIC).putShort(SnapshotFormat.VERSION_1).putShort((short) 0).putLong(5)
+                .putLong(1_000).putInt(1);
+        crc.update(file.array(), 0, 28);
+        file.putInt((int) crc.getValue());
+        crc.reset();
+        crc.update(payload.array());
+        file.putLong(4).putInt(payload.capacity()).putInt((int) crc.getValue()).put(payload.array());
+        Path path = Files.write(dir.resolve("leaderboard"), file.array());
+
+        List<String> boards = new ArrayList<>();
+        SnapshotReader.Header header = SnapshotReader.read(path, section -> {
+            boards.add(section.gameId() + " " + describe(section.allTimeEntries()));
+            boards.add(section.windows() + " " + describe(section.windowEntries().get("24h")));
+        });
+        assertEquals(5, header.coveredLsn());
+        assertEquals(List.of("4 7:90@1001 8:40@1002", "{24h=PT24H} "), boards);
+    }
+}
@@ -0,0 +1,127 @@
+package com.ringgrank.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ringgrank.model.GameLeaderboardSet;
+import com.ringgrank.model.LeaderboardConfig;
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.model.SortedEntries;
+import com.ringgrank.model.StorageEngine;
+import com.ringgrank.service.ExpirationWheel;
+
+class SnapshotWriterTest {
+    // Keeps a score log for a day, so sections carry one
+    private static final LeaderboardConfig CONFIG = new LeaderboardConfig(StorageEngine.TREE, false, 0, 1_000_000,
+            4096, 0.01, 1024, 65536, 10_000_000, 0, List.of(), ZoneOffset.UTC, Duration.ofDays(1).toMillis(), 3,
+            600_000);
+
+    @TempDir
+    Path dir;
+
+    private final long now = System.currentTimeMillis();
+
+    private GameLeaderboardSet game(long gameId) {
+        return new GameLeaderboardSet(gameId, CONFIG, new ExpirationWheel(1000, now, 1));
+    }
+
+    // Users 1 to 4 in game 1; user 2 scores twice, first outside the 24h
+    // window, which the score log keeps until it is compacted
+    private List<GameLeaderboardSet> games() {
+        GameLeaderboardSet first = game(1);
+        first.addScore(new ScoreEntry(2, 1, 5, now - Duration.ofDays(2).toMillis()));
+        for (long userId = 1; userId <= 4; userId++) {
+            first.addScore(new ScoreEntry(userId, 1, userId * 100, now + userId));
+        }
+        return List.of(first, game(2));
+    }
+
+    private static Map<Long, List<String>> readAll(Path path) throws IOException {
+        Map<Long, List<String>> games = new TreeMap<>();
+        SnapshotReader.read(path, section -> games.put(section.gameId(), boards(section)));
+        return games;
+    }
+
+    static List<String> boards(SnapshotReader.GameSection section) {
+        List<String> boards = new ArrayList<>();
+        boards.add(describe(section.allTimeEntries()));
+        section.windows().forEach((key, duration) -> boards.add(key + "=" + duration + " "
+                + describe(section.windowEntries().get(key))));
+        SnapshotReader.LogRecords log = section.scoreLog();
+        for (int i = 0; i < log.size(); i++) {
+            boards.add("log " + log.userIds()[i] + ":" + log.scores()[i]);
+        }
+        return boards;
+    }
+
+    // userId:score@timestamp in rank order
+    static String describe(SortedEntries entries) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            text.append(i == 0 ? "" : " ").append(entries.userIdAt(i)).append(':').append(entries.scoreAt(i))
+                    .append('@').append(entries.timestampAt(i));
+        }
+        return text.toString();
+    }
+
+    private Map<Long, List<String>> expected() {
+        String ranking = "4:400@" + (now + 4) + " 3:300@" + (now + 3) + " 2:200@" + (now + 2) + " 1:100@" + (now + 1);
+        return Map.of(1L, List.of(ranking, "24h=PT24H " + ranking, "log 2:5", "log 1:100", "log 2:200", "log 3:300",
+                "log 4:400"), 2L, List.of("", "24h=PT24H "));
+    }
+
+    @Test
+    void snapshotRoundTrips() throws IOException {
+        for (boolean deflate : new boolean[] { false, true }) {
+            List<GameLeaderboardSet> games = games();
+            games.forEach(GameLeaderboardSet::beginCapture);
+            Path path = dir.resolve("snapshot-" + deflate);
+            List<SnapshotWriter.WrittenSection> written = SnapshotWriter.write(path, 42, games, deflate, 2);
+            assertEquals(List.of(1L, 2L), written.stream().map(SnapshotWriter.WrittenSection::gameId).toList());
+            assertEquals(expected(), readAll(path));
+            SnapshotReader.Header header = SnapshotReader.read(path, section -> {
+            });
+            assertEquals(42, header.coveredLsn());
+            assertEquals(2, header.gameCount());
+            assertEquals(true, SnapshotReader.isBinarySnapshot(path));
+        }
+    }
+
+    @Test
+    void writesTheStateAsOfTheCapture() throws IOException {
+        List<GameLeaderboardSet> games = games();
+        games.forEach(GameLeaderboardSet::beginCapture);
+        // Neither a new player nor an improved score is part of the snapshot
+        games.get(0).addScore(new ScoreEntry(5, 1, 50, now + 5));
+        games.get(0).addScore(new ScoreEntry(1, 1, 900, now + 6));
+        Path path = dir.resolve("snapshot");
+        SnapshotWriter.write(path, 7, games);
+        assertEquals(expected(), readAll(path));
+    }
+
+    @Test
+    void corruptSectionFailsTheChecksum() throws IOException {
+        List<GameLeaderboardSet> games = games();
+        games.forEach(GameLeaderboardSet::beginCapture);
+        Path path = dir.resolve("snapshot");
+        List<SnapshotWriter.WrittenSection> written = SnapshotWriter.write(path, 7, games);
+        byte[] bytes = Files.readAllBytes(path);
+        SnapshotWriter.WrittenSection first = written.get(0);
+        bytes[(int) (first.offset() + first.length() - 1)] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> readAll(path));
+    }
+}
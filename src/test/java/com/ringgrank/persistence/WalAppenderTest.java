@@ -0,0 +1,118 @@
+package com.ringgrank.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ringgrank.model.ScoreEntry;
+
+class WalAppenderTest {
+    @TempDir
+    Path dir;
+
+    private static ScoreEntry score(long userId) {
+        return new ScoreEntry(userId, 1, userId * 10, 1_000 + userId);
+    }
+
+    private List<Long> replayedUsers() throws IOException {
+        List<Long> users = new ArrayList<>();
+        for (WalSegments.Segment segment : WalSegments.list(dir.resolve("scores"))) {
+            WalReader.Result result = WalReader.replay(segment.path(), (lsn, entry) -> users.add(entry.userId()));
+            assertEquals(Files.size(segment.path()), result.validBytes(), "damaged segment " + segment.path());
+        }
+        return users;
+    }
+
+    @Test
+    void recordsRoundTripAcrossSegments() throws IOException {
+        // Room for two records per segment
+        WalAppender appender = new WalAppender(dir.resolve("scores"), false, 1,
+                WalFormat.FILE_HEADER_BYTES + 2L * WalFormat.SCORE_RECORD_BYTES);
+        appender.start(1);
+        for (long userId = 1; userId <= 5; userId++) {
+            assertEquals(userId, appender.append(score(userId)));
+        }
+        appender.close();
+        assertEquals(3, WalSegments.list(dir.resolve("scores")).size());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), replayedUsers());
+    }
+
+    @Test
+    void failedWriteIsCutOffBeforeTheNextBatch() throws IOException {
+        FaultyAppender appender = new FaultyAppender(dir.resolve("scores"));
+        appender.start(1);
+        appender.append(score(1));
+        appender.channel.failNextWrite = true;
+        assertThrows(RuntimeException.class, () -> appender.append(score(2)));
+        appender.append(score(3));
+        appender.close();
+        // Without the cut, replay would stop at the torn record and lose user 3
+        assertEquals(List.of(1L, 3L), replayedUsers());
+        assertEquals(3, appender.lastDurableLsn());
+    }
+
+    @Test
+    void refusesRecordsOnceAFailedWriteCannotBeCutOff() throws IOException {
+        FaultyAppender appender = new FaultyAppender(dir.resolve("scores"));
+        appender.start(1);
+        appender.append(score(1));
+        appender.channel.failNextWrite = true;
+        appender.channel.failTruncate = true;
+        assertThrows(RuntimeException.class, () -> appender.append(score(2)));
+        assertThrows(RuntimeException.class, () -> appender.append(score(3)));
+        appender.close();
+        assertEquals(1, appender.lastDurableLsn());
+    }
+
+    @Test
+    void failedRolloverKeepsWritingToTheCurrentSegment() throws IOException {
+        // Room for one record per segment
+        FaultyAppender appender = new FaultyAppender(dir.resolve("scores"),
+                WalFormat.FILE_HEADER_BYTES + WalFormat.SCORE_RECORD_BYTES);
+        appender.start(1);
+        appender.append(score(1));
+        appender.failNextOpen = true;
+        assertThrows(RuntimeException.class, () -> appender.append(score(2)));
+        appender.append(score(3));
+        appender.close();
+        // The segment that failed to open was removed again
+        assertEquals(List.of(1L, 3L),
+                WalSegments.list(dir.resolve("scores")).stream().map(WalSegments.Segment::firstLsn).toList());
+        assertEquals(List.of(1L, 3L), replayedUsers());
+    }
+
+    private static final class FaultyAppender extends WalAppender {
+        FaultyFileChannel channel;
+        // Fails to sync the next segment after writing its header
+        boolean failNextOpen;
+
+        FaultyAppender(Path basePath) {
+            this(basePath, 1 << 20);
+        }
+
+        FaultyAppender(Path basePath, long segmentBytes) {
+            super(basePath, true, 16, segmentBytes);
+        }
+
+        @Override
+        FileChannel openChannel(Path path) throws IOException {
+            FaultyFileChannel opened = new FaultyFileChannel(super.openChannel(path));
+            if (failNextOpen) {
+                failNextOpen = false;
+                opened.failForce = true;
+                return opened;
+            }
+            channel = opened;
+            return channel;
+        }
+    }
+}
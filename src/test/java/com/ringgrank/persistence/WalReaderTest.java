@@ -0,0 +1,150 @@
+package com.ringgrank.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ringgrank.model.ScoreEntry;
+
+class WalReaderTest {
+    @TempDir
+    Path dir;
+
+    private static ScoreEntry score(long userId) {
+        return new ScoreEntry(userId, 2, userId * 10, 1_000 + userId);
+    }
+
+    // A version 2 segment holding users 1 to count with LSNs firstLsn onwards
+    private static byte[] segment(long firstLsn, int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(WalFormat.FILE_HEADER_BYTES + count * WalFormat.SCORE_RECORD_BYTES);
+        WalFormat.writeFileHeader(buffer, firstLsn);
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < count; i++) {
+            WalFormat.encodeScore(buffer, firstLsn + i, score(i + 1), crc);
+        }
+        return buffer.array();
+    }
+
+    private Path write(byte[] bytes) throws IOException {
+        return Files.write(dir.resolve("scores-wal"), bytes);
+    }
+
+    private static List<ScoreEntry> replay(Path path, long afterLsn, List<Long> lsns) throws IOException {
+        List<ScoreEntry> entries = new ArrayList<>();
+        WalReader.replay(path, afterLsn, (lsn, entry) -> {
+            lsns.add(lsn);
+            entries.add(entry);
+        });
+        return entries;
+    }
+
+    @Test
+    void scoreRecordsRoundTrip() throws IOException {
+        Path path = write(segment(11, 3));
+        List<Long> lsns = new ArrayList<>();
+        assertEquals(List.of(score(1), score(2), score(3)), replay(path, 0, lsns));
+        assertEquals(List.of(11L, 12L, 13L), lsns);
+        WalReader.Result result = WalReader.replay(path, (lsn, entry) -> {
+        });
+        assertEquals(Files.size(path), result.validBytes());
+        assertEquals(13, result.lastLsn());
+        assertFalse(result.legacyFormat());
+    }
+
+    @Test
+    void recordsUpToAfterLsnAreSkipped() throws IOException {
+        Path path = write(segment(11, 3));
+        List<Long> lsns = new ArrayList<>();
+        assertEquals(List.of(score(3)), replay(path, 12, lsns));
+        assertEquals(List.of(13L), lsns);
+    }
+
+    @Test
+    void replayStopsAtAChecksumMismatch() throws IOException {
+        byte[] bytes = segment(1, 3);
+        // Flip a bit in the second record's score
+        int second = WalFormat.FILE_HEADER_BYTES + WalFormat.SCORE_RECORD_BYTES;
+        bytes[second + WalFormat.SCORE_RECORD_BYTES - 1] ^= 1;
+        Path path = write(bytes);
+        List<ScoreEntry> entries = new ArrayList<>();
+        WalReader.Result result = WalReader.replay(path, (lsn, entry) -> entries.add(entry));
+        assertEquals(List.of(score(1)), entries);
+        assertEquals(second, result.validBytes());
+        assertEquals(1, result.lastLsn());
+    }
+
+    @Test
+    void tornTailIsNotReplayed() throws IOException {
+        byte[] whole = segment(1, 3);
+        int intact = WalFormat.FILE_HEADER_BYTES + 2 * WalFormat.SCORE_RECORD_BYTES;
+        // Cut inside the third record's payload, then inside its header
+        for (int cut : new int[] { intact + WalFormat.RECORD_HEADER_BYTES + 5, intact + 3 }) {
+            byte[] torn = Arrays.copyOf(whole, cut);
+            List<ScoreEntry> entries = new ArrayList<>();
+            WalReader.Result result = WalReader.replay(write(torn), (lsn, entry) -> entries.add(entry));
+            assertEquals(List.of(score(1), score(2)), entries);
+            assertEquals(intact, result.validBytes());
+            assertEquals(2, result.lastLsn());
+        }
+    }
+
+    @Test
+    void headerOnlySegmentIsEmpty() throws IOException {
+        WalReader.Result result = WalReader.replay(write(segment(5, 0)), (lsn, entry) -> {
+        });
+        assertEquals(0, result.records());
+        assertEquals(WalFormat.FILE_HEADER_BYTES, result.validBytes());
+    }
+
+    @Test
+    void unknownRecordTypeStopsReplay() throws IOException {
+        byte[] bytes = segment(1, 2);
+        bytes[WalFormat.FILE_HEADER_BYTES + 6] = 9;
+        WalReader.Result result = WalReader.replay(write(bytes), (lsn, entry) -> {
+        });
+        assertEquals(0, result.records());
+        assertEquals(WalFormat.FILE_HEADER_BYTES, result.validBytes());
+    }
+
+    @Test
+    void readsVersion1Files() throws IOException {
+        int recordBytes = WalFormat.V1_RECORD_HEADER_BYTES + WalFormat.SCORE_PAYLOAD_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(WalFormat.V1_FILE_HEADER_BYTES + 2 * recordBytes);
+        buffer.putInt(WalFormat.MAGIC).putShort(WalFormat.VERSION_1).putShort((short) 0);
+        CRC32C crc = new CRC32C();
+        for (long userId = 1; userId <= 2; userId++) {
+            int start = buffer.position();
+            buffer.putInt(0).putShort((short) WalFormat.SCORE_PAYLOAD_BYTES).put(WalFormat.TYPE_SCORE).put((byte) 0);
+            ScoreEntry entry = score(userId);
+            buffer.putLong(entry.timestamp()).putLong(entry.gameId()).putLong(entry.userId()).putLong(entry.score());
+            crc.reset();
+            crc.update(buffer.array(), start + 4, recordBytes - 4);
+            buffer.putInt(start, (int) crc.getValue());
+        }
+        List<Long> lsns = new ArrayList<>();
+        // Files without LSNs are replayed whatever the LSN filter
+        assertEquals(List.of(score(1), score(2)), replay(write(buffer.array()), 100, lsns));
+        assertEquals(List.of(0L, 0L), lsns);
+    }
+
+    @Test
+    void readsLegacyCsv() throws IOException {
+        Path path = write("1001,2,1,10\n1002,2,2,20\n".getBytes());
+        List<ScoreEntry> entries = new ArrayList<>();
+        WalReader.Result result = WalReader.replay(path, (lsn, entry) -> entries.add(entry));
+        assertEquals(List.of(score(1), score(2)), entries);
+        assertTrue(result.legacyFormat());
+    }
+}
@@ -0,0 +1,114 @@
+package com.ringgrank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.ringgrank.model.ScoreEntry;
+
+class ExpirationWheelTest {
+    private static final long TICK = 10;
+    private static final long START = 1_000_000;
+
+    // Records when each user's entry and each task was handed out
+    private static final class Recorder implements ExpirationWheel.ExpiryHandler {
+        final Map<Long, Long> expiredAt = new HashMap<>();
+        final List<ExpirationWheel.Task> tasks = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        long now;
+
+        @Override
+        public void expire(long gameId, String windowKey, List<ScoreEntry> entries) {
+            batchSizes.add(entries.size());
+            for (ScoreEntry entry : entries) {
+                assertNull(expiredAt.put(entry.userId(), now), "user " + entry.userId() + " expired twice");
+            }
+        }
+
+        @Override
+        public void expire(ExpirationWheel.Task task) {
+            tasks.add(task);
+        }
+    }
+
+    private record DropTask(long gameId, long expirationTime) implements ExpirationWheel.Task {
+    }
+
+    @Test
+    void entriesComeDueWithinOneTickAcrossLevels() {
+        ExpirationWheel wheel = new ExpirationWheel(TICK, START, 1);
+        Map<Long, Long> expirations = new HashMap<>();
+        Random random = new Random(1);
+        // Up to 64^3 ticks ahead, so every level is used
+        long horizon = (1L << 18) * TICK + 5_000;
+        for (long userId = 0; userId < 5_000; userId++) {
+            long expiration = START + 1 + Math.floorMod(random.nextLong(), horizon);
+            expirations.put(userId, expiration);
+            wheel.schedule(userId % 40, "24h", userId, 1, 0, expiration);
+        }
+        Recorder recorder = new Recorder();
+        for (long now = START; now <= START + horizon + TICK; now += TICK) {
+            recorder.now = now;
+            wheel.advance(now, 0, recorder);
+        }
+        assertEquals(expirations.keySet(), recorder.expiredAt.keySet());
+        expirations.forEach((userId, expiration) -> {
+            long expiredAt = recorder.expiredAt.get(userId);
+            assertTrue(expiredAt >= expiration && expiredAt < expiration + TICK,
+                    "user " + userId + " due at " + expiration + " expired at " + expiredAt);
+        });
+    }
+
+    @Test
+    void expirationsBeyondTheWheelAreParkedUntilTheyAreInRange() {
+        ExpirationWheel wheel = new ExpirationWheel(1, START, 1);
+        long far = START + (1L << 24) + 1_000;
+        wheel.schedule(1, "24h", 1, 1, 0, far);
+        wheel.schedule(new DropTask(1, far));
+        Recorder recorder = new Recorder();
+        assertEquals(0, wheel.advance(far - 1, 0, recorder));
+        assertEquals(2, wheel.advance(far, 0, recorder));
+        assertEquals(Set.of(1L), recorder.expiredAt.keySet());
+        assertEquals(List.of(new DropTask(1, far)), recorder.tasks);
+    }
+
+    @Test
+    void overdueEntriesAreHandedOutOnTheNextAdvance() {
+        ExpirationWheel wheel = new ExpirationWheel(TICK, START, 1);
+        for (long userId = 1; userId <= 3; userId++) {
+            wheel.schedule(5, "24h", userId, 1, 0, START - userId);
+        }
+        Recorder recorder = new Recorder();
+        assertEquals(3, wheel.advance(START, 0, recorder));
+        // Entries of one board in one slot arrive together
+        assertEquals(List.of(3), recorder.batchSizes);
+    }
+
+    @Test
+    void eachWorkerExpiresOnlyItsOwnGames() {
+        ExpirationWheel wheel = new ExpirationWheel(TICK, START, 2);
+        for (long gameId = 0; gameId < 100; gameId++) {
+            wheel.schedule(gameId, "24h", gameId, 1, 0, START + TICK);
+        }
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        long expired = wheel.advance(START + TICK, 0, first);
+        assertEquals(expired, first.expiredAt.size());
+        assertTrue(expired > 0 && expired < 100);
+        assertEquals(0, wheel.advance(START + TICK, 0, first));
+        assertEquals(100 - expired, wheel.advance(START + TICK, 1, second));
+        Set<Long> games = new HashSet<>(first.expiredAt.keySet());
+        games.addAll(second.expiredAt.keySet());
+        assertEquals(100, games.size());
+    }
+}
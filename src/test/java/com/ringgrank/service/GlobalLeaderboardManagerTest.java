@@ -0,0 +1,236 @@
+package com.ringgrank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ringgrank.exception.LeaderboardCapacityExceededException;
+import com.ringgrank.model.GameLeaderboardSet;
+import com.ringgrank.model.Leaderboard;
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.persistence.SnapshotManifest;
+import com.ringgrank.persistence.WalSegments;
+
+class GlobalLeaderboardManagerTest {
+    private static final long GAME_ID = 11;
+
+    @TempDir
+    Path dataDir;
+
+    private static ScoreEntry score(long userId, long score) {
+        return new ScoreEntry(userId, GAME_ID, score, System.currentTimeMillis());
+    }
+
+    private static List<Long> ranking(Leaderboard leaderboard) {
+        return leaderboard.getTopK(100).stream().map(ScoreEntry::userId).toList();
+    }
+
+    private void copyResource(String resource, String target) throws IOException {
+        Path path = dataDir.resolve(target);
+        Files.createDirectories(path.getParent());
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            Files.copy(in, path);
+        }
+    }
+
+    @Test
+    void upgradesFirstReleaseDataDirectory() throws IOException {
+        // A Java-serialized snapshot and the CSV WAL written after it, see
+        // LegacySnapshotReaderTest for the snapshot's contents. The WAL has
+        // user 1 scoring 900 and user 7 scoring 50 in game 1, and user 12
+        // scoring 5 in game 3, all timestamped in 2100.
+        copyResource("/baseline/snapshot/leaderboard", "snapshot/leaderboard");
+        copyResource("/baseline/wal/scores", "wal/scores");
+        for (int start = 0; start < 2; start++) {
+            GlobalLeaderboardManager manager = TestManagers.start(dataDir, Map.of());
+            GameLeaderboardSet game = manager.getGameLeaderboardSet(1L);
+            assertEquals(List.of(1L, 5L, 3L, 4L, 6L, 2L, 7L), ranking(game.getLeaderboard(null)));
+            assertEquals(List.of(1L, 6L, 7L), ranking(game.getLeaderboard("24h")));
+            assertEquals(List.of(11L, 10L), ranking(manager.getGameLeaderboardSet(2L).getLeaderboard(null)));
+            assertEquals(List.of(12L), ranking(manager.getGameLeaderboardSet(3L).getLeaderboard("24h")));
+            // Takes a binary snapshot, which the second start loads instead
+            manager.shutdown();
+        }
+        assertEquals(false, Files.exists(dataDir.resolve("wal/scores")));
+    }
+
+    @Test
+    void incrementalSnapshotsOnlyRewriteChangedGames() throws IOException {
+        // Every second snapshot of a process is full
+        Map<String, String> properties = Map.of("leaderboard.snapshot.full-every", "2");
+        Path manifestPath = dataDir.resolve("snapshot/leaderboard");
+        long otherGame = GAME_ID + 1;
+        GlobalLeaderboardManager manager = TestManagers.start(dataDir, properties);
+        for (long userId = 1; userId <= 50; userId++) {
+            manager.recordScore(score(userId, userId));
+        }
+        manager.recordScore(new ScoreEntry(1, otherGame, 10, System.currentTimeMillis()));
+        manager.createSnapshot();
+        SnapshotManifest first = SnapshotManifest.read(manifestPath);
+
+        manager.recordScore(new ScoreEntry(2, otherGame, 20, System.currentTimeMillis()));
+        manager.createSnapshot();
+        SnapshotManifest second = SnapshotManifest.read(manifestPath);
+        assertEquals(first.sections().get(GAME_ID), second.sections().get(GAME_ID));
+        assertNotEquals(first.sections().get(otherGame).fileSeq(), second.sections().get(otherGame).fileSeq());
+        assertEquals(2, SnapshotManifest.listDataFiles(manifestPath).size());
+
+        // Recovery combines sections of both data files with the WAL after them
+        manager.recordScore(new ScoreEntry(3, otherGame, 30, System.currentTimeMillis()));
+        TestManagers.crash(manager);
+        GlobalLeaderboardManager restarted = TestManagers.start(dataDir, properties);
+        assertEquals(50, restarted.getGameLeaderboardSet(GAME_ID).getLeaderboard(null).getTotalPlayers());
+        assertEquals(List.of(3L, 2L, 1L), ranking(restarted.getGameLeaderboardSet(otherGame).getLeaderboard(null)));
+
+        // The full snapshot rewrites every game and deletes the older files
+        restarted.createSnapshot();
+        restarted.createSnapshot();
+        SnapshotManifest third = SnapshotManifest.read(manifestPath);
+        assertEquals(third.sections().get(GAME_ID).fileSeq(), third.sections().get(otherGame).fileSeq());
+        assertEquals(List.of(third.sections().get(GAME_ID).fileSeq()),
+                List.copyOf(SnapshotManifest.listDataFiles(manifestPath).keySet()));
+        TestManagers.crash(restarted);
+    }
+
+    @Test
+    void recoveryCutsATornTailOffTheLastSegment() throws IOException {
+        GlobalLeaderboardManager manager = TestManagers.start(dataDir, Map.of());
+        for (long userId = 1; userId <= 3; userId++) {
+            manager.recordScore(score(userId, userId * 10));
+        }
+        TestManagers.crash(manager);
+        // Half a record, as left by a crash in the middle of a write
+        List<WalSegments.Segment> segments = WalSegments.list(dataDir.resolve("wal/scores"));
+        Path last = segments.get(segments.size() - 1).path();
+        long intactBytes = Files.size(last);
+        Files.write(last, new byte[20], StandardOpenOption.APPEND);
+
+        GlobalLeaderboardManager restarted = TestManagers.start(dataDir, Map.of());
+        assertEquals(List.of(3L, 2L, 1L), ranking(restarted.getGameLeaderboardSet(GAME_ID).getLeaderboard(null)));
+        assertEquals(intactBytes, Files.size(last));
+        // Records written after recovery are not hidden behind the torn one
+        restarted.recordScore(score(4, 40));
+        TestManagers.crash(restarted);
+
+        GlobalLeaderboardManager again = TestManagers.start(dataDir, Map.of());
+        assertEquals(List.of(4L, 3L, 2L, 1L), ranking(again.getGameLeaderboardSet(GAME_ID).getLeaderboard(null)));
+        TestManagers.crash(again);
+    }
+
+    @Test
+    void droppedGameStaysDroppedAfterRestart() {
+        Map<String, String> offHeap = Map.of("leaderboard.storage.engine", "off-heap");
+        GlobalLeaderboardManager manager = TestManagers.start(dataDir, offHeap);
+        for (long userId = 1; userId <= 3; userId++) {
+            manager.recordScore(score(userId, userId * 10));
+        }
+        Leaderboard dropped = manager.getGameLeaderboardSet(GAME_ID).getLeaderboard(null);
+        assertEquals(true, manager.dropGame(GAME_ID));
+        assertEquals(false, manager.dropGame(GAME_ID));
+        assertNull(manager.getGameLeaderboardSet(GAME_ID));
+        // A reader still holding the board finds it empty
+        assertEquals(List.of(), dropped.getTopK(10));
+        assertEquals(-1, dropped.getUserRank(3L));
+        TestManagers.crash(manager);
+
+        GlobalLeaderboardManager restarted = TestManagers.start(dataDir, offHeap);
+        assertNull(restarted.getGameLeaderboardSet(GAME_ID));
+        restarted.recordScore(score(4, 5));
+        assertEquals(List.of(4L), ranking(restarted.getGameLeaderboardSet(GAME_ID).getLeaderboard(null)));
+        TestManagers.crash(restarted);
+    }
+
+    @Test
+    void dropGameWhileScoresAreRecorded() throws Exception {
+        Map<String, String> offHeap = Map.of("leaderboard.storage.engine", "off-heap");
+        GlobalLeaderboardManager manager = TestManagers.start(dataDir, offHeap);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                long firstUserId = t * 1_000L;
+                futures[t] = executor.submit(() -> {
+                    for (long userId = firstUserId; userId < firstUserId + 500; userId++) {
+                        manager.recordScore(score(userId, userId));
+                    }
+                });
+            }
+            for (int drops = 0; drops < 5; drops++) {
+                manager.dropGame(GAME_ID);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        manager.recordScore(score(5_000, 5_000));
+        // Every score after the last drop made it into a live board
+        Leaderboard allTime = manager.getGameLeaderboardSet(GAME_ID).getLeaderboard(null);
+        List<ScoreEntry> live = allTime.getTopK(allTime.getTotalPlayers() + 1);
+        assertEquals(allTime.getTotalPlayers(), live.size());
+        for (int i = 1; i < live.size(); i++) {
+            assertTrue(live.get(i - 1).score() > live.get(i).score());
+        }
+        TestManagers.crash(manager);
+
+        GlobalLeaderboardManager restarted = TestManagers.start(dataDir, offHeap);
+        Leaderboard recovered = restarted.getGameLeaderboardSet(GAME_ID).getLeaderboard(null);
+        assertEquals(live, recovered.getTopK(live.size() + 1));
+        TestManagers.crash(restarted);
+    }
+
+    @Test
+    void refusesPlayersBeyondOffHeapCapacityBeforeLoggingThem() {
+        Map<String, String> offHeap = Map.of("leaderboard.storage.engine", "off-heap",
+                "leaderboard.offheap.max-entries", "3");
+        GlobalLeaderboardManager manager = TestManagers.start(dataDir, offHeap);
+        for (long userId = 1; userId <= 3; userId++) {
+            manager.recordScore(score(userId, userId * 10));
+        }
+        assertThrows(LeaderboardCapacityExceededException.class, () -> manager.recordScore(score(4, 100)));
+        // Players already on the board can still improve
+        manager.recordScore(score(1, 50));
+        TestManagers.crash(manager);
+
+        GlobalLeaderboardManager restarted = TestManagers.start(dataDir, offHeap);
+        Leaderboard allTime = restarted.getGameLeaderboardSet(GAME_ID).getLeaderboard(null);
+        assertEquals(3, allTime.getTotalPlayers());
+        assertNull(allTime.getUserScore(4L));
+        assertEquals(1, allTime.getUserRank(1L));
+        restarted.shutdown();
+    }
+
+    @Test
+    void recoverySkipsPlayersBeyondALoweredCapacity() {
+        GlobalLeaderboardManager manager = TestManagers.start(dataDir, Map.of());
+        for (long userId = 1; userId <= 5; userId++) {
+            manager.recordScore(score(userId, userId * 10));
+        }
+        TestManagers.crash(manager);
+
+        GlobalLeaderboardManager restarted = TestManagers.start(dataDir, Map.of("leaderboard.storage.engine",
+                "off-heap", "leaderboard.offheap.max-entries", "3"));
+        Leaderboard allTime = restarted.getGameLeaderboardSet(GAME_ID).getLeaderboard(null);
+        assertEquals(3, allTime.getTotalPlayers());
+        assertEquals(1, allTime.getUserRank(5L));
+        assertNull(allTime.getUserScore(1L));
+        restarted.shutdown();
+    }
+}
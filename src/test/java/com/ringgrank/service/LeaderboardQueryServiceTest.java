@@ -0,0 +1,160 @@
+package com.ringgrank.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.ringgrank.dto.ApproximateUserRankResponse;
+import com.ringgrank.dto.LeaderboardEntryResponse;
+import com.ringgrank.dto.UserRankResponse;
+import com.ringgrank.exception.GameNotFoundException;
+import com.ringgrank.exception.UserNotFoundInLeaderboardException;
+import com.ringgrank.model.GameLeaderboardSet;
+import com.ringgrank.model.LeaderboardConfig;
+import com.ringgrank.model.ScoreEntry;
+import com.ringgrank.model.StorageEngine;
+
+class LeaderboardQueryServiceTest {
+    private static final long GAME_ID = 7;
+
+    private GameLeaderboardSet gameSet;
+    private GlobalLeaderboardManager manager;
+    private LeaderboardQueryService queryService;
+
+    @BeforeEach
+    void setUp() {
+        long nowMillis = System.currentTimeMillis();
+        gameSet = new GameLeaderboardSet(GAME_ID, LeaderboardConfig.DEFAULT, new ExpirationWheel(1000, nowMillis, 1));
+        manager = mock(GlobalLeaderboardManager.class);
+        when(manager.getGameLeaderboardSet(GAME_ID)).thenReturn(gameSet);
+        queryService = new LeaderboardQueryService(manager);
+    }
+
+    @Test
+    void approximateRankBoundsTheExactRank() {
+        long nowMillis = System.currentTimeMillis();
+        for (long userId = 1; userId <= 1_000; userId++) {
+            gameSet.addScore(new ScoreEntry(userId, GAME_ID, userId * 37 % 1_000 + 1, nowMillis - userId));
+        }
+        for (long userId = 1; userId <= 1_000; userId += 37) {
+            ApproximateUserRankResponse approximate = queryService.getApproximateUserRank(GAME_ID, userId, null);
+            int exactRank = queryService.getUserRank(GAME_ID, userId, null).rank();
+            assertTrue(Math.abs(approximate.rank() - exactRank) <= approximate.rankErrorBound(),
+                    "user " + userId + ": exact rank " + exactRank + ", estimate " + approximate);
+            assertEquals(approximate.rankErrorBound() * 100.0 / 1_000, approximate.percentileErrorBound(), 1e-9);
+            assertEquals(LeaderboardConfig.DEFAULT.sketchAccuracy(), approximate.scoreRelativeError());
+        }
+    }
+
+    @Test
+    void limitsOfOneVersionBucketShareACacheEntry() {
+        long nowMillis = System.currentTimeMillis();
+        for (long userId = 1; userId <= 20; userId++) {
+            gameSet.addScore(new ScoreEntry(userId, GAME_ID, userId * 10, nowMillis));
+        }
+        assertEquals(List.of(20L, 19L, 18L), userIds(queryService.getTopKLeaders(GAME_ID, 3, null)));
+        assertEquals(List.of(20L, 19L, 18L, 17L, 16L), userIds(queryService.getTopKLeaders(GAME_ID, 5, null)));
+        assertEquals(2, queryService.topKCacheSize());
+        // Rank 1 changes every bucket
+        gameSet.addScore(new ScoreEntry(21, GAME_ID, 1_000, nowMillis));
+        assertEquals(List.of(21L, 20L, 19L, 18L), userIds(queryService.getTopKLeaders(GAME_ID, 4, null)));
+        assertEquals(2, queryService.topKCacheSize());
+        assertEquals(List.of(1, 2, 4, 4, 8, 1024, 1025),
+                List.of(1, 2, 3, 4, 5, 1000, 1025).stream().map(LeaderboardQueryService::cachedLimit).toList());
+    }
+
+    @Test
+    void cacheIsBounded() {
+        GlobalLeaderboardManager anyGame = mock(GlobalLeaderboardManager.class);
+        when(anyGame.getGameLeaderboardSet(anyLong())).thenReturn(gameSet);
+        LeaderboardQueryService service = new LeaderboardQueryService(anyGame);
+        gameSet.addScore(new ScoreEntry(1, GAME_ID, 10, System.currentTimeMillis()));
+        for (long gameId = 1; gameId <= LeaderboardQueryService.TOP_K_CACHE_ENTRIES + 100; gameId++) {
+            service.getTopKLeaders(gameId, 10, null);
+        }
+        assertEquals(LeaderboardQueryService.TOP_K_CACHE_ENTRIES, service.topKCacheSize());
+    }
+
+    @Test
+    void droppingAGameEvictsItsCachedResponses() {
+        gameSet.addScore(new ScoreEntry(1, GAME_ID, 10, System.currentTimeMillis()));
+        queryService.getTopKLeaders(GAME_ID, 10, null);
+        queryService.getTopKLeaders(GAME_ID, 100, null);
+        when(manager.dropGame(GAME_ID)).thenReturn(true);
+        queryService.dropGame(GAME_ID);
+        assertEquals(0, queryService.topKCacheSize());
+        assertThrows(GameNotFoundException.class, () -> queryService.dropGame(GAME_ID + 1));
+    }
+
+    @Test
+    void tiedPlayersSharePercentileWithRankEngine() {
+        LeaderboardConfig withEngine = new LeaderboardConfig(StorageEngine.TREE, true, 0, 1_000, 4096, 0.01, 1024,
+                65536, 10_000_000, 0, List.of(), ZoneOffset.UTC, 0, 3, 600_000);
+        gameSet = new GameLeaderboardSet(GAME_ID, withEngine,
+                new ExpirationWheel(1000, System.currentTimeMillis(), 1));
+        when(manager.getGameLeaderboardSet(GAME_ID)).thenReturn(gameSet);
+        long nowMillis = System.currentTimeMillis();
+        // Users 1 to 4 tie on score; the earlier submission ranks higher
+        for (long userId = 1; userId <= 4; userId++) {
+            gameSet.addScore(new ScoreEntry(userId, GAME_ID, 100, nowMillis + userId));
+        }
+        gameSet.addScore(new ScoreEntry(5, GAME_ID, 50, nowMillis));
+        for (long userId = 1; userId <= 4; userId++) {
+            UserRankResponse rank = queryService.getUserRank(GAME_ID, userId, null);
+            // Ranks still follow the tie-breaks; the percentile counts the
+            // players strictly above
+            assertEquals((int) userId, rank.rank());
+            assertEquals(100.0, rank.percentile(), 1e-9);
+        }
+        UserRankResponse last = queryService.getUserRank(GAME_ID, 5, null);
+        assertEquals(5, last.rank());
+        assertEquals(20.0, last.percentile(), 1e-9);
+    }
+
+    @Test
+    void rankAndScoreComeFromTheSameUpdate() throws Exception {
+        long nowMillis = System.currentTimeMillis();
+        gameSet.addScore(new ScoreEntry(1, GAME_ID, 50, nowMillis));
+        gameSet.addScore(new ScoreEntry(2, GAME_ID, 10, nowMillis));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // User 2 keeps moving above and below user 1
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    gameSet.addScore(new ScoreEntry(2, GAME_ID, i % 2 == 0 ? 100 : 10, nowMillis));
+                }
+            });
+            while (!writer.isDone()) {
+                UserRankResponse rank = queryService.getUserRank(GAME_ID, 2, null);
+                assertEquals(rank.score() == 100 ? 1 : 2, rank.rank());
+            }
+            writer.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void approximateRankOfUnknownUserOrGameFails() {
+        gameSet.addScore(new ScoreEntry(1, GAME_ID, 10, System.currentTimeMillis()));
+        assertThrows(UserNotFoundInLeaderboardException.class,
+                () -> queryService.getApproximateUserRank(GAME_ID, 2, null));
+        assertThrows(GameNotFoundException.class, () -> queryService.getApproximateUserRank(GAME_ID + 1, 1, null));
+    }
+
+    private static List<Long> userIds(List<LeaderboardEntryResponse> responses) {
+        return responses.stream().map(LeaderboardEntryResponse::userId).toList();
+    }
+}
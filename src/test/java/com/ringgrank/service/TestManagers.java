@@ -0,0 +1,71 @@
+package com.ringgrank.service;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Creates GlobalLeaderboardManagers outside Spring. Every @Value field gets
+ * its default from the annotation unless overridden by property key; data
+ * files go under the given directory.
+ */
+final class TestManagers {
+    private TestManagers() {
+    }
+
+    static GlobalLeaderboardManager start(Path dataDir, Map<String, String> overrides) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("leaderboard.wal.path", dataDir.resolve("wal/scores").toString());
+        properties.put("leaderboard.snapshot.path", dataDir.resolve("snapshot/leaderboard").toString());
+        properties.put("leaderboard.wal.compaction.interval", "0");
+        properties.putAll(overrides);
+        GlobalLeaderboardManager manager = new GlobalLeaderboardManager();
+        for (Field field : GlobalLeaderboardManager.class.getDeclaredFields()) {
+            Value value = field.getAnnotation(Value.class);
+            if (value == null) {
+                continue;
+            }
+            // ${key:default}
+            String expression = value.value().substring(2, value.value().length() - 1);
+            int colon = expression.indexOf(':');
+            String text = properties.getOrDefault(expression.substring(0, colon), expression.substring(colon + 1));
+            ReflectionUtils.makeAccessible(field);
+            ReflectionUtils.setField(field, manager, convert(text, field.getType()));
+        }
+        manager.initialize();
+        return manager;
+    }
+
+    /**
+     * Stops a manager without the snapshot a regular shutdown takes, as if
+     * the process had been killed.
+     */
+    static void crash(GlobalLeaderboardManager manager) {
+        Field appender = ReflectionUtils.findField(GlobalLeaderboardManager.class, "walAppender");
+        ReflectionUtils.makeAccessible(appender);
+        ((com.ringgrank.persistence.WalAppender) ReflectionUtils.getField(appender, manager)).close();
+        Field running = ReflectionUtils.findField(GlobalLeaderboardManager.class, "isRunning");
+        ReflectionUtils.makeAccessible(running);
+        ReflectionUtils.setField(running, manager, false);
+    }
+
+    private static Object convert(String text, Class<?> type) {
+        if (type == long.class) {
+            return Long.parseLong(text);
+        }
+        if (type == int.class) {
+            return Integer.parseInt(text);
+        }
+        if (type == boolean.class) {
+            return Boolean.parseBoolean(text);
+        }
+        if (type == double.class) {
+            return Double.parseDouble(text);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,80 @@
+package com.ringgrank.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentLongObjectMapTest {
+
+    @Test
+    void matchesHashMapThroughGrowthAndRemoval() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>(4, 0);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(1);
+        // Few distinct keys, so removals hit occupied probe chains
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(3_000) - 1_000L;
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        Map<Long, String> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void conditionalOperations() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        assertNull(map.putIfAbsent(0, "zero"));
+        assertEquals("zero", map.putIfAbsent(0, "other"));
+        assertEquals("zero", map.computeIfAbsent(0, key -> "other"));
+        assertEquals("7", map.computeIfAbsent(7, Long::toString));
+        assertFalse(map.remove(7, "8"));
+        assertTrue(map.remove(7, "7"));
+        assertFalse(map.containsKey(7));
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void computeIfAbsentCreatesOnceUnderContention() throws Exception {
+        ConcurrentLongObjectMap<Object> map = new ConcurrentLongObjectMap<>();
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (long key = 0; key < 10_000; key++) {
+                        map.computeIfAbsent(key, k -> {
+                            created.incrementAndGet();
+                            return new Object();
+                        });
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(10_000, created.get());
+        assertEquals(10_000, map.size());
+    }
+}